@@ -23,6 +23,14 @@ import android.widget.ListView;
  * automatically.
  */
 public class MainActivity extends LifecycleLoggingActivity {
+    /**
+     * The key of the AcronymOps retained between runtime configuration
+     * changes.
+     */
+    private static final RetainedFragmentManager.Key<AcronymOps>
+        ACRONYM_OPS_STATE =
+        new RetainedFragmentManager.Key<AcronymOps>("ACRONYM_OPS_STATE");
+
     /**
      * Used to retain the ImageOps state between runtime configuration
      * changes.
@@ -116,7 +124,7 @@ public class MainActivity extends LifecycleLoggingActivity {
             mAcronymOps = new AcronymOpsImpl(this);
 
             // Store the AcronymOps into the RetainedFragmentManager.
-            mRetainedFragmentManager.put("ACRONYM_OPS_STATE",
+            mRetainedFragmentManager.put(ACRONYM_OPS_STATE,
                                          mAcronymOps);
             
             // Initiate the service binding protocol (which may be a
@@ -134,7 +142,7 @@ public class MainActivity extends LifecycleLoggingActivity {
             // Obtain the AcronymOps object from the
             // RetainedFragmentManager.
             mAcronymOps = 
-                mRetainedFragmentManager.get("ACRONYM_OPS_STATE");
+                mRetainedFragmentManager.get(ACRONYM_OPS_STATE);
 
             // This check shouldn't be necessary under normal
             // circumtances, but it's better to lose state than to
@@ -146,7 +154,7 @@ public class MainActivity extends LifecycleLoggingActivity {
                 mAcronymOps = new AcronymOpsImpl(this);
 
                 // Store the AcronymOps into the RetainedFragmentManager.
-                mRetainedFragmentManager.put("ACRONYM_OPS_STATE",
+                mRetainedFragmentManager.put(ACRONYM_OPS_STATE,
                                              mAcronymOps);
 
                 // Initiate the service binding protocol (which may be
@@ -6,9 +6,9 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
+import vandy.mooc.utils.DebugLog;
 import android.util.JsonReader;
 import android.util.JsonToken;
-import android.util.Log;
 
 /**
  * Parses the Json acronym data returned from the Acronym Services API
@@ -18,8 +18,8 @@ public class AcronymJSONParser {
     /**
      * Used for logging purposes.
      */
-    private final String TAG =
-        this.getClass().getCanonicalName();
+    private static final DebugLog sLog =
+        new DebugLog(AcronymJSONParser.class.getSimpleName());
 
     /**
      * Parse the @a inputStream and convert it into a List of JsonAcronym
@@ -32,7 +32,7 @@ public class AcronymJSONParser {
         try (JsonReader reader =
              new JsonReader(new InputStreamReader(inputStream,
                                                   "UTF-8"))) {
-            // Log.d(TAG, "Parsing the results returned as an array");
+            sLog.d("Parsing the results returned as an array");
 
             // Handle the array returned from the Acronym Service.
             return parseAcronymServiceResults(reader);
@@ -72,17 +72,17 @@ public class AcronymJSONParser {
                 String name = reader.nextName();
                 switch (name) {
                 case JsonAcronym.sf_JSON:
-                    // Log.d(TAG, "reading sf field");
+                    sLog.d("reading sf field");
                     reader.nextString();
                     break;
                 case JsonAcronym.lfs_JSON:
-                    // Log.d(TAG, "reading lfs field");
+                    sLog.d("reading lfs field");
                     if (reader.peek() == JsonToken.BEGIN_ARRAY)
                         acronyms = parseAcronymLongFormArray(reader);
                     break outerloop;
                 default:
 		    reader.skipValue();
-                    // Log.d(TAG, "weird problem with " + name + " field");
+                    sLog.d("weird problem with ", name, " field");
                     break;
                 }
             }
@@ -99,7 +99,7 @@ public class AcronymJSONParser {
     public List<JsonAcronym> parseAcronymLongFormArray(JsonReader reader)
         throws IOException {
 
-        // Log.d(TAG, "reading lfs elements");
+        sLog.d("reading lfs elements");
 
         reader.beginArray();
 
@@ -130,19 +130,19 @@ public class AcronymJSONParser {
                 switch (name) {
                 case JsonAcronym.lf_JSON:
                     acronym.setLongForm(reader.nextString());
-                    // Log.d(TAG, "reading lf " + acronym.getLongForm());
+                    sLog.d("reading lf ", acronym.getLongForm());
                     break;
                 case JsonAcronym.freq_JSON:
                     acronym.setFreq(reader.nextInt());
-                    // Log.d(TAG, "reading freq " + acronym.getFreq());
+                    sLog.d("reading freq ", acronym.getFreq());
                     break;
                 case JsonAcronym.since_JSON:
                     acronym.setSince(reader.nextInt());
-                    // Log.d(TAG, "reading since " + acronym.getSince());
+                    sLog.d("reading since ", acronym.getSince());
                     break;
                 default:
                     reader.skipValue();
-                    // Log.d(TAG, "ignoring " + name);
+                    sLog.d("ignoring ", name);
                     break;
                 }
             } 
@@ -2,6 +2,7 @@ package vandy.mooc.operations;
 
 import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import vandy.mooc.R;
 import vandy.mooc.activities.MainActivity;
@@ -12,11 +13,12 @@ import vandy.mooc.aidl.AcronymResults;
 import vandy.mooc.services.AcronymServiceAsync;
 import vandy.mooc.services.AcronymServiceSync;
 import vandy.mooc.utils.AcronymDataArrayAdapter;
+import vandy.mooc.utils.BoundServicePool;
 import vandy.mooc.utils.GenericServiceConnection;
 import vandy.mooc.utils.Utils;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.RemoteException;
 import android.util.Log;
 import android.view.View;
@@ -39,16 +41,43 @@ public class AcronymOpsImpl implements AcronymOps {
     protected WeakReference<MainActivity> mActivity;
     	
     /**
-     * This GenericServiceConnection is used to receive results after
-     * binding to the AcronymServiceSync Service using bindService().
+     * Maximum time (in seconds) a synchronous lookup waits for the
+     * AcronymServiceSync Service to be connected.
      */
-    private GenericServiceConnection<AcronymCall> mServiceConnectionSync;
+    private static final long CONNECT_TIMEOUT_SECS = 10;
 
     /**
-     * This GenericServiceConnection is used to receive results after
-     * binding to the AcronymServiceAsync Service using bindService().
+     * Create the AIDL interface objects by calling the generated
+     * asInterface() methods directly, so connecting doesn't need
+     * reflection.
      */
-    private GenericServiceConnection<AcronymRequest> mServiceConnectionAsync;
+    private static final GenericServiceConnection.StubFactory<AcronymCall> sAcronymCallFactory =
+        new GenericServiceConnection.StubFactory<AcronymCall>() {
+            @Override
+            public AcronymCall asInterface(IBinder binder) {
+                return AcronymCall.Stub.asInterface(binder);
+            }
+        };
+
+    private static final GenericServiceConnection.StubFactory<AcronymRequest> sAcronymRequestFactory =
+        new GenericServiceConnection.StubFactory<AcronymRequest>() {
+            @Override
+            public AcronymRequest asInterface(IBinder binder) {
+                return AcronymRequest.Stub.asInterface(binder);
+            }
+        };
+
+    /**
+     * This shared Binding is used to receive results after binding
+     * to the AcronymServiceSync Service, or null while unbound.
+     */
+    private BoundServicePool.Binding<AcronymCall> mServiceConnectionSync;
+
+    /**
+     * This shared Binding is used to receive results after binding
+     * to the AcronymServiceAsync Service, or null while unbound.
+     */
+    private BoundServicePool.Binding<AcronymRequest> mServiceConnectionAsync;
 
     /**
      * List of results to display (if any).
@@ -63,6 +92,13 @@ public class AcronymOpsImpl implements AcronymOps {
      */
     private final Handler mDisplayHandler = new Handler();
 
+    /**
+     * Runs the synchronous lookups in a background Thread, so that
+     * only the latest one's results are displayed.
+     */
+    private final LookupExecutor<List<AcronymData>> mLookupExecutor =
+        new LookupExecutor<List<AcronymData>>();
+
     /**
      * The implementation of the AcronymResults AIDL Interface, which
      * will be passed to the Acronym Web service using the
@@ -127,13 +163,21 @@ public class AcronymOpsImpl implements AcronymOps {
     public AcronymOpsImpl(MainActivity activity) {
         // Initialize the WeakReference.
         mActivity = new WeakReference<>(activity);
+    }
 
-        // Initialize the GenericServiceConnection objects.
-        mServiceConnectionSync = 
-            new GenericServiceConnection<AcronymCall>(AcronymCall.class);
-
-        mServiceConnectionAsync =
-            new GenericServiceConnection<AcronymRequest>(AcronymRequest.class);
+    /**
+     * Bind to the Acronym Bound Services ahead of time (e.g., when
+     * the app starts) via @a context, so their processes are running
+     * by the time the first lookup is made.  The bindings are kept
+     * for the life of the process.
+     */
+    public static void prebind(Context context) {
+        BoundServicePool.acquire(context,
+                                 AcronymServiceSync.makeIntent(context),
+                                 sAcronymCallFactory);
+        BoundServicePool.acquire(context,
+                                 AcronymServiceAsync.makeIntent(context),
+                                 sAcronymRequestFactory);
     }
 
     /**
@@ -168,20 +212,19 @@ public class AcronymOpsImpl implements AcronymOps {
               "calling bindService()");
 
         // Launch the Acronym Bound Services if they aren't already
-        // running via a call to bindService(), which binds this
-        // activity to the AcronymService* if they aren't already
-        // bound.
-        if (mServiceConnectionSync.getInterface() == null) 
-            mActivity.get().getApplicationContext().bindService
-                (AcronymServiceSync.makeIntent(mActivity.get()),
-                 mServiceConnectionSync,
-                 Context.BIND_AUTO_CREATE);
+        // running, sharing the BoundServicePool's bindings to the
+        // AcronymService* with everything else in the process.
+        if (mServiceConnectionSync == null) 
+            mServiceConnectionSync = BoundServicePool.acquire
+                (mActivity.get(),
+                 AcronymServiceSync.makeIntent(mActivity.get()),
+                 sAcronymCallFactory);
 
-        if (mServiceConnectionAsync.getInterface() == null) 
-            mActivity.get().getApplicationContext().bindService
-                (AcronymServiceAsync.makeIntent(mActivity.get()),
-                 mServiceConnectionAsync,
-                 Context.BIND_AUTO_CREATE);
+        if (mServiceConnectionAsync == null) 
+            mServiceConnectionAsync = BoundServicePool.acquire
+                (mActivity.get(),
+                 AcronymServiceAsync.makeIntent(mActivity.get()),
+                 sAcronymRequestFactory);
     }
 
     /**
@@ -196,15 +239,21 @@ public class AcronymOpsImpl implements AcronymOps {
             Log.d(TAG,
                   "calling unbindService()");
 
-            // Unbind the Async Service if it is connected.
-            if (mServiceConnectionAsync.getInterface() != null)
-                mActivity.get().getApplicationContext().unbindService
-                    (mServiceConnectionAsync);
+            // Don't display the results of a lookup that's still
+            // running.
+            mLookupExecutor.cancel();
 
-            // Unbind the Sync Service if it is connected.
-            if (mServiceConnectionSync.getInterface() != null)
-                mActivity.get().getApplicationContext().unbindService
-                    (mServiceConnectionSync);
+            // Release the Async Service if it is bound.
+            if (mServiceConnectionAsync != null) {
+                mServiceConnectionAsync.release();
+                mServiceConnectionAsync = null;
+            }
+
+            // Release the Sync Service if it is bound.
+            if (mServiceConnectionSync != null) {
+                mServiceConnectionSync.release();
+                mServiceConnectionSync = null;
+            }
         }
     }
 
@@ -212,24 +261,23 @@ public class AcronymOpsImpl implements AcronymOps {
      * Initiate the asynchronous acronym lookup when the user presses
      * the "Look Up Async" button.
      */
-    public void expandAcronymAsync(String acronym) {
-        final AcronymRequest acronymRequest = 
-            mServiceConnectionAsync.getInterface();
-
-        if (acronymRequest != null) {
-            try {
-                // Invoke a one-way AIDL call, which does not block
-                // the client.  The results are returned via the
-                // sendResults() method of the mAcronymResults
-                // callback object, which runs in a Thread from the
-                // Thread pool managed by the Binder framework.
-                acronymRequest.expandAcronym(acronym,
-                                             mAcronymResults);
-            } catch (RemoteException e) {
-                Log.e(TAG,
-                      "RemoteException:" 
-                      + e.getMessage());
-            }
+    public void expandAcronymAsync(final String acronym) {
+        if (mServiceConnectionAsync != null) {
+            // Invoke a one-way AIDL call, which does not block the
+            // client, as soon as the AcronymServiceAsync is
+            // connected.  The results are returned via the
+            // sendResults() method of the mAcronymResults callback
+            // object, which runs in a Thread from the Thread pool
+            // managed by the Binder framework.
+            mServiceConnectionAsync.call
+                (new BoundServicePool.Call<AcronymRequest>() {
+                    @Override
+                    public void call(AcronymRequest acronymRequest)
+                        throws RemoteException {
+                        acronymRequest.expandAcronym(acronym,
+                                                     mAcronymResults);
+                    }
+                });
         } else {
             Log.d(TAG,
                   "acronymRequest was null.");
@@ -240,48 +288,56 @@ public class AcronymOpsImpl implements AcronymOps {
      * Initiate the synchronous acronym lookup when the user presses
      * the "Look Up Sync" button.
      */
-    public void expandAcronymSync(String acronym) {
-        final AcronymCall acronymCall = 
-            mServiceConnectionSync.getInterface();
+    public void expandAcronymSync(final String acronym) {
+        final BoundServicePool.Binding<AcronymCall> binding =
+            mServiceConnectionSync;
 
-        if (acronymCall != null) {
-            // Use an anonymous AsyncTask to download the Acronym data
-            // in a separate thread and then display any results in
-            // the UI thread.
-            new AsyncTask<String, Void, List<AcronymData>> () {
-                /**
-                 * Acronym we're trying to expand.
-                 */
-                private String mAcronym;
-
-                /**
-                 * Retrieve the expanded acronym results via a
-                 * synchronous two-way method call, which runs in a
-                 * background thread to avoid blocking the UI thread.
-                 */
-                protected List<AcronymData> doInBackground(String... acronyms) {
-                    try {
-                        mAcronym = acronyms[0];
-                        return acronymCall.expandAcronym(mAcronym);
-                    } catch (RemoteException e) {
-                        e.printStackTrace();
+        if (binding != null) {
+            // Use the mLookupExecutor to download the Acronym data
+            // in a background thread and then display any results in
+            // the UI thread.  This lookup supersedes any that's still
+            // running.
+            mLookupExecutor.execute
+                (new LookupExecutor.Lookup<List<AcronymData>>() {
+                    /**
+                     * Retrieve the expanded acronym results via a
+                     * synchronous two-way method call, which runs in
+                     * a background thread to avoid blocking the UI
+                     * thread.
+                     */
+                    @Override
+                    public List<AcronymData> lookup() throws RemoteException {
+                        // Wait for the AcronymServiceSync to be
+                        // connected if need be.
+                        final AcronymCall acronymCall;
+                        try {
+                            acronymCall =
+                                binding.await(CONNECT_TIMEOUT_SECS,
+                                              TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return null;
+                        }
+                        if (acronymCall == null) {
+                            Log.d(TAG, "AcronymServiceSync didn't connect");
+                            return null;
+                        }
+                        return acronymCall.expandAcronym(acronym);
                     }
-                    return null;
-                }
-
-                /**
-                 * Display the results in the UI Thread.
-                 */
-                protected void onPostExecute(List<AcronymData> acronymDataList) {
-                    mResults = acronymDataList;
-                    mActivity.get().displayResults(acronymDataList,
-                                                   "no expansions for "
-                                                   + mAcronym
-                                                   + " found");
-                }
-                // Execute the AsyncTask to expand the acronym without
-                // blocking the caller.
-            }.execute(acronym);
+                },
+                 new LookupExecutor.Callback<List<AcronymData>>() {
+                    /**
+                     * Display the results in the UI Thread.
+                     */
+                    @Override
+                    public void onResult(List<AcronymData> acronymDataList) {
+                        mResults = acronymDataList;
+                        mActivity.get().displayResults(acronymDataList,
+                                                       "no expansions for "
+                                                       + acronym
+                                                       + " found");
+                    }
+                });
         } else {
             Log.d(TAG, "mAcronymCall was null.");
         }
@@ -0,0 +1,203 @@
+package vandy.mooc.operations;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * This class runs lookups that block (e.g., two-way AIDL calls) in a
+ * small pool of background Threads that's dedicated to the ops layer,
+ * rather than on AsyncTask's serial executor, where they'd queue up
+ * behind each other and behind every other AsyncTask in the app.
+ * Only the latest lookup started by a LookupExecutor matters: starting
+ * a lookup cancels the one it supersedes, and the result of a
+ * superseded lookup is never delivered.  Results are delivered in the
+ * UI Thread.
+ */
+public class LookupExecutor<Result> {
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    private final static String TAG = "LookupExecutor";
+
+    /**
+     * Maximum number of lookups that run at once, across all the
+     * LookupExecutors.
+     */
+    private static final int POOL_SIZE = 2;
+
+    /**
+     * Time (in seconds) an idle Thread waits for a lookup before it
+     * exits.
+     */
+    private static final long KEEP_ALIVE_SECS = 30;
+
+    /**
+     * Creates the Threads of the pool, which run at background
+     * priority so they don't compete with the UI Thread.
+     */
+    private static final ThreadFactory sThreadFactory =
+        new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority
+                                (Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "Lookup #" + mCount.incrementAndGet());
+            }
+        };
+
+    /**
+     * The pool of Threads that run the lookups, which only keeps its
+     * Threads while there are lookups to run.
+     */
+    private static final ThreadPoolExecutor sExecutor =
+        new ThreadPoolExecutor(POOL_SIZE,
+                               POOL_SIZE,
+                               KEEP_ALIVE_SECS,
+                               TimeUnit.SECONDS,
+                               new LinkedBlockingQueue<Runnable>(),
+                               sThreadFactory);
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * A lookup, which runs in a background Thread.
+     */
+    public interface Lookup<Result> {
+        /**
+         * Make the lookup and return its result.
+         */
+        Result lookup() throws RemoteException;
+    }
+
+    /**
+     * Receives the result of a lookup in the UI Thread.
+     */
+    public interface Callback<Result> {
+        /**
+         * Hook method called back with the @a result of the lookup,
+         * which is null if the lookup failed.
+         */
+        void onResult(Result result);
+    }
+
+    /**
+     * Used to deliver results in the UI Thread.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The latest lookup, which is the only one whose result is
+     * delivered.  Only accessed in the UI Thread.
+     */
+    private LookupTask mLatest;
+
+    /**
+     * Start @a lookup in a background Thread, superseding the lookup
+     * started before it, and pass its result to @a callback in the UI
+     * Thread.  Must be called in the UI Thread.
+     */
+    public void execute(Lookup<Result> lookup,
+                        Callback<Result> callback) {
+        cancel();
+        mLatest = new LookupTask(lookup, callback);
+        sExecutor.execute(mLatest);
+    }
+
+    /**
+     * Cancel the latest lookup, if it's still running, so its result
+     * is never delivered.  A lookup that's waiting for a Thread never
+     * runs; one that's blocked in a Binder call can't be interrupted,
+     * so it runs to completion but its result is dropped.  Must be
+     * called in the UI Thread.
+     */
+    public void cancel() {
+        if (mLatest != null) {
+            mLatest.cancel(false);
+            sExecutor.remove(mLatest);
+            mLatest = null;
+        }
+    }
+
+    /**
+     * Runs a Lookup and posts its result to the UI Thread.
+     */
+    private class LookupTask extends FutureTask<Result> {
+        /**
+         * Receives the result.
+         */
+        private final Callback<Result> mCallback;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        LookupTask(final Lookup<Result> lookup,
+                   Callback<Result> callback) {
+            super(new Callable<Result>() {
+                    @Override
+                    public Result call() throws RemoteException {
+                        return lookup.lookup();
+                    }
+                });
+            mCallback = callback;
+        }
+
+        /**
+         * Hook method called back in the background Thread when the
+         * lookup is done.
+         */
+        @Override
+        protected void done() {
+            if (isCancelled())
+                return;
+
+            mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Drop the result if the lookup was
+                        // superseded while it was being posted.
+                        if (mLatest != LookupTask.this) {
+                            Log.d(TAG, "dropping result of superseded lookup");
+                            return;
+                        }
+                        mLatest = null;
+                        mCallback.onResult(getResult());
+                    }
+                });
+        }
+
+        /**
+         * Returns the result of the lookup, or null if it failed.
+         */
+        private Result getResult() {
+            try {
+                return get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "lookup failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+}
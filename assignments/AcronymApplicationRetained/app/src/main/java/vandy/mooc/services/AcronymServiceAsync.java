@@ -5,11 +5,13 @@ import java.util.List;
 import vandy.mooc.aidl.AcronymData;
 import vandy.mooc.aidl.AcronymRequest;
 import vandy.mooc.aidl.AcronymResults;
+import vandy.mooc.utils.CallMetrics;
 import vandy.mooc.utils.Utils;
 import android.content.Context;
 import android.content.Intent;
 import android.net.http.AndroidHttpClient;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.util.Log;
 
@@ -53,9 +55,16 @@ public class AcronymServiceAsync extends LifecycleLoggingService {
      */
     @Override
     public IBinder onBind(Intent intent) {
+        super.onBind(intent);
         return mAcronymRequestImpl;
     }
 
+    /**
+     * The latencies of the calls to expandAcronym().
+     */
+    private static final CallMetrics sExpandAcronymMetrics =
+        new CallMetrics("AcronymServiceAsync.expandAcronym");
+
     /**
      * The concrete implementation of the AIDL Interface
      * AcronymRequest, which extends the Stub class that implements
@@ -68,6 +77,23 @@ public class AcronymServiceAsync extends LifecycleLoggingService {
      */
     private final AcronymRequest.Stub mAcronymRequestImpl =
         new AcronymRequest.Stub() {
+            /**
+             * Time each call of expandAcronym(), including unmarshaling
+             * its arguments and marshaling its results.
+             */
+            @Override
+            public boolean onTransact(int code,
+                                      Parcel data,
+                                      Parcel reply,
+                                      int flags) throws RemoteException {
+                final long start = sExpandAcronymMetrics.begin(code);
+                try {
+                    return super.onTransact(code, data, reply, flags);
+                } finally {
+                    sExpandAcronymMetrics.end(start);
+                }
+            }
+
             /**
              * Implement the AIDL AcronymRequest expandAcronym()
              * method, which forwards to DownloadUtils getResults() to
@@ -5,10 +5,12 @@ import java.util.List;
 
 import vandy.mooc.aidl.AcronymCall;
 import vandy.mooc.aidl.AcronymData;
+import vandy.mooc.utils.CallMetrics;
 import vandy.mooc.utils.Utils;
 import android.content.Context;
 import android.content.Intent;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.util.Log;
 
@@ -51,9 +53,16 @@ public class AcronymServiceSync extends LifecycleLoggingService {
      */
     @Override
     public IBinder onBind(Intent intent) {
+        super.onBind(intent);
         return mAcronymCallImpl;
     }
 
+    /**
+     * The latencies of the calls to expandAcronym().
+     */
+    private static final CallMetrics sExpandAcronymMetrics =
+        new CallMetrics("AcronymServiceSync.expandAcronym");
+
     /**
      * The concrete implementation of the AIDL Interface AcronymCall,
      * which extends the Stub class that implements AcronymCall,
@@ -66,6 +75,23 @@ public class AcronymServiceSync extends LifecycleLoggingService {
      */
     private final AcronymCall.Stub mAcronymCallImpl =
         new AcronymCall.Stub() {
+            /**
+             * Time each call of expandAcronym(), including unmarshaling
+             * its arguments and marshaling its results.
+             */
+            @Override
+            public boolean onTransact(int code,
+                                      Parcel data,
+                                      Parcel reply,
+                                      int flags) throws RemoteException {
+                final long start = sExpandAcronymMetrics.begin(code);
+                try {
+                    return super.onTransact(code, data, reply, flags);
+                } finally {
+                    sExpandAcronymMetrics.end(start);
+                }
+            }
+
             /**
              * Implement the AIDL AcronymCall expandAcronym() method,
              * which forwards to DownloadUtils getResults() to obtain
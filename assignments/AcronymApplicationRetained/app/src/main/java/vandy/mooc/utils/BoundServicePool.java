@@ -0,0 +1,222 @@
+package vandy.mooc.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * @class BoundServicePool
+ *
+ * @brief This class shares one binding to each Bound Service across
+ *        everything in the process that uses it (e.g., the ops
+ *        objects of several Activities), rather than each of them
+ *        binding separately.  A Binding is reference counted: the
+ *        first acquire() binds to the Service and the last release()
+ *        unbinds from it.
+ *
+ *        Since binding is asynchronous, a Binding also takes care of
+ *        requests made before the Service is connected: call() queues
+ *        them until it's connected, and await() blocks a background
+ *        Thread until it's connected, so no request is lost.
+ *
+ *        acquire(), release(), and call() must be called in the UI
+ *        Thread, which is also where the Android Service framework
+ *        dispatches the ServiceConnection callbacks.
+ */
+public class BoundServicePool {
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    private static final String TAG = "BoundServicePool";
+
+    /**
+     * The Bindings, by the Service they're bound to.
+     */
+    private static final Map<ComponentName, Binding<?>> sBindings =
+        new HashMap<ComponentName, Binding<?>>();
+
+    /**
+     * A call to a Bound Service's AIDL interface.
+     */
+    public interface Call<AIDLInterface> {
+        /**
+         * Make the call on @a service.
+         */
+        void call(AIDLInterface service) throws RemoteException;
+    }
+
+    /**
+     * Returns the Binding to the Bound Service identified by @a
+     * intent (which must name its component), binding to it via @a
+     * context if it isn't bound already.  The caller must release()
+     * the Binding when it's done with it.
+     *
+     * @param factory
+     *        Creates the AIDL interface object, which must be of the
+     *        same type for every acquire() of the Service.
+     */
+    @SuppressWarnings("unchecked")
+    public static <AIDLInterface extends IInterface> Binding<AIDLInterface>
+        acquire(Context context,
+                Intent intent,
+                GenericServiceConnection.StubFactory<AIDLInterface> factory) {
+        final ComponentName component = intent.getComponent();
+        Binding<AIDLInterface> binding =
+            (Binding<AIDLInterface>) sBindings.get(component);
+        if (binding == null) {
+            binding = new Binding<AIDLInterface>(context.getApplicationContext(),
+                                                 component,
+                                                 factory);
+            sBindings.put(component, binding);
+            binding.bindService(binding.mContext, intent);
+        }
+        ++binding.mReferences;
+        return binding;
+    }
+
+    /**
+     * A shared binding to a Bound Service.
+     */
+    public static class Binding<AIDLInterface extends IInterface>
+                  extends GenericServiceConnection<AIDLInterface> {
+        /**
+         * The application Context the Service is bound via.
+         */
+        private final Context mContext;
+
+        /**
+         * The Service that's bound.
+         */
+        private final ComponentName mComponent;
+
+        /**
+         * Number of acquire() calls that haven't been released.
+         */
+        private int mReferences;
+
+        /**
+         * Calls made before the Service was connected, in the order
+         * they were made.
+         */
+        private final List<Call<AIDLInterface>> mPending =
+            new ArrayList<Call<AIDLInterface>>();
+
+        /**
+         * Released when the Service is connected, and replaced when
+         * it's disconnected.
+         */
+        private volatile CountDownLatch mReady = new CountDownLatch(1);
+
+        /**
+         * Constructor initializes the fields.
+         */
+        Binding(Context context,
+                ComponentName component,
+                GenericServiceConnection.StubFactory<AIDLInterface> factory) {
+            super(factory);
+            mContext = context;
+            mComponent = component;
+        }
+
+        /**
+         * Make @a call on the Service now if it's connected, else as
+         * soon as it's connected.
+         */
+        public void call(Call<AIDLInterface> call) {
+            final AIDLInterface service = getInterface();
+            if (service != null)
+                invoke(call, service);
+            else {
+                Log.d(TAG,
+                      "queueing call until " + mComponent + " is connected");
+                mPending.add(call);
+            }
+        }
+
+        /**
+         * Block the calling (background) Thread until the Service is
+         * connected or @a timeout elapses.
+         *
+         * @return
+         *        The AIDL interface object, or null if the Service
+         *        isn't connected within the timeout.
+         */
+        public AIDLInterface await(long timeout,
+                                   TimeUnit unit) throws InterruptedException {
+            mReady.await(timeout, unit);
+            return getInterface();
+        }
+
+        /**
+         * Release this reference to the Binding, unbinding from the
+         * Service if it was the last one.  Calls that are still
+         * queued are dropped.
+         */
+        public void release() {
+            if (--mReferences > 0)
+                return;
+
+            sBindings.remove(mComponent);
+            if (!mPending.isEmpty())
+                Log.d(TAG,
+                      "dropping " + mPending.size()
+                      + " calls queued for " + mComponent);
+            mPending.clear();
+            mContext.unbindService(this);
+        }
+
+        /**
+         * Hook method called back by the Android Service framework
+         * after connection is established to the Bound Service, which
+         * makes the calls that were queued.
+         */
+        @Override
+        public void onServiceConnected(ComponentName name,
+                                       IBinder binder) {
+            super.onServiceConnected(name, binder);
+            final AIDLInterface service = getInterface();
+            mReady.countDown();
+
+            for (Call<AIDLInterface> call : mPending)
+                invoke(call, service);
+            mPending.clear();
+        }
+
+        /**
+         * Called if the Bound Service crashes and is no longer
+         * available.  The Service stays bound, so Android reconnects
+         * it once it's restarted, and calls made in the meantime are
+         * queued.
+         */
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            super.onServiceDisconnected(name);
+            mReady = new CountDownLatch(1);
+        }
+
+        /**
+         * Make @a call on @a service.
+         */
+        private void invoke(Call<AIDLInterface> call,
+                            AIDLInterface service) {
+            try {
+                call.call(service);
+            } catch (RemoteException e) {
+                Log.e(TAG,
+                      "RemoteException:"
+                      + e.getMessage());
+            }
+        }
+    }
+}
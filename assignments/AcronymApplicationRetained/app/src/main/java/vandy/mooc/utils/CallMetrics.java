@@ -0,0 +1,151 @@
+package vandy.mooc.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.IBinder;
+
+/**
+ * This class times the calls made on one method of an AIDL Stub
+ * implementation, keeping its histograms and counters in Metrics so
+ * they're dumped along with the others.  Each call is recorded as
+ *
+ * <name>.total    - from the start to the end of onTransact(),
+ * <name>.network  - spent talking to a Web service,
+ * <name>.parse    - spent parsing the Web service's reply,
+ * <name>.marshal  - everything else, which is mostly unmarshaling the
+ *                   arguments and marshaling the results (or sending
+ *                   them to a callback),
+ * <name>.inFlight    - the number of calls being handled right now,
+ * <name>.maxInFlight - the most calls ever handled at once.
+ *
+ * A Stub implementation wraps its onTransact() like this:
+ *
+ *   public boolean onTransact(int code, Parcel data, Parcel reply,
+ *                             int flags) throws RemoteException {
+ *       final long start = mMetrics.begin(code);
+ *       try {
+ *           return super.onTransact(code, data, reply, flags);
+ *       } finally {
+ *           mMetrics.end(start);
+ *       }
+ *   }
+ *
+ * and the code the method calls reports its phases via the static
+ * recordPhase() method, which needn't know what call it's part of.
+ */
+public class CallMetrics {
+    /**
+     * The phases that recordPhase() accepts.
+     */
+    public static final int NETWORK = 0;
+    public static final int PARSE = 1;
+
+    /**
+     * The call being handled by each Thread, if any.
+     */
+    private static final ThreadLocal<Call> sCall =
+        new ThreadLocal<Call>() {
+            @Override
+            protected Call initialValue() {
+                return new Call();
+            }
+        };
+
+    /**
+     * The histograms of the calls and their phases.
+     */
+    private final LatencyHistogram mTotal;
+    private final LatencyHistogram[] mPhases;
+    private final LatencyHistogram mMarshal;
+
+    /**
+     * The number of calls being handled, and the most ever handled
+     * at once.
+     */
+    private final AtomicLong mInFlight;
+    private final AtomicLong mMaxInFlight;
+
+    /**
+     * Constructor keeps the metrics of the calls to the method named
+     * @a name, e.g., "AcronymServiceSync.expandAcronym".
+     */
+    public CallMetrics(String name) {
+        mTotal = Metrics.histogram(name + ".total");
+        mPhases = new LatencyHistogram[] {
+            Metrics.histogram(name + ".network"),
+            Metrics.histogram(name + ".parse")
+        };
+        mMarshal = Metrics.histogram(name + ".marshal");
+        mInFlight = Metrics.counter(name + ".inFlight");
+        mMaxInFlight = Metrics.counter(name + ".maxInFlight");
+    }
+
+    /**
+     * Begin timing the Binder transaction @a code, which is handed
+     * to end() when the transaction's done.  Returns the start time,
+     * or 0 if @a code isn't a call of an AIDL method (e.g., it's a
+     * ping or a dump), which isn't timed.
+     */
+    public long begin(int code) {
+        if (code < IBinder.FIRST_CALL_TRANSACTION
+            || code > IBinder.LAST_CALL_TRANSACTION)
+            return 0;
+
+        final long inFlight = mInFlight.incrementAndGet();
+        for (long max = mMaxInFlight.get();
+             inFlight > max && !mMaxInFlight.compareAndSet(max, inFlight);
+             max = mMaxInFlight.get())
+            continue;
+
+        final Call call = sCall.get();
+        call.mMetrics = this;
+        call.mPhaseNanos = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish timing the transaction that begin() returned @a start
+     * for.
+     */
+    public void end(long start) {
+        if (start == 0)
+            return;
+
+        final Call call = sCall.get();
+        final long total = mTotal.recordSince(start);
+        mMarshal.record(total - call.mPhaseNanos);
+        call.mMetrics = null;
+        mInFlight.decrementAndGet();
+    }
+
+    /**
+     * Record that the @a phase (e.g., NETWORK) of the call being
+     * handled by the calling Thread started at @a startNanos (a
+     * System.nanoTime() timestamp) and has just finished.  Does
+     * nothing if the Thread isn't handling a call, e.g., it's
+     * warming up.
+     */
+    public static void recordPhase(int phase,
+                                   long startNanos) {
+        final Call call = sCall.get();
+        if (call.mMetrics != null)
+            call.mPhaseNanos +=
+                call.mMetrics.mPhases[phase].recordSince(startNanos);
+    }
+
+    /**
+     * The call being handled by a Thread.
+     */
+    private static class Call {
+        /**
+         * The metrics of the method being called, or null if the
+         * Thread isn't handling a call.
+         */
+        CallMetrics mMetrics;
+
+        /**
+         * The time spent in the phases recorded so far.
+         */
+        long mPhaseNanos;
+    }
+}
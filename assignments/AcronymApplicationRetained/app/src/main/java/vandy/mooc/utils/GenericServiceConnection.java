@@ -2,8 +2,12 @@ package vandy.mooc.utils;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.IBinder;
 import android.util.Log;
@@ -13,15 +17,27 @@ import android.util.Log;
  *
  * @brief This class provides a generic framework for defining a
  *        ServiceConnection object to an AIDLInterface that resides in
- *        a Bound Service.  It uses Java reflection to factor out
- *        common behavior that is otherwise written in a tedious and
- *        error-prone way for each ServiceConnection object.
+ *        a Bound Service.  It factors out common behavior that is
+ *        otherwise written in a tedious and error-prone way for each
+ *        ServiceConnection object.
+ *
+ *        The AIDL interface object is created by a StubFactory, which
+ *        is normally just a call to the generated Stub.asInterface()
+ *        method, so connecting involves no reflection.  Callers that
+ *        only have the AIDL interface's Class can still use Java
+ *        reflection to find the stub, which is only done once per
+ *        AIDL interface per process.
  *
  *        Thanks to Peter Koves for providing the reflection logic!
  */
-public class GenericServiceConnection<AIDLInterface extends 
-                                      android.os.IInterface> 
+public class GenericServiceConnection<AIDLInterface extends
+                                      android.os.IInterface>
              implements ServiceConnection {
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    private static final String TAG = "GenericServiceConnection";
+
     /**
      * The following are dependent on code generated by the AIDL
      * compiler, so if that generated code were to change (which is
@@ -31,6 +47,24 @@ public class GenericServiceConnection<AIDLInterface extends
     private static final String AS_INTERFACE = "asInterface";
     private static final Class<?>[] AI_PARAMS = {IBinder.class};
 
+    /**
+     * Creates the AIDL interface object that proxies an IBinder,
+     * e.g., by calling WeatherCall.Stub.asInterface(binder).
+     */
+    public interface StubFactory<AIDLInterface> {
+        /**
+         * Returns the AIDL interface object that proxies @a binder.
+         */
+        AIDLInterface asInterface(IBinder binder);
+    }
+
+    /**
+     * The StubFactories that have been resolved via reflection, by
+     * AIDL interface.
+     */
+    private static final Map<Class<?>, StubFactory<?>> sReflectiveFactories =
+        new HashMap<Class<?>, StubFactory<?>>();
+
     /**
      * Reference to the AIDL interface object after the client has
      * finished binding to the Bound Service.
@@ -38,14 +72,15 @@ public class GenericServiceConnection<AIDLInterface extends
     private AIDLInterface mInterface;
 
     /**
-     * The stub class of the AIDL interface.
+     * Creates the AIDL interface object.
      */
-    private final Class<?> mStub;
-    
+    private final StubFactory<AIDLInterface> mFactory;
+
     /**
-     * The reflective asInterface(IBinder service) method of the stub.
+     * The System.nanoTime() at which bindService() was last called,
+     * or 0 if the connection wasn't bound via bindService().
      */
-    private final Method mAsInterface;
+    private long mBindStarted;
 
     /**
      * Accessor that returns the AIDL interface object.
@@ -53,7 +88,15 @@ public class GenericServiceConnection<AIDLInterface extends
     public AIDLInterface getInterface() {
         return mInterface;
     }
-    
+
+    /**
+     * Create a Generic ServiceConnection that uses @a factory to
+     * create the AIDL interface object.
+     */
+    public GenericServiceConnection(StubFactory<AIDLInterface> factory) {
+        mFactory = factory;
+    }
+
     /**
      * Create a Generic ServiceConnection using the specified AIDL
      * interface.
@@ -61,43 +104,41 @@ public class GenericServiceConnection<AIDLInterface extends
      * the generic parameter.
      */
     public GenericServiceConnection(final Class<AIDLInterface> aidl) {
-        Class<?> stub = null;
-        Method method = null;
-        for (final Class<?> c : aidl.getDeclaredClasses()) {
-            if (c.getSimpleName().equals(STUB)) {
-                try {
-                    stub = c;
-                    method = stub.getMethod(AS_INTERFACE,
-                                            AI_PARAMS);
-                    break;
-                } catch (final NoSuchMethodException e) { // Should not be possible
-                    e.printStackTrace();
-                }
-            }
-        }
-        mStub = stub;
-        mAsInterface = method;
+        this(reflectiveFactory(aidl));
+    }
+
+    /**
+     * Bind to the Bound Service identified by @a intent, starting it
+     * if need be, and time how long it takes to connect.
+     */
+    public boolean bindService(Context context,
+                               Intent intent) {
+        mBindStarted = System.nanoTime();
+        return context.bindService(intent,
+                                   this,
+                                   Context.BIND_AUTO_CREATE);
     }
 
     /**
      * Hook method called back by the Android Service framework after
      * connection is established to a Bound Service.
      */
-    @SuppressWarnings("unchecked")
     @Override
     public void onServiceConnected(ComponentName name,
                                    IBinder service) {
-        Log.d("GenericServiceConnection", "Connected to ComponentName " + name);
-        try {
-            mInterface = (AIDLInterface)mAsInterface.invoke(mStub,
-                                                            new Object[]{service});
-        } catch (IllegalArgumentException e) { // Should not be possible
-            e.printStackTrace();
-        } catch (IllegalAccessException e) { // Should not be possible
-            e.printStackTrace();
-        } catch (InvocationTargetException e) { // Should not be possible
-            e.printStackTrace();
-        }
+        mInterface = mFactory.asInterface(service);
+
+        if (mBindStarted != 0) {
+            final long nanos =
+                Metrics.histogram("bind-onServiceConnected."
+                                  + name.getShortClassName())
+                       .recordSince(mBindStarted);
+            Log.d(TAG,
+                  "Connected to ComponentName " + name + " in "
+                  + nanos / 1000000 + " ms");
+            mBindStarted = 0;
+        } else
+            Log.d(TAG, "Connected to ComponentName " + name);
     }
 
     /**
@@ -109,4 +150,82 @@ public class GenericServiceConnection<AIDLInterface extends
     public void onServiceDisconnected(ComponentName name) {
         mInterface = null;
     }
+
+    /**
+     * Returns a StubFactory that calls the asInterface() method of
+     * the stub of @a aidl via reflection, which is only looked up the
+     * first time.
+     */
+    @SuppressWarnings("unchecked")
+    private static <AIDLInterface> StubFactory<AIDLInterface>
+        reflectiveFactory(Class<AIDLInterface> aidl) {
+        synchronized (sReflectiveFactories) {
+            StubFactory<?> factory = sReflectiveFactories.get(aidl);
+            if (factory == null) {
+                factory = new ReflectiveStubFactory<AIDLInterface>(aidl);
+                sReflectiveFactories.put(aidl, factory);
+            }
+            return (StubFactory<AIDLInterface>) factory;
+        }
+    }
+
+    /**
+     * A StubFactory that calls the asInterface() method of an AIDL
+     * interface's stub via reflection.
+     */
+    private static class ReflectiveStubFactory<AIDLInterface>
+                   implements StubFactory<AIDLInterface> {
+        /**
+         * The stub class of the AIDL interface.
+         */
+        private final Class<?> mStub;
+
+        /**
+         * The reflective asInterface(IBinder service) method of the
+         * stub.
+         */
+        private final Method mAsInterface;
+
+        /**
+         * Constructor finds the stub of @a aidl and its asInterface()
+         * method.
+         */
+        ReflectiveStubFactory(Class<AIDLInterface> aidl) {
+            Class<?> stub = null;
+            Method method = null;
+            for (final Class<?> c : aidl.getDeclaredClasses()) {
+                if (c.getSimpleName().equals(STUB)) {
+                    try {
+                        stub = c;
+                        method = stub.getMethod(AS_INTERFACE,
+                                                AI_PARAMS);
+                        break;
+                    } catch (final NoSuchMethodException e) { // Should not be possible
+                        e.printStackTrace();
+                    }
+                }
+            }
+            mStub = stub;
+            mAsInterface = method;
+        }
+
+        /**
+         * Returns the AIDL interface object that proxies @a binder.
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        public AIDLInterface asInterface(IBinder binder) {
+            try {
+                return (AIDLInterface) mAsInterface.invoke(mStub,
+                                                           binder);
+            } catch (IllegalArgumentException e) { // Should not be possible
+                e.printStackTrace();
+            } catch (IllegalAccessException e) { // Should not be possible
+                e.printStackTrace();
+            } catch (InvocationTargetException e) { // Should not be possible
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
 }
@@ -1,7 +1,9 @@
 package vandy.mooc.utils;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.Activity;
 import android.app.Fragment;
@@ -92,6 +94,20 @@ public class RetainedFragmentManager {
         }
     }
 
+    /**
+     * Add the @a object with the @a key.
+     */
+    public <T> void put(Key<T> key, T object) {
+        mRetainedFragment.put(key, object);
+    }
+
+    /**
+     * Get the object with @a key.
+     */
+    public <T> T get(Key<T> key) {
+        return mRetainedFragment.get(key);
+    }
+
     /**
      * Add the @a object with the @a key.
      */
@@ -122,6 +138,54 @@ public class RetainedFragmentManager {
         return mRetainedFragment.getActivity();
     }
 
+    /**
+     * A typed key of an object retained between runtime configuration
+     * changes, which is normally kept in a static final field of the
+     * Activity whose state it's part of, e.g.:
+     *
+     *   private static final RetainedFragmentManager.Key<AcronymOps>
+     *       ACRONYM_OPS_STATE =
+     *       new RetainedFragmentManager.Key<AcronymOps>("ACRONYM_OPS_STATE");
+     *
+     * Each Key is given its own slot when it's created, so putting and
+     * getting an object is an array access that involves no hashing,
+     * string building or casts by the caller.  Like every object
+     * retained, the object is kept by reference, so, e.g., a large
+     * List of results is retained without being copied.
+     */
+    public static final class Key<T> {
+        /**
+         * The number of slots handed out to Keys so far.
+         */
+        private static final AtomicInteger sSlots = new AtomicInteger();
+
+        /**
+         * The index of this Key's slot.
+         */
+        private final int mSlot;
+
+        /**
+         * The name of this Key, which is only used for debugging.
+         */
+        private final String mName;
+
+        /**
+         * Constructor gives the Key a slot and a @a name.
+         */
+        public Key(String name) {
+            mSlot = sSlots.getAndIncrement();
+            mName = name;
+        }
+
+        /**
+         * Returns the name of the Key.
+         */
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
     /**
      * "Headless" Fragment that retains state information between
      * configuration changes.  Plays the role of the "Memento" in the
@@ -129,7 +193,12 @@ public class RetainedFragmentManager {
      */
     public static class RetainedFragment extends Fragment {
         /**
-         * Maps keys to objects.
+         * The objects added with a Key, indexed by the Key's slot.
+         */
+        private Object[] mSlots = new Object[0];
+
+        /**
+         * Maps String keys to objects.
          */
         private HashMap<String, Object> mData =
             new HashMap<String, Object>();
@@ -149,6 +218,29 @@ public class RetainedFragmentManager {
             setRetainInstance(true);
         }
 
+        /**
+         * Add the @a object with the @a key.
+         */
+        public <T> void put(Key<T> key, T object) {
+            if (key.mSlot >= mSlots.length)
+                // Make room for every Key made so far, which is
+                // normally all of them.
+                mSlots = Arrays.copyOf(mSlots,
+                                       Math.max(key.mSlot + 1,
+                                                Key.sSlots.get()));
+            mSlots[key.mSlot] = object;
+        }
+
+        /**
+         * Get the object with @a key.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(Key<T> key) {
+            return key.mSlot < mSlots.length
+                ? (T) mSlots[key.mSlot]
+                : null;
+        }
+
         /**
          * Add the @a object with the @a key.
          */
@@ -0,0 +1,105 @@
+package vandy.mooc;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import vandy.mooc.operations.WeatherOpsImpl;
+import vandy.mooc.utils.WeatherUtils;
+
+/**
+ * This Application warms up the app as soon as each of its processes
+ * starts, so the first weather lookup is as fast as the ones after
+ * it.  In the UI process it binds to the Weather Bound Services,
+ * which starts their processes before the MainActivity is even
+ * created.  In each Service process it loads the Json parser and
+ * (optionally) primes DNS and a connection to the Weather Service.
+ */
+public class WeatherApplication extends Application {
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    protected final String TAG = getClass().getSimpleName();
+
+    /**
+     * Change this variable to true to have the Service processes
+     * prime DNS and a connection to the Weather Service as soon as they
+     * start.  It's off by default so the app doesn't touch the
+     * network until a lookup is made, e.g., when it's tested without
+     * a stable Internet connection.
+     */
+    static final boolean WARM_UP_NETWORK = false;
+
+    /**
+     * Hook method called when a process of the app is created.
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        final String processName = getProcessName(this);
+        if (processName == null
+            || processName.equals(getApplicationInfo().processName))
+            // The UI process, which is assumed if the name couldn't
+            // be found, since prebinding there is harmless.
+            WeatherOpsImpl.prebind(this);
+        else
+            // A Service process, which shouldn't delay its Service's
+            // onCreate() by warming up in the main Thread.
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority
+                            (Process.THREAD_PRIORITY_BACKGROUND);
+                    final long start = SystemClock.elapsedRealtime();
+                    WeatherUtils.warmUp(WARM_UP_NETWORK);
+                    Log.d(TAG, "warmed up " + processName + " in "
+                            + (SystemClock.elapsedRealtime() - start) + " ms");
+                }
+            }, "WarmUp").start();
+    }
+
+    /**
+     * Returns the name of the calling process, e.g., "vandy.mooc" or
+     * "vandy.mooc:remote1", or null if it can't be found.  It's read
+     * from /proc/self/cmdline, which doesn't need a Binder call,
+     * falling back on the ActivityManager.
+     */
+    private static String getProcessName(Context context) {
+        try (InputStream is = new FileInputStream("/proc/self/cmdline")) {
+            // The kernel returns the whole (short) file in one read.
+            final byte[] buffer = new byte[256];
+            final int length = is.read(buffer);
+
+            // The name is followed by a NUL.
+            int end = 0;
+            while (end < length && buffer[end] != 0)
+                ++end;
+            if (end > 0)
+                return new String(buffer, 0, end, "UTF-8").trim();
+        } catch (IOException e) {
+            // Fall back on the ActivityManager.
+        }
+
+        final ActivityManager activityManager =
+            (ActivityManager) context.getSystemService
+            (Context.ACTIVITY_SERVICE);
+        final List<ActivityManager.RunningAppProcessInfo> processes =
+            activityManager.getRunningAppProcesses();
+        if (processes == null)
+            return null;
+        final int pid = Process.myPid();
+        for (ActivityManager.RunningAppProcessInfo info : processes)
+            if (info.pid == pid)
+                return info.processName;
+        return null;
+    }
+}
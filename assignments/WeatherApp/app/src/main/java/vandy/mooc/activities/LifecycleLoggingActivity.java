@@ -1,12 +1,23 @@
 package vandy.mooc.activities;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+import vandy.mooc.utils.Metrics;
 import android.app.Activity;
 import android.os.Bundle;
 import android.util.Log;
 
 /**
  * This abstract class extends the Activity class and overrides
- * lifecycle callbacks for logging various lifecycle events.
+ * lifecycle callbacks for logging various lifecycle events.  It also
+ * times them, recording in the Metrics histograms how long each step
+ * from onCreate() to the first frame takes and how long whole starts
+ * take, distinguishing cold starts (the first Activity created in a
+ * new process), warm starts (Activities created in a running
+ * process, e.g., after a configuration change), and restarts (from
+ * onRestart()).  The histograms are dumped by "adb shell dumpsys
+ * activity top".
  */
 public abstract class LifecycleLoggingActivity extends Activity {
     /**
@@ -14,6 +25,31 @@ public abstract class LifecycleLoggingActivity extends Activity {
      */
     protected final String TAG = getClass().getSimpleName();
 
+    /**
+     * True once an Activity has been created in this process, after
+     * which starts are no longer cold.  Only accessed in the UI
+     * Thread.
+     */
+    private static boolean sProcessStarted;
+
+    /**
+     * The System.nanoTime() at which the current start began (in
+     * onCreate() or onRestart()), or 0 if it's been recorded.
+     */
+    private long mStartBegan;
+
+    /**
+     * The kind of the current start ("coldStart", "warmStart", or
+     * "restart").
+     */
+    private String mStartKind;
+
+    /**
+     * The System.nanoTime() at which the last lifecycle hook method
+     * was called.
+     */
+    private long mLastHook;
+
     /**
      * Hook method called when a new instance of Activity is created.
      * One time initialization code should go here e.g. UI layout,
@@ -28,6 +64,9 @@ public abstract class LifecycleLoggingActivity extends Activity {
         // Always call super class for necessary
         // initialization/implementation.
         super.onCreate(savedInstanceState);
+        mStartBegan = mLastHook = System.nanoTime();
+        mStartKind = sProcessStarted ? "warmStart" : "coldStart";
+        sProcessStarted = true;
 		
         if(savedInstanceState != null) {
             // The activity is being re-created. Use the
@@ -57,6 +96,7 @@ public abstract class LifecycleLoggingActivity extends Activity {
         // Always call super class for necessary
         // initialization/implementation.
         super.onStart();
+        recordStep("onStart");
         Log.d(TAG,
               "onStart() - the activity is about to become visible");
     }
@@ -76,8 +116,31 @@ public abstract class LifecycleLoggingActivity extends Activity {
         // initialization/implementation and then log which lifecycle
         // hook method is being called.
         super.onResume();
+        recordStep("onResume");
         Log.d(TAG,
               "onResume() - the activity has become visible (it is now \"resumed\")");
+
+        // The Runnable runs once the first frame after onResume() has
+        // been laid out and drawn, which is when the start ends.
+        if (mStartBegan != 0)
+            getWindow().getDecorView().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // An earlier Runnable may have ended the
+                        // start already, e.g., if the Activity was
+                        // paused and resumed before the first frame.
+                        if (mStartBegan == 0)
+                            return;
+                        recordStep("firstFrame");
+                        final long nanos =
+                            Metrics.histogram(TAG + "." + mStartKind)
+                                   .recordSince(mStartBegan);
+                        mStartBegan = 0;
+                        Log.d(TAG,
+                              mStartKind + " took "
+                              + nanos / 1000000 + " ms");
+                    }
+                });
     }
 	
     /**
@@ -123,6 +186,8 @@ public abstract class LifecycleLoggingActivity extends Activity {
         // initialization/implementation and then log which lifecycle
         // hook method is being called.
         super.onRestart();
+        mStartBegan = mLastHook = System.nanoTime();
+        mStartKind = "restart";
         Log.d(TAG,
               "onRestart() - the activity is about to be restarted()");
     }
@@ -141,4 +206,29 @@ public abstract class LifecycleLoggingActivity extends Activity {
         Log.d(TAG,
               "onDestroy() - the activity is about to be destroyed");
     }
+
+    /**
+     * Dump the Metrics histograms along with the Activity's state,
+     * e.g., via "adb shell dumpsys activity top".
+     */
+    @Override
+    public void dump(String prefix,
+                     FileDescriptor fd,
+                     PrintWriter writer,
+                     String[] args) {
+        super.dump(prefix, fd, writer, args);
+        Metrics.dump(prefix, writer);
+    }
+
+    /**
+     * Record the time since the previous lifecycle hook method of the
+     * current start in the histogram of @a step.
+     */
+    private void recordStep(String step) {
+        if (mStartBegan == 0)
+            return;
+        final long now = System.nanoTime();
+        Metrics.histogram(TAG + "." + step).record(now - mLastHook);
+        mLastHook = now;
+    }
 }
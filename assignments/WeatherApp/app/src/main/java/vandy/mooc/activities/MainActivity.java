@@ -27,6 +27,14 @@ import vandy.mooc.utils.WeatherUtils;
  * automatically.
  */
 public class MainActivity extends LifecycleLoggingActivity {
+    /**
+     * The key of the WeatherOps retained between runtime configuration
+     * changes.
+     */
+    private static final RetainedFragmentManager.Key<WeatherOps>
+            WEATHER_OPS_STATE =
+            new RetainedFragmentManager.Key<WeatherOps>("WEATHER_OPS_STATE");
+
     /**
      * Used to retain the ImageOps state between runtime configuration
      * changes.
@@ -124,7 +132,7 @@ public class MainActivity extends LifecycleLoggingActivity {
             mWeatherOps = new WeatherOpsImpl(this);
 
             // Store the WeatherOps into the RetainedFragmentManager.
-            mRetainedFragmentManager.put("WEATHER_OPS_STATE",
+            mRetainedFragmentManager.put(WEATHER_OPS_STATE,
                     mWeatherOps);
 
             // Initiate the service binding protocol (which may be a
@@ -142,7 +150,7 @@ public class MainActivity extends LifecycleLoggingActivity {
             // Obtain the WeatherOps object from the
             // RetainedFragmentManager.
             mWeatherOps =
-                    mRetainedFragmentManager.get("WEATHER_OPS_STATE");
+                    mRetainedFragmentManager.get(WEATHER_OPS_STATE);
 
             // This check shouldn't be necessary under normal
             // circumtances, but it's better to lose state than to
@@ -154,7 +162,7 @@ public class MainActivity extends LifecycleLoggingActivity {
                 mWeatherOps = new WeatherOpsImpl(this);
 
                 // Store the WeatherOps into the RetainedFragmentManager.
-                mRetainedFragmentManager.put("WEATHER_OPS_STATE",
+                mRetainedFragmentManager.put(WEATHER_OPS_STATE,
                         mWeatherOps);
 
                 // Initiate the service binding protocol (which may be
@@ -1,17 +1,17 @@
 package vandy.mooc.cache;
 
-import android.util.Log;
-
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
 import vandy.mooc.aidl.WeatherData;
+import vandy.mooc.utils.DebugLog;
 
 public class CacheImpl implements Cache {
 
-    protected final String TAG = getClass().getSimpleName();
+    private static final DebugLog sLog =
+            new DebugLog(CacheImpl.class.getSimpleName());
 
     private Map<String, WeatherData> weatherMap;
 
@@ -22,7 +22,7 @@ public class CacheImpl implements Cache {
     @Override
     public void release(WeatherData weatherData) {
         String name = weatherData.getName();
-        Log.d(TAG, "Adding " + name + " to cache");
+        sLog.d("Adding ", name, " to cache");
         weatherMap.put(name, weatherData);
         autoDestroyFromCache(weatherData);
     }
@@ -31,7 +31,7 @@ public class CacheImpl implements Cache {
     public WeatherData acquire(String locationName) {
         WeatherData weatherData = weatherMap.get(locationName);
         if (weatherData != null) {
-            Log.d(TAG, "Retrieving " + locationName + " from cache");
+            sLog.d("Retrieving ", locationName, " from cache");
         }
         return weatherData;
     }
@@ -39,7 +39,7 @@ public class CacheImpl implements Cache {
     @Override
     public void deleteFromCache(WeatherData weatherData) {
         if (weatherMap.containsKey(weatherData.getName())) {
-            Log.d(TAG, "Removing " + weatherData.getName() + " from cache");
+            sLog.d("Removing ", weatherData.getName(), " from cache");
             weatherMap.remove(weatherData.getName());
         }
     }
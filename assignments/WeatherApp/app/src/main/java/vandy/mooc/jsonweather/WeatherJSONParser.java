@@ -2,7 +2,6 @@ package vandy.mooc.jsonweather;
 
 import android.util.JsonReader;
 import android.util.JsonToken;
-import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -10,6 +9,8 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
+import vandy.mooc.utils.DebugLog;
+
 /**
  * Parses the Json weather data returned from the Weather Services API and
  * returns a List of JsonWeather objects that contain this data.
@@ -18,7 +19,8 @@ public class WeatherJSONParser {
     /**
      * Used for logging purposes.
      */
-    private final String TAG = this.getClass().getCanonicalName();
+    private static final DebugLog sLog =
+            new DebugLog(WeatherJSONParser.class.getSimpleName());
 
     /**
      * Parse the @a inputStream and convert it into a List of JsonWeather
@@ -30,7 +32,7 @@ public class WeatherJSONParser {
         // Create a JsonReader for the inputStream.
         try (JsonReader reader = new JsonReader(new InputStreamReader(
                 inputStream, "UTF-8"))) {
-            Log.d(TAG, "Parsing the results returned as an array");
+            sLog.d("Parsing the results returned as an array");
 
             // Handle the array returned from the Weather Service.
             return parseWeatherMessage(reader);
@@ -55,28 +57,28 @@ public class WeatherJSONParser {
                 String name = reader.nextName();
                 switch (name) {
                     case JsonWeather.name_JSON:
-                        Log.d(TAG, "reading name field");
+                        sLog.d("reading name field");
                         String cityName = reader.nextString();
                         jsonWeather.setName(cityName);
-                        Log.d(TAG, "reading cityname " + jsonWeather.getName());
+                        sLog.d("reading cityname ", jsonWeather.getName());
                         break;
                     case JsonWeather.main_JSON:
-                        Log.d(TAG, "reading main field");
+                        sLog.d("reading main field");
                         Main main = parseMain(reader);
                         jsonWeather.setMain(main);
                         break;
                     case JsonWeather.sys_JSON:
-                        Log.d(TAG, "reading sys field");
+                        sLog.d("reading sys field");
                         Sys sys = parseSys(reader);
                         jsonWeather.setSys(sys);
                         break;
                     case JsonWeather.wind_JSON:
-                        Log.d(TAG, "reading wind field");
+                        sLog.d("reading wind field");
                         Wind wind = parseWind(reader);
                         jsonWeather.setWind(wind);
                         break;
                     case JsonWeather.weather_JSON:
-                        Log.d(TAG, "reading weather field");
+                        sLog.d("reading weather field");
                         if (reader.peek() == JsonToken.BEGIN_ARRAY) {
                             List<Weather> weatherList = parseWeatherArray(reader);
                             jsonWeather.setWeather(weatherList);
@@ -84,7 +86,7 @@ public class WeatherJSONParser {
                         break;
                     default:
                         reader.skipValue();
-                        Log.d(TAG, "Skipping " + name + " field");
+                        sLog.d("Skipping ", name, " field");
                         break;
                 }
             }
@@ -103,7 +105,7 @@ public class WeatherJSONParser {
     public List<Weather> parseWeatherArray(JsonReader reader)
             throws IOException {
 
-        Log.d(TAG, "reading weather elements");
+        sLog.d("reading weather elements");
 
         reader.beginArray();
 
@@ -133,19 +135,19 @@ public class WeatherJSONParser {
                 switch (name) {
                     case Weather.main_JSON:
                         weather.setMain(reader.nextString());
-                        Log.d(TAG, "reading weather main " + weather.getMain());
+                        sLog.d("reading weather main ", weather.getMain());
                         break;
                     case Weather.description_JSON:
                         weather.setDescription(reader.nextString());
-                        Log.d(TAG, "reading desc " + weather.getDescription());
+                        sLog.d("reading desc ", weather.getDescription());
                         break;
                     case Weather.icon_JSON:
                         weather.setIcon(reader.nextString());
-                        Log.d(TAG, "reading icon " + weather.getIcon());
+                        sLog.d("reading icon ", weather.getIcon());
                         break;
                     default:
                         reader.skipValue();
-                        Log.d(TAG, "ignoring " + name);
+                        sLog.d("ignoring ", name);
                         break;
                 }
             }
@@ -170,15 +172,15 @@ public class WeatherJSONParser {
                 switch (name) {
                     case Wind.deg_JSON:
                         wind.setDeg(reader.nextDouble());
-                        Log.d(TAG, "reading wind deg " + wind.getDeg());
+                        sLog.d("reading wind deg ", wind.getDeg());
                         break;
                     case Wind.speed_JSON:
                         wind.setSpeed(reader.nextDouble());
-                        Log.d(TAG, "reading wind speed " + wind.getSpeed());
+                        sLog.d("reading wind speed ", wind.getSpeed());
                         break;
                     default:
                         reader.skipValue();
-                        Log.d(TAG, "ignoring " + name);
+                        sLog.d("ignoring ", name);
                         break;
                 }
             }
@@ -203,19 +205,19 @@ public class WeatherJSONParser {
                 switch (name) {
                     case Sys.sunrise_JSON:
                         sys.setSunrise(reader.nextLong());
-                        Log.d(TAG, "reading sunrise " + sys.getSunrise());
+                        sLog.d("reading sunrise ", sys.getSunrise());
                         break;
                     case Sys.sunset_JSON:
                         sys.setSunset(reader.nextLong());
-                        Log.d(TAG, "reading sunset " + sys.getSunset());
+                        sLog.d("reading sunset ", sys.getSunset());
                         break;
                     case Sys.country_JSON:
                         sys.setCountry(reader.nextString());
-                        Log.d(TAG, "reading country " + sys.getCountry());
+                        sLog.d("reading country ", sys.getCountry());
                         break;
                     default:
                         reader.skipValue();
-                        Log.d(TAG, "ignoring " + name);
+                        sLog.d("ignoring ", name);
                         break;
                 }
             }
@@ -240,23 +242,23 @@ public class WeatherJSONParser {
                 switch (name) {
                     case Main.temp_JSON:
                         main.setTemp(reader.nextDouble());
-                        Log.d(TAG, "reading temp " + main.getTemp());
+                        sLog.d("reading temp ", main.getTemp());
                         break;
                     case Main.tempMin_JSON:
                         main.setTempMin(reader.nextDouble());
-                        Log.d(TAG, "reading tempmin " + main.getTempMin());
+                        sLog.d("reading tempmin ", main.getTempMin());
                         break;
                     case Main.tempMax_JSON:
                         main.setTempMax(reader.nextDouble());
-                        Log.d(TAG, "reading tempmax " + main.getTempMax());
+                        sLog.d("reading tempmax ", main.getTempMax());
                         break;
                     case Main.humidity_JSON:
                         main.setHumidity(reader.nextInt());
-                        Log.d(TAG, "reading humidity " + main.getHumidity());
+                        sLog.d("reading humidity ", main.getHumidity());
                         break;
                     default:
                         reader.skipValue();
-                        Log.d(TAG, "ignoring " + name);
+                        sLog.d("ignoring ", name);
                         break;
                 }
             }
@@ -1,13 +1,14 @@
 package vandy.mooc.operations;
 
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.RemoteException;
 import android.util.Log;
 
 import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import vandy.mooc.activities.MainActivity;
 import vandy.mooc.aidl.WeatherCall;
@@ -16,6 +17,7 @@ import vandy.mooc.aidl.WeatherRequest;
 import vandy.mooc.aidl.WeatherResults;
 import vandy.mooc.services.WeatherServiceAsync;
 import vandy.mooc.services.WeatherServiceSync;
+import vandy.mooc.utils.BoundServicePool;
 import vandy.mooc.utils.GenericServiceConnection;
 
 /**
@@ -34,16 +36,43 @@ public class WeatherOpsImpl implements WeatherOps {
     protected WeakReference<MainActivity> mActivity;
 
     /**
-     * This GenericServiceConnection is used to receive results after
-     * binding to the WeatherServiceSync Service using bindService().
+     * Maximum time (in seconds) a synchronous lookup waits for the
+     * WeatherServiceSync Service to be connected.
      */
-    private GenericServiceConnection<WeatherCall> mServiceConnectionSync;
+    private static final long CONNECT_TIMEOUT_SECS = 10;
 
     /**
-     * This GenericServiceConnection is used to receive results after
-     * binding to the WeatherServiceAsync Service using bindService().
+     * Create the AIDL interface objects by calling the generated
+     * asInterface() methods directly, so connecting doesn't need
+     * reflection.
      */
-    private GenericServiceConnection<WeatherRequest> mServiceConnectionAsync;
+    private static final GenericServiceConnection.StubFactory<WeatherCall> sWeatherCallFactory =
+            new GenericServiceConnection.StubFactory<WeatherCall>() {
+                @Override
+                public WeatherCall asInterface(IBinder binder) {
+                    return WeatherCall.Stub.asInterface(binder);
+                }
+            };
+
+    private static final GenericServiceConnection.StubFactory<WeatherRequest> sWeatherRequestFactory =
+            new GenericServiceConnection.StubFactory<WeatherRequest>() {
+                @Override
+                public WeatherRequest asInterface(IBinder binder) {
+                    return WeatherRequest.Stub.asInterface(binder);
+                }
+            };
+
+    /**
+     * This shared Binding is used to receive results after binding
+     * to the WeatherServiceSync Service, or null while unbound.
+     */
+    private BoundServicePool.Binding<WeatherCall> mServiceConnectionSync;
+
+    /**
+     * This shared Binding is used to receive results after binding
+     * to the WeatherServiceAsync Service, or null while unbound.
+     */
+    private BoundServicePool.Binding<WeatherRequest> mServiceConnectionAsync;
 
     /**
      * List of results to display (if any).
@@ -60,6 +89,13 @@ public class WeatherOpsImpl implements WeatherOps {
      */
     private final Handler mDisplayHandler = new Handler();
 
+    /**
+     * Runs the synchronous lookups in a background Thread, so that
+     * only the latest one's results are displayed.
+     */
+    private final LookupExecutor<List<WeatherData>> mLookupExecutor =
+            new LookupExecutor<>();
+
     /**
      * The implementation of the AcronymResults AIDL Interface, which
      * will be passed to the Acronym Web service using the
@@ -127,13 +163,21 @@ public class WeatherOpsImpl implements WeatherOps {
     public WeatherOpsImpl(MainActivity activity) {
         // Initialize the WeakReference.
         mActivity = new WeakReference<>(activity);
+    }
 
-        // Initialize the GenericServiceConnection objects.
-        mServiceConnectionSync =
-                new GenericServiceConnection<WeatherCall>(WeatherCall.class);
-
-        mServiceConnectionAsync =
-                new GenericServiceConnection<WeatherRequest>(WeatherRequest.class);
+    /**
+     * Bind to the Weather Bound Services ahead of time (e.g., when
+     * the app starts) via @a context, so their processes are running
+     * by the time the first lookup is made.  The bindings are kept
+     * for the life of the process.
+     */
+    public static void prebind(Context context) {
+        BoundServicePool.acquire(context,
+                WeatherServiceSync.makeIntent(context),
+                sWeatherCallFactory);
+        BoundServicePool.acquire(context,
+                WeatherServiceAsync.makeIntent(context),
+                sWeatherRequestFactory);
     }
 
     /**
@@ -167,21 +211,20 @@ public class WeatherOpsImpl implements WeatherOps {
         Log.d(TAG,
                 "calling bindService()");
 
-        // Launch the Acronym Bound Services if they aren't already
-        // running via a call to bindService(), which binds this
-        // activity to the AcronymService* if they aren't already
-        // bound.
-        if (mServiceConnectionSync.getInterface() == null)
-            mActivity.get().getApplicationContext().bindService
-                    (WeatherServiceSync.makeIntent(mActivity.get()),
-                            mServiceConnectionSync,
-                            Context.BIND_AUTO_CREATE);
-
-        if (mServiceConnectionAsync.getInterface() == null)
-            mActivity.get().getApplicationContext().bindService
-                    (WeatherServiceAsync.makeIntent(mActivity.get()),
-                            mServiceConnectionAsync,
-                            Context.BIND_AUTO_CREATE);
+        // Launch the Weather Bound Services if they aren't already
+        // running, sharing the BoundServicePool's bindings to the
+        // WeatherService* with everything else in the process.
+        if (mServiceConnectionSync == null)
+            mServiceConnectionSync = BoundServicePool.acquire
+                    (mActivity.get(),
+                            WeatherServiceSync.makeIntent(mActivity.get()),
+                            sWeatherCallFactory);
+
+        if (mServiceConnectionAsync == null)
+            mServiceConnectionAsync = BoundServicePool.acquire
+                    (mActivity.get(),
+                            WeatherServiceAsync.makeIntent(mActivity.get()),
+                            sWeatherRequestFactory);
     }
 
     /**
@@ -196,15 +239,21 @@ public class WeatherOpsImpl implements WeatherOps {
             Log.d(TAG,
                     "calling unbindService()");
 
-            // Unbind the Async Service if it is connected.
-            if (mServiceConnectionAsync.getInterface() != null)
-                mActivity.get().getApplicationContext().unbindService
-                        (mServiceConnectionAsync);
+            // Don't display the results of a lookup that's still
+            // running.
+            mLookupExecutor.cancel();
 
-            // Unbind the Sync Service if it is connected.
-            if (mServiceConnectionSync.getInterface() != null)
-                mActivity.get().getApplicationContext().unbindService
-                        (mServiceConnectionSync);
+            // Release the Async Service if it is bound.
+            if (mServiceConnectionAsync != null) {
+                mServiceConnectionAsync.release();
+                mServiceConnectionAsync = null;
+            }
+
+            // Release the Sync Service if it is bound.
+            if (mServiceConnectionSync != null) {
+                mServiceConnectionSync.release();
+                mServiceConnectionSync = null;
+            }
         }
     }
 
@@ -212,25 +261,25 @@ public class WeatherOpsImpl implements WeatherOps {
      * Initiate the asynchronous acronym lookup when the user presses
      * the "Look Up Async" button.
      */
-    public void getWeatherAsync(String weather) {
+    public void getWeatherAsync(final String weather) {
         weatherSearchParam = weather;
-        final WeatherRequest weatherRequest =
-                mServiceConnectionAsync.getInterface();
-
-        if (weatherRequest != null) {
-            try {
-                // Invoke a one-way AIDL call, which does not block
-                // the client.  The results are returned via the
-                // sendResults() method of the mWeatherResults
-                // callback object, which runs in a Thread from the
-                // Thread pool managed by the Binder framework.
-                weatherRequest.getCurrentWeather(weather,
-                        mWeatherResults);
-            } catch (RemoteException e) {
-                Log.e(TAG,
-                        "RemoteException:"
-                                + e.getMessage());
-            }
+
+        if (mServiceConnectionAsync != null) {
+            // Invoke a one-way AIDL call, which does not block the
+            // client, as soon as the WeatherServiceAsync is
+            // connected.  The results are returned via the
+            // sendResults() method of the mWeatherResults callback
+            // object, which runs in a Thread from the Thread pool
+            // managed by the Binder framework.
+            mServiceConnectionAsync.call(
+                    new BoundServicePool.Call<WeatherRequest>() {
+                        @Override
+                        public void call(WeatherRequest weatherRequest)
+                                throws RemoteException {
+                            weatherRequest.getCurrentWeather(weather,
+                                    mWeatherResults);
+                        }
+                    });
         } else {
             Log.d(TAG,
                     "weatherRequest was null.");
@@ -241,48 +290,55 @@ public class WeatherOpsImpl implements WeatherOps {
      * Initiate the synchronous weather lookup when the user presses
      * the "Look Up Sync" button.
      */
-    public void getWeatherSync(String weather) {
-        final WeatherCall weatherCall =
-                mServiceConnectionSync.getInterface();
-
-        if (weatherCall != null) {
-            // Use an anonymous AsyncTask to download the Acronym data
-            // in a separate thread and then display any results in
-            // the UI thread.
-            new AsyncTask<String, Void, List<WeatherData>>() {
-                /**
-                 * Acronym we're trying to expand.
-                 */
-                private String mWeather;
-
-                /**
-                 * Retrieve the expanded weather results via a
-                 * synchronous two-way method call, which runs in a
-                 * background thread to avoid blocking the UI thread.
-                 */
-                protected List<WeatherData> doInBackground(String... weathers) {
-                    try {
-                        mWeather = weathers[0];
-                        return weatherCall.getCurrentWeather(mWeather);
-                    } catch (RemoteException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                }
-
-                /**
-                 * Display the results in the UI Thread.
-                 */
-                protected void onPostExecute(List<WeatherData> weatherDataList) {
-                    mResults = weatherDataList;
-                    mActivity.get().displayResults(weatherDataList,
-                            "no weather for "
-                                    + mWeather
-                                    + " found");
-                }
-                // Execute the AsyncTask to expand the acronym without
-                // blocking the caller.
-            }.execute(weather);
+    public void getWeatherSync(final String weather) {
+        final BoundServicePool.Binding<WeatherCall> binding =
+                mServiceConnectionSync;
+
+        if (binding != null) {
+            // Use the mLookupExecutor to download the Weather data
+            // in a background thread and then display any results in
+            // the UI thread.  This lookup supersedes any that's still
+            // running.
+            mLookupExecutor.execute(
+                    new LookupExecutor.Lookup<List<WeatherData>>() {
+                        /**
+                         * Retrieve the weather results via a
+                         * synchronous two-way method call, which runs
+                         * in a background thread to avoid blocking the
+                         * UI thread.
+                         */
+                        @Override
+                        public List<WeatherData> lookup() throws RemoteException {
+                            // Wait for the WeatherServiceSync to be
+                            // connected if need be.
+                            final WeatherCall weatherCall;
+                            try {
+                                weatherCall = binding.await(CONNECT_TIMEOUT_SECS,
+                                        TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return null;
+                            }
+                            if (weatherCall == null) {
+                                Log.d(TAG, "WeatherServiceSync didn't connect");
+                                return null;
+                            }
+                            return weatherCall.getCurrentWeather(weather);
+                        }
+                    },
+                    new LookupExecutor.Callback<List<WeatherData>>() {
+                        /**
+                         * Display the results in the UI Thread.
+                         */
+                        @Override
+                        public void onResult(List<WeatherData> weatherDataList) {
+                            mResults = weatherDataList;
+                            mActivity.get().displayResults(weatherDataList,
+                                    "no weather for "
+                                            + weather
+                                            + " found");
+                        }
+                    });
         } else {
             Log.d(TAG, "mAcronymCall was null.");
         }
@@ -3,6 +3,7 @@ package vandy.mooc.services;
 import android.content.Context;
 import android.content.Intent;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.util.Log;
 
@@ -11,6 +12,7 @@ import java.util.List;
 import vandy.mooc.aidl.WeatherData;
 import vandy.mooc.aidl.WeatherRequest;
 import vandy.mooc.aidl.WeatherResults;
+import vandy.mooc.utils.CallMetrics;
 import vandy.mooc.utils.WeatherUtils;
 
 /**
@@ -51,9 +53,16 @@ public class WeatherServiceAsync extends LifecycleLoggingService {
      */
     @Override
     public IBinder onBind(Intent intent) {
+        super.onBind(intent);
         return mWeatherRequestImpl;
     }
 
+    /**
+     * The latencies of the calls to getCurrentWeather().
+     */
+    private static final CallMetrics sGetCurrentWeatherMetrics =
+        new CallMetrics("WeatherServiceAsync.getCurrentWeather");
+
     /**
      * The concrete implementation of the AIDL Interface
      * AcronymRequest, which extends the Stub class that implements
@@ -66,6 +75,23 @@ public class WeatherServiceAsync extends LifecycleLoggingService {
      */
     private final WeatherRequest.Stub mWeatherRequestImpl =
             new WeatherRequest.Stub() {
+                /**
+                 * Time each call of getCurrentWeather(), including unmarshaling
+                 * its arguments and marshaling its results.
+                 */
+                @Override
+                public boolean onTransact(int code,
+                                          Parcel data,
+                                          Parcel reply,
+                                          int flags) throws RemoteException {
+                    final long start = sGetCurrentWeatherMetrics.begin(code);
+                    try {
+                        return super.onTransact(code, data, reply, flags);
+                    } finally {
+                        sGetCurrentWeatherMetrics.end(start);
+                    }
+                }
+
                 /**
                  * Implement the AIDL AcronymRequest expandAcronym()
                  * method, which forwards to DownloadUtils getResults() to
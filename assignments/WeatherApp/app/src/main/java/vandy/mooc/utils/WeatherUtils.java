@@ -3,13 +3,16 @@ package vandy.mooc.utils;
 import android.app.Activity;
 import android.content.Context;
 import android.os.IBinder;
+import android.util.Log;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Toast;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -55,22 +58,49 @@ public class WeatherUtils {
                     new URL(sWeather_Web_Service_URL
                             + weather);
 
-            // Opens a connection to the Acronym Service.
-            HttpURLConnection urlConnection =
-                    (HttpURLConnection) url.openConnection();
+            // Retry failures that are likely to go away, unless the
+            // Weather Service is known to be down.  The reply is read
+            // in full before it's parsed, so the time spent waiting
+            // on the network and parsing can be told apart.
+            final byte[] reply;
+            final long networkStart = System.nanoTime();
+            try {
+                reply =
+                        Retrier.call(url.getHost(),
+                                new Retrier.Attempt<byte[]>() {
+                                    @Override
+                                    public byte[] run() throws IOException {
+                                        // Opens a connection to the Weather Service.
+                                        HttpURLConnection urlConnection =
+                                                (HttpURLConnection) url.openConnection();
 
-            // Sends the GET request and reads the Json results.
-            try (InputStream in =
-                         new BufferedInputStream(urlConnection.getInputStream())) {
-                // Create the parser.
-                final WeatherJSONParser parser =
-                        new WeatherJSONParser();
+                                        // Sends the GET request and reads the Json results.
+                                        try {
+                                            final int code =
+                                                    urlConnection.getResponseCode();
+                                            if (code != HttpURLConnection.HTTP_OK)
+                                                throw new Retrier.HttpStatusException(code, url);
 
-                // Parse the Json results and create JsonAcronym data
+                                            try (InputStream in =
+                                                         urlConnection.getInputStream()) {
+                                                return readFully(in);
+                                            }
+                                        } finally {
+                                            urlConnection.disconnect();
+                                        }
+                                    }
+                                });
+            } finally {
+                CallMetrics.recordPhase(CallMetrics.NETWORK, networkStart);
+            }
+
+            final long parseStart = System.nanoTime();
+            try (InputStream in = new ByteArrayInputStream(reply)) {
+                // Parse the Json results and create JsonWeather data
                 // objects.
-                jsonWeathers = parser.parseJsonStream(in);
+                jsonWeathers = new WeatherJSONParser().parseJsonStream(in);
             } finally {
-                urlConnection.disconnect();
+                CallMetrics.recordPhase(CallMetrics.PARSE, parseStart);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -96,6 +126,60 @@ public class WeatherUtils {
             return null;
     }
 
+    /**
+     * Returns all the bytes read from @a in.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int count; (count = in.read(buffer)) != -1; )
+            out.write(buffer, 0, count);
+        return out.toByteArray();
+    }
+
+    /**
+     * A reply from the Weather Service that's parsed to load and
+     * exercise the Json parser's classes.
+     */
+    private final static String sWarmUp_Json =
+            "{\"name\":\"\",\"main\":{},\"sys\":{},\"wind\":{},\"weather\":[{}]}";
+
+    /**
+     * Warm up the weather lookups made in this process, so the first
+     * one is as fast as the ones after it.  This loads and exercises
+     * the Json parser and, if @a network is true, resolves the
+     * Weather Service's host and sends it a HEAD request, which
+     * leaves a connection that the first lookup can reuse.  It
+     * blocks, so call it in a background Thread.
+     */
+    public static void warmUp(boolean network) {
+        try (InputStream in =
+                     new ByteArrayInputStream(sWarmUp_Json.getBytes("UTF-8"))) {
+            new WeatherJSONParser().parseJsonStream(in);
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, "unable to warm up the parser: " + e);
+        }
+
+        if (!network)
+            return;
+
+        HttpURLConnection urlConnection = null;
+        try {
+            final URL url = new URL(sWeather_Web_Service_URL);
+            InetAddress.getAllByName(url.getHost());
+
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("HEAD");
+            Log.d(TAG, "warm-up HEAD " + url + " returned "
+                    + urlConnection.getResponseCode());
+        } catch (IOException e) {
+            Log.d(TAG, "unable to warm up the network: " + e);
+        } finally {
+            if (urlConnection != null)
+                urlConnection.disconnect();
+        }
+    }
+
     /**
      * This method is used to hide a keyboard after a user has
      * finished typing the url.
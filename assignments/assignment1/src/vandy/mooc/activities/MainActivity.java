@@ -21,6 +21,14 @@ import android.view.View;
  */
 public class MainActivity extends LifecycleLoggingActivity
                           implements ServiceResult {
+    /**
+     * The key of the ImageOps retained between runtime configuration
+     * changes.
+     */
+    private static final RetainedFragmentManager.Key<ImageOps>
+        IMAGE_OPS_STATE =
+        new RetainedFragmentManager.Key<ImageOps>("IMAGE_OPS_STATE");
+
     /**
      * Used to retain the ImageOps state between runtime configuration
      * changes.
@@ -68,7 +76,7 @@ public class MainActivity extends LifecycleLoggingActivity
             mImageOps = new ImageOps(this);
 
             // Store the ImageOps into the RetainedFragmentManager.
-            mRetainedFragmentManager.put("IMAGE_OPS_STATE",
+            mRetainedFragmentManager.put(IMAGE_OPS_STATE,
                                          mImageOps);
             
         } else {
@@ -80,7 +88,7 @@ public class MainActivity extends LifecycleLoggingActivity
             // occured, so obtain the ImageOps object and inform it
             // that the runtime configuration change has completed.
             mImageOps = 
-                mRetainedFragmentManager.get("IMAGE_OPS_STATE");
+                mRetainedFragmentManager.get(IMAGE_OPS_STATE);
 
             // This check shouldn't be necessary under normal
             // circumtances, but it's better to lose state than to
@@ -91,7 +99,7 @@ public class MainActivity extends LifecycleLoggingActivity
 
                 // Store the ImageOps into the
                 // RetainedFragmentManager.
-                mRetainedFragmentManager.put("IMAGE_OPS_STATE",
+                mRetainedFragmentManager.put(IMAGE_OPS_STATE,
                                              mImageOps);
             }            
             else 
@@ -0,0 +1,91 @@
+package vandy.mooc.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+/**
+ * Counts the bytes allocated to get a Bitmap for each of 100 images
+ * of assorted camera-like sizes, as Utils.applyFilters() does, with
+ * and without the BitmapPool, and shows what trimMemory() releases.
+ * It runs on a plain JVM with stubs of android.util.Log,
+ * android.content.ComponentCallbacks2 and android.graphics.Bitmap
+ * ($STUB below).  The Bitmap stub must keep its pixels in a Java
+ * array of getAllocationByteCount() bytes, as Bitmaps do on API 19
+ * to 25, so ThreadMXBean counts them.  E.g., from the assignment2
+ * directory:
+ *
+ *   javac -d out $STUB/android/util/Log.java \
+ *       $STUB/android/content/ComponentCallbacks2.java \
+ *       $STUB/android/graphics/Bitmap.java \
+ *       $STUB/android/graphics/BitmapFactory.java \
+ *       src/vandy/mooc/utils/BitmapPool.java \
+ *       src/vandy/mooc/utils/BitmapDecoder.java \
+ *       benchmark/vandy/mooc/utils/BitmapPoolAllocationBenchmark.java
+ *   java -Xmx512m -cp out vandy.mooc.utils.BitmapPoolAllocationBenchmark
+ *
+ * which prints, e.g.:
+ *
+ *   without the pool                  444,713,248 bytes
+ *   with the pool                      27,449,904 bytes
+ *   pooled after the run               27,425,544 bytes
+ *   pooled after RUNNING_MODERATE      27,425,544 bytes
+ *   pooled after RUNNING_LOW                    0 bytes
+ */
+public class BitmapPoolAllocationBenchmark {
+    /**
+     * The number of images processed by each case.
+     */
+    private static final int IMAGES = 100;
+
+    /**
+     * The allocation counter of this JVM's threads.
+     */
+    private static final com.sun.management.ThreadMXBean sThreads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        // Widths and heights between 800x600 and 1600x1200.
+        final Random random = new Random(42);
+        final int[] widths = new int[IMAGES];
+        final int[] heights = new int[IMAGES];
+        for (int i = 0; i < IMAGES; ++i) {
+            widths[i] = 800 + random.nextInt(801);
+            heights[i] = widths[i] * 3 / 4;
+        }
+
+        final long id = Thread.currentThread().getId();
+        long before = sThreads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < IMAGES; ++i)
+            Bitmap.createBitmap(widths[i],
+                                heights[i],
+                                Bitmap.Config.ARGB_8888).recycle();
+        report("without the pool",
+               sThreads.getThreadAllocatedBytes(id) - before);
+
+        final BitmapPool pool = BitmapPool.getInstance();
+        before = sThreads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < IMAGES; ++i)
+            pool.put(pool.get(widths[i],
+                              heights[i],
+                              Bitmap.Config.ARGB_8888));
+        report("with the pool",
+               sThreads.getThreadAllocatedBytes(id) - before);
+
+        report("pooled after the run", pool.getTotalBytes());
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        report("pooled after RUNNING_MODERATE", pool.getTotalBytes());
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        report("pooled after RUNNING_LOW", pool.getTotalBytes());
+    }
+
+    /**
+     * Print @a bytes, labelled with @a name.
+     */
+    private static void report(String name,
+                               long bytes) {
+        System.out.println(String.format("%-30s %,14d bytes", name, bytes));
+    }
+}
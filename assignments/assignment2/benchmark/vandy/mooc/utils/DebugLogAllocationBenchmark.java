@@ -0,0 +1,115 @@
+package vandy.mooc.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by parser-style DebugLog calls, using
+ * the per-thread allocation counter of HotSpot's ThreadMXBean.  It
+ * runs on a plain JVM with a stub of android.util.Log whose
+ * isLoggable() returns false ($STUB below), e.g., from the
+ * assignment2 directory:
+ *
+ *   javac -d out $STUB/android/util/Log.java \
+ *       src/vandy/mooc/utils/DebugLog.java \
+ *       benchmark/vandy/mooc/utils/DebugLogAllocationBenchmark.java
+ *   java -cp out vandy.mooc.utils.DebugLogAllocationBenchmark
+ *
+ * The three DebugLog copies (assignment2, WeatherApp and
+ * AcronymApplicationRetained) are identical, so this measures them
+ * all.  Each case is run once to warm up and then measured.  Since
+ * tracing converts an argument that isn't a String with
+ * String.valueOf(), only that case allocates, e.g.:
+ *
+ *   disabled, strings and primitives        0 bytes, 0.00 per run
+ *   disabled, non-String object             0 bytes, 0.00 per run
+ *   tracing, strings and primitives         0 bytes, 0.00 per run
+ *   tracing, non-String object      240000000 bytes, 48.00 per run
+ */
+public class DebugLogAllocationBenchmark {
+    /**
+     * The number of calls made by each case.
+     */
+    private static final int CALLS = 5 * 1000 * 1000;
+
+    private static final DebugLog sLog =
+        new DebugLog(DebugLogAllocationBenchmark.class.getSimpleName());
+
+    /**
+     * The allocation counter of this JVM's threads.
+     */
+    private static final com.sun.management.ThreadMXBean sThreads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A debug message case.
+     */
+    private interface Case {
+        void run(int i);
+    }
+
+    /**
+     * String and primitive arguments, as the JSON parsers pass.
+     */
+    private static final Case STRINGS_AND_PRIMITIVES = new Case() {
+            @Override
+            public void run(int i) {
+                sLog.d("reading name field");
+                sLog.d("reading cityname ", "Nashville");
+                sLog.d("reading sunrise ", (long) i);
+                sLog.d("reading wind speed ", i * .5);
+                sLog.d("Skipping ", "clouds", " field");
+            }
+        };
+
+    /**
+     * An argument that isn't a String, whose toString() allocates.
+     */
+    private static final Integer OBJECT = Integer.valueOf(123456);
+
+    private static final Case NON_STRING_OBJECT = new Case() {
+            @Override
+            public void run(int i) {
+                sLog.d("reading acronym ", OBJECT);
+            }
+        };
+
+    public static void main(String[] args) {
+        report("disabled, strings and primitives",
+               false,
+               STRINGS_AND_PRIMITIVES);
+        report("disabled, non-String object", false, NON_STRING_OBJECT);
+        report("tracing, strings and primitives",
+               true,
+               STRINGS_AND_PRIMITIVES);
+        report("tracing, non-String object", true, NON_STRING_OBJECT);
+    }
+
+    /**
+     * Print the bytes allocated by CALLS runs of @a debugCase, with
+     * tracing on or off.
+     */
+    private static void report(String name,
+                               boolean tracing,
+                               Case debugCase) {
+        DebugLog.setTracing(tracing);
+        measure(debugCase);
+        final long bytes = measure(debugCase);
+        DebugLog.setTracing(false);
+
+        System.out.println(String.format("%-36s %12d bytes, %.2f per run",
+                                         name,
+                                         bytes,
+                                         (double) bytes / CALLS));
+    }
+
+    /**
+     * Returns the bytes allocated by CALLS runs of @a debugCase.
+     */
+    private static long measure(Case debugCase) {
+        final long id = Thread.currentThread().getId();
+        final long before = sThreads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < CALLS; ++i)
+            debugCase.run(i);
+        return sThreads.getThreadAllocatedBytes(id) - before;
+    }
+}
@@ -0,0 +1,154 @@
+package vandy.mooc.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the pure-JVM filtering core, which compare
+ *
+ *   floatPerPixel  - the float luma the grayscale filter used to
+ *                    compute one pixel at a time,
+ *   fixedPoint     - PixelFilters.grayScale() on the whole array,
+ *   separatePasses - grayscale, then invert, each over the whole image,
+ *   fusedChain     - the same two operations fused by a FilterChain,
+ *   parallel       - ParallelPixelProcessor applying grayscale in
+ *                    bands on the per-core pool.
+ *
+ * Build and run them from the assignment2 directory with jmh-core and
+ * jmh-generator-annprocess (and their dependencies) on the classpath:
+ *
+ *   javac -cp $JMH -d out src/vandy/mooc/utils/Pixel*.java \
+ *       src/vandy/mooc/utils/ImageFilter.java src/vandy/mooc/utils/FilterChain.java \
+ *       src/vandy/mooc/utils/ParallelPixelProcessor.java \
+ *       benchmark/vandy/mooc/utils/PixelFiltersBenchmark.java
+ *   java -cp $JMH:out org.openjdk.jmh.Main PixelFiltersBenchmark
+ *
+ * The pool has one thread per core, so the scaling curve of parallel
+ * is obtained by rerunning it with, e.g., "-jvmArgsAppend
+ * -XX:ActiveProcessorCount=N" for N = 1, 2, 4, ... up to the number
+ * of cores of the machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelFiltersBenchmark {
+    /**
+     * Inverts the color channels of each pixel.
+     */
+    private static final PixelOperation INVERT = new PixelOperation() {
+            @Override
+            public void apply(int[] argb,
+                              int offset,
+                              int length) {
+                for (int i = offset; i < offset + length; ++i)
+                    argb[i] ^= 0x00ffffff;
+            }
+        };
+
+    /**
+     * Converts pixels to grayscale.
+     */
+    private static final PixelOperation GRAY_SCALE = new PixelOperation() {
+            @Override
+            public void apply(int[] argb,
+                              int offset,
+                              int length) {
+                PixelFilters.grayScale(argb, offset, length, true);
+            }
+        };
+
+    /**
+     * Dimensions of the image, as "<width>x<height>".
+     */
+    @Param({ "640x480", "2048x1536" })
+    public String mSize;
+
+    private int mWidth;
+    private int mHeight;
+    private int[] mOriginal;
+    private int[] mPixels;
+    private FilterChain mFusedChain;
+
+    @Setup(Level.Trial)
+    public void createImage() {
+        final String[] size = mSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+
+        final Random random = new Random(42);
+        mOriginal = new int[mWidth * mHeight];
+        for (int i = 0; i < mOriginal.length; ++i)
+            mOriginal[i] = 0xff000000 | random.nextInt(1 << 24);
+        mPixels = new int[mOriginal.length];
+        mFusedChain = FilterChain.create().grayScale().add(INVERT);
+    }
+
+    /**
+     * Restore the colors, so each invocation filters the same image.
+     */
+    @Setup(Level.Invocation)
+    public void resetImage() {
+        System.arraycopy(mOriginal, 0, mPixels, 0, mPixels.length);
+    }
+
+    @Benchmark
+    public int[] floatPerPixel() {
+        final int[] argb = mPixels;
+        for (int i = 0; i < argb.length; ++i) {
+            final int pixel = argb[i];
+            if ((pixel >>> 24) == 0)
+                continue;
+            final int gray =
+                (int) (((pixel >> 16) & 0xff) * .299
+                       + ((pixel >> 8) & 0xff) * .587
+                       + (pixel & 0xff) * .114);
+            argb[i] = 0xff000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        return argb;
+    }
+
+    @Benchmark
+    public int[] fixedPoint() {
+        PixelFilters.grayScale(mPixels, 0, mPixels.length, true);
+        return mPixels;
+    }
+
+    @Benchmark
+    public int[] separatePasses() {
+        GRAY_SCALE.apply(mPixels, 0, mPixels.length);
+        INVERT.apply(mPixels, 0, mPixels.length);
+        return mPixels;
+    }
+
+    @Benchmark
+    public boolean fusedChain() {
+        // With more than one core the fused pass is also split into
+        // bands, so compare it with separatePasses on one core to
+        // measure the fusion itself.
+        return mFusedChain.apply(new PixelBuffer(mPixels, mWidth, mHeight));
+    }
+
+    @Benchmark
+    public boolean parallel() {
+        return ParallelPixelProcessor.apply(mPixels,
+                                            mWidth,
+                                            mHeight,
+                                            GRAY_SCALE);
+    }
+}
@@ -1,21 +1,28 @@
 package vandy.mooc.activities;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import vandy.mooc.R;
+import vandy.mooc.utils.BitmapPool;
+import vandy.mooc.utils.ThumbnailCache;
 import vandy.mooc.utils.Utils;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Point;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.Display;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.GridView;
 import android.widget.ImageView;
@@ -111,15 +118,43 @@ public class DisplayImagesActivity extends LifecycleLoggingActivity {
     	imageGrid.setNumColumns(mNumCols);
     	
     	((ImageAdapter)imageGrid.getAdapter()).setColWidth(mColWidth);
+    	((ImageAdapter)imageGrid.getAdapter()).setNumColumns(mNumCols);
+    	((ImageAdapter)imageGrid.getAdapter()).setGridView(imageGrid);
+    }
+
+    /**
+     * Hook method called when the Activity is destroyed.  Stops any
+     * thumbnails that are still being decoded.
+     */
+    @Override
+    protected void onDestroy() {
+        imageAdapter.shutdown();
+        super.onDestroy();
+    }
+
+    /**
+     * Hook method called when the system wants this process to free
+     * memory.  Releases the Bitmaps pooled for scaling thumbnails.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BitmapPool.getInstance().trimMemory(level);
     }
 
     /**
      * @class ImageAdapter
      *
      * @brief The Adapter that loads the Images into the Layout's
-     *        GridView.
+     *        GridView.  Thumbnails are decoded lazily in a pool of
+     *        background threads, and only for the cells that are
+     *        visible plus a small prefetch margin around them.
+     *        Decodes for cells that scroll out of that window (e.g.,
+     *        because getView() recycled their ImageView for another
+     *        position) are cancelled.
      */
-    public class ImageAdapter extends BaseAdapter {
+    public class ImageAdapter extends BaseAdapter
+                              implements AbsListView.OnScrollListener {
         /**
          * The Context of the application
          */
@@ -131,32 +166,84 @@ public class DisplayImagesActivity extends LifecycleLoggingActivity {
         private int mPadding = 8;
 
         /**
-         * The ArrayList of bitmaps that hold the thumbnail images.
+         * Number of rows above and below the visible ones whose
+         * thumbnails are decoded ahead of time.
+         */
+        private static final int PREFETCH_ROWS = 2;
+
+        /**
+         * Number of threads used to decode thumbnails.
+         */
+        private static final int DECODE_THREADS = 2;
+
+        /**
+         * The image files to display.
+         */
+        private File[] mFiles = new File[0];
+
+        /**
+         * The thumbnails decoded thus far for positions in the
+         * window.
+         */
+        private final SparseArray<Bitmap> mThumbnails =
+            new SparseArray<Bitmap>();
+
+        /**
+         * The decodes in progress, by position.
+         */
+        private final SparseArray<Future<?>> mPending =
+            new SparseArray<Future<?>>();
+
+        /**
+         * The first and last positions (inclusive) of the window of
+         * visible and prefetched cells.
+         */
+        private int mWindowFirst = 0;
+        private int mWindowLast = -1;
+
+        /**
+         * Number of columns in the GridView.
+         */
+        private int mNumColumns = 1;
+
+        /**
+         * Decodes thumbnails in background threads.
+         */
+        private final ExecutorService mDecodeExecutor =
+            Executors.newFixedThreadPool(DECODE_THREADS);
+
+        /**
+         * Posts decoded thumbnails back to the UI Thread.
+         */
+        private final Handler mHandler =
+            new Handler(Looper.getMainLooper());
+
+        /**
+         * The GridView this adapter populates.
          */
-        private ArrayList<Bitmap> mBitmaps;
+        private GridView mGridView;
 
         /**
          * Creates the ImageAdapter in the given context.
          */
         public ImageAdapter(Context c) {
             mContext = c;
-            mBitmaps = new ArrayList<Bitmap>();
         }
 
         /**
-         * Returns the count of bitmaps in the list.
+         * Returns the count of image files.
          */
         @Override
             public int getCount() {
-            return mBitmaps.size();
+            return mFiles.length;
         }
 
         /**
-         * Returns the bitmap at the given position.
+         * Returns the image file at the given position.
          */
         @Override
             public Object getItem(int position) {
-            return mBitmaps.get(position);
+            return mFiles[position];
         }
 
         /**
@@ -188,12 +275,221 @@ public class DisplayImagesActivity extends LifecycleLoggingActivity {
                 imageView.setPadding(mPadding, mPadding, mPadding, mPadding);
             } else {
                 imageView = (ImageView) convertView;
+
+                // The ImageView is being recycled for another
+                // position, so stop decoding its old thumbnail unless
+                // it's still needed for the prefetch window.
+                Integer previous = (Integer) imageView.getTag();
+                if (previous != null 
+                    && previous != position
+                    && !inWindow(previous))
+                    cancel(previous);
             }
-            imageView.setImageBitmap(mBitmaps.get(position));
+
+            imageView.setTag(position);
+
+            // Show the thumbnail if it's ready, else decode it and
+            // show it once it is.
+            Bitmap thumbnail = mThumbnails.get(position);
+            imageView.setImageBitmap(thumbnail);
+            if (thumbnail == null)
+                load(position);
             return imageView;
         }
 
-        
+        /**
+         * Hook method called back when the GridView scrolls, which
+         * moves the window of decoded thumbnails.
+         */
+        @Override
+        public void onScroll(AbsListView view,
+                             int firstVisibleItem,
+                             int visibleItemCount,
+                             int totalItemCount) {
+            int margin = PREFETCH_ROWS * mNumColumns;
+            setWindow(Math.max(0, firstVisibleItem - margin),
+                      Math.min(totalItemCount - 1,
+                               firstVisibleItem + visibleItemCount - 1 + margin));
+        }
+
+        /**
+         * Hook method called back when the scroll state changes.
+         */
+        @Override
+        public void onScrollStateChanged(AbsListView view,
+                                         int scrollState) {
+            // No-op.
+        }
+
+        /**
+         * Move the window of decoded thumbnails to @a first through
+         * @a last, dropping thumbnails and cancelling decodes outside
+         * it and starting decodes inside it.
+         */
+        private void setWindow(int first,
+                               int last) {
+            if (first == mWindowFirst && last == mWindowLast)
+                return;
+            mWindowFirst = first;
+            mWindowLast = last;
+
+            for (int i = mThumbnails.size() - 1; i >= 0; --i)
+                if (!inWindow(mThumbnails.keyAt(i)))
+                    mThumbnails.removeAt(i);
+
+            for (int i = mPending.size() - 1; i >= 0; --i)
+                if (!inWindow(mPending.keyAt(i)))
+                    cancel(mPending.keyAt(i));
+
+            for (int position = first; position <= last; ++position)
+                load(position);
+        }
+
+        /**
+         * Returns true if @a position is in the window.
+         */
+        private boolean inWindow(int position) {
+            return position >= mWindowFirst && position <= mWindowLast;
+        }
+
+        /**
+         * Decode the thumbnail at @a position in a background Thread
+         * unless it's already decoded or being decoded.
+         */
+        private void load(int position) {
+            if (mThumbnails.get(position) != null
+                || mPending.get(position) != null
+                || mDecodeExecutor.isShutdown())
+                return;
+
+            final DecodeTask task = new DecodeTask(position,
+                                                   mFiles[position]);
+            task.mFuture = mDecodeExecutor.submit(task);
+            mPending.put(position, task.mFuture);
+        }
+
+        /**
+         * Decodes the thumbnail of one file in a background Thread and
+         * hands it to onThumbnailLoaded() in the UI Thread.
+         */
+        private class DecodeTask implements Runnable {
+            /**
+             * Position and file of the thumbnail.
+             */
+            final int mPosition;
+            final File mFile;
+
+            /**
+             * The Future of this task, which is set in the UI Thread
+             * before onThumbnailLoaded() can run there.
+             */
+            Future<?> mFuture;
+
+            DecodeTask(int position,
+                       File file) {
+                mPosition = position;
+                mFile = file;
+            }
+
+            /**
+             * This method runs in a background Thread.
+             */
+            @Override
+            public void run() {
+                // Bail out if the decode was cancelled before it
+                // started.
+                if (Thread.currentThread().isInterrupted())
+                    return;
+
+                Bitmap thumbnail = null;
+                try {
+                    // Scale the bitmap to avoid out-of-memory
+                    // exceptions with large images.
+                    thumbnail = getScaledBitmap(mFile);
+                } catch (Exception | Error e) {
+                    Log.e(TAG,"Error displaying image:", e);
+                }
+
+                final Bitmap result = thumbnail;
+                mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onThumbnailLoaded(DecodeTask.this, result);
+                        }
+                    });
+            }
+        }
+
+        /**
+         * Called in the UI Thread when the @a thumbnail decoded by @a
+         * task is ready.
+         */
+        private void onThumbnailLoaded(DecodeTask task,
+                                       Bitmap thumbnail) {
+            final int position = task.mPosition;
+            final File file = task.mFile;
+
+            // Ignore results for a previous directory.
+            if (position >= mFiles.length || mFiles[position] != file)
+                return;
+
+            // Only the decode that's pending for the position may
+            // clear it, since the task may have been cancelled and the
+            // position loaded again meanwhile.
+            if (mPending.get(position) == task.mFuture)
+                mPending.remove(position);
+
+            if (thumbnail == null) {
+                Utils.showToast(DisplayImagesActivity.this,
+                                "Error displaying image at "
+                                + file.getAbsolutePath());
+                return;
+            }
+
+            // Show the thumbnail if its cell is on the screen.
+            ImageView imageView = findImageView(position);
+            if (imageView != null)
+                imageView.setImageBitmap(thumbnail);
+
+            // Keep it if it's in the window.
+            if (imageView != null || inWindow(position))
+                mThumbnails.put(position, thumbnail);
+        }
+
+        /**
+         * Returns the ImageView currently showing @a position, or null
+         * if it isn't on the screen.
+         */
+        private ImageView findImageView(int position) {
+            if (mGridView == null)
+                return null;
+            for (int i = 0; i < mGridView.getChildCount(); ++i) {
+                View child = mGridView.getChildAt(i);
+                if (Integer.valueOf(position).equals(child.getTag()))
+                    return (ImageView) child;
+            }
+            return null;
+        }
+
+        /**
+         * Cancel the decode for @a position (if any).
+         */
+        private void cancel(int position) {
+            Future<?> future = mPending.get(position);
+            if (future != null) {
+                future.cancel(true);
+                mPending.remove(position);
+            }
+        }
+
+        /**
+         * Stop decoding thumbnails.
+         */
+        public void shutdown() {
+            mDecodeExecutor.shutdownNow();
+            mPending.clear();
+        }
+
         private int mColWidth = 100;
         
         public void setColWidth(int w ) {
@@ -201,51 +497,49 @@ public class DisplayImagesActivity extends LifecycleLoggingActivity {
         		mColWidth = w;
         }
 
+        /**
+         * Sets the number of columns in the GridView, which
+         * determines the size of the prefetch margin.
+         */
+        public void setNumColumns(int numColumns) {
+            if (numColumns > 0)
+                mNumColumns = numColumns;
+        }
+
+        /**
+         * Sets the GridView this adapter populates.
+         */
+        public void setGridView(GridView gridView) {
+            mGridView = gridView;
+            gridView.setOnScrollListener(this);
+        }
+
         /**
          * Convert the @a bitmap parameter into a scaled Bitmap to 
-         * avoid out-of-memory exceptions with large images.
+         * avoid out-of-memory exceptions with large images.  The
+         * ThumbnailCache only decodes the original the first time.
          */
         private Bitmap getScaledBitmap(File bitmap) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeFile(bitmap.getAbsolutePath(), options);
-        	
-            int sizeRatio = options.outWidth /mColWidth;
-        	
-            options.inJustDecodeBounds = false;
-            options.inSampleSize = sizeRatio;	
-            return BitmapFactory.decodeFile(bitmap.getAbsolutePath(), options);
+            return ThumbnailCache.getInstance(mContext)
+                .getThumbnail(bitmap, mColWidth);
         }
 
         /**
          * Resets the bitmaps of the GridView to the ones found at the
-         * given filterPath.
+         * given filterPath.  Only the file names are read here; the
+         * thumbnails are decoded as their cells come into view.
          */
         private void setBitmaps(String filterPath) {
-            File[] bitmaps = new File(filterPath).listFiles();
-            mBitmaps = new ArrayList<Bitmap>();
-
-            // If there are some image files to display, load, and
-            // store their bitmaps in the bitmap array.
-            if (bitmaps != null) {
-                for (File bitmap : bitmaps) {
-                    if (bitmap != null) {
-                        try {
-                            mBitmaps.add
-                                // Scale the bitmap to avoid
-                                // out-of-memory exceptions with large
-                                // images.
-                                (getScaledBitmap(bitmap));
-                        } catch (Exception | Error e) {
-                            Log.e(TAG,"Error displaying image:", e);
-                            Utils.showToast(DisplayImagesActivity.this,
-                                            "Error displaying image at "
-                                            + bitmap.getAbsolutePath());
-                        }
-                    }
-                }
-            }
+            File[] files = new File(filterPath).listFiles();
+
+            // Forget everything about the previous directory.
+            for (int i = mPending.size() - 1; i >= 0; --i)
+                cancel(mPending.keyAt(i));
+            mThumbnails.clear();
+            mWindowFirst = 0;
+            mWindowLast = -1;
 
+            mFiles = files != null ? files : new File[0];
             notifyDataSetChanged();
         }
     }
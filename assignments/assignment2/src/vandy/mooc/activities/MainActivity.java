@@ -23,6 +23,14 @@ import android.view.View;
  */
 public class MainActivity extends LifecycleLoggingActivity
                           implements ServiceResult {
+    /**
+     * The key of the ImageOps retained between runtime configuration
+     * changes.
+     */
+    private static final RetainedFragmentManager.Key<ImageOps>
+        IMAGE_OPS_STATE =
+        new RetainedFragmentManager.Key<ImageOps>("IMAGE_OPS_STATE");
+
     /**
      * Used to retain the ImageOps state between runtime configuration
      * changes.
@@ -78,6 +86,12 @@ public class MainActivity extends LifecycleLoggingActivity
      */
     @Override
     protected void onStop() {
+        // If the user is leaving the screen (rather than it being
+        // recreated for a configuration change) nobody will see the
+        // images, so stop downloading them.
+        if (isFinishing())
+            mImageOps.cancelDownloads();
+
         // Unbind from the Service (which may be a no-op, depending on
         // which type of DownloadImages*Service is used).
         mImageOps.unbindService();
@@ -103,7 +117,7 @@ public class MainActivity extends LifecycleLoggingActivity
             mImageOps = new ImageOps(this, true);
 
             // Store the ImageOps into the RetainedFragmentManager.
-            mRetainedFragmentManager.put("IMAGE_OPS_STATE",
+            mRetainedFragmentManager.put(IMAGE_OPS_STATE,
                                          mImageOps);
             
         } else {
@@ -118,7 +132,7 @@ public class MainActivity extends LifecycleLoggingActivity
             // Obtain the ImageOps object from the
             // RetainedFragmentManager.
             mImageOps = 
-                mRetainedFragmentManager.get("IMAGE_OPS_STATE");
+                mRetainedFragmentManager.get(IMAGE_OPS_STATE);
 
             // This check shouldn't be necessary under normal
             // circumtances, but it's better to lose state than to
@@ -131,7 +145,7 @@ public class MainActivity extends LifecycleLoggingActivity
 
                 // Store the ImageOps into the
                 // RetainedFragmentManager.
-                mRetainedFragmentManager.put("IMAGE_OPS_STATE",
+                mRetainedFragmentManager.put(IMAGE_OPS_STATE,
                                              mImageOps);
             }            
             else 
@@ -170,16 +184,35 @@ public class MainActivity extends LifecycleLoggingActivity
     /**
      * Hook method called back by the ServiceResultHandler when a
      * Service that's been launched finishes, giving the requestCode
-     * it was started with, the resultCode it returned, and any
-     * additional result data returned from the service.
+     * it was started with, the resultCode it returned, the requestId
+     * of the image, and the pathname of the downloaded image.
      */
     @Override
     public void onServiceResult(int requestCode,
                                 int resultCode,
-                                Bundle data) {
+                                int requestId,
+                                String imagePathname) {
         // Handle the results.
         mImageOps.doResult(requestCode,
                            resultCode,
-                           data);
+                           requestId,
+                           imagePathname);
+    }
+
+    /**
+     * Hook method called back by the ServiceResultHandler when a
+     * Service reports the progress of a download that's still
+     * running.
+     */
+    @Override
+    public void onServiceProgress(int requestCode,
+                                  int requestId,
+                                  long bytesDownloaded,
+                                  long totalBytes) {
+        // Display the progress.
+        mImageOps.doProgress(requestCode,
+                             requestId,
+                             bytesDownloaded,
+                             totalBytes);
     }
 }
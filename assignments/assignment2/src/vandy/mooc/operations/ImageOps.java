@@ -1,7 +1,6 @@
 package vandy.mooc.operations;
 
 import vandy.mooc.activities.MainActivity;
-import android.os.Bundle;
 
 /**
  * This class defines all the image-related operations.  It plays the
@@ -55,6 +54,13 @@ public class ImageOps {
         mImageOpsImpl.startDownloads();
     }
 
+    /**
+     * Cancel all the downloads in progress.
+     */
+    public void cancelDownloads() {
+        mImageOpsImpl.cancelDownloads();
+    }
+
     /**
      * Delete all the downloaded images.
      */
@@ -67,10 +73,25 @@ public class ImageOps {
      */
     public void doResult(int requestCode,
                          int resultCode,
-                         Bundle data) {
+                         int requestId,
+                         String imagePathname) {
         mImageOpsImpl.doResult(requestCode,
                                resultCode,
-                               data);
+                               requestId,
+                               imagePathname);
+    }
+
+    /**
+     * Handle the progress reported by the Service.
+     */
+    public void doProgress(int requestCode,
+                           int requestId,
+                           long bytesDownloaded,
+                           long totalBytes) {
+        mImageOpsImpl.doProgress(requestCode,
+                                 requestId,
+                                 bytesDownloaded,
+                                 totalBytes);
     }
 
     /**
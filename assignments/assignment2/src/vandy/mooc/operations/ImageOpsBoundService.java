@@ -1,7 +1,10 @@
 package vandy.mooc.operations;
 
+import java.util.List;
+
 import vandy.mooc.activities.MainActivity;
 import vandy.mooc.services.DownloadImagesBoundService;
+import vandy.mooc.utils.Metrics;
 import vandy.mooc.utils.RequestMessage;
 import vandy.mooc.utils.Utils;
 import android.content.ComponentName;
@@ -34,6 +37,12 @@ public class ImageOpsBoundService extends ImageOpsImpl {
      */
     private Messenger mRequestMessengerRef = null;
 
+    /**
+     * The System.nanoTime() at which bindService() was last called,
+     * which is used to time how long binding takes.
+     */
+    private long mBindStarted;
+
     /** 
      * Used to receive a reference to the RequestMessenger after
      * binding to the DownloadImagesBoundService using bindService().
@@ -47,6 +56,11 @@ public class ImageOpsBoundService extends ImageOpsImpl {
             public void onServiceConnected(ComponentName className,
                                            IBinder binder) {
                 Log.d(TAG, "onServiceConnected() " + className);
+                if (mBindStarted != 0) {
+                    Metrics.histogram("bind-onServiceConnected")
+                           .recordSince(mBindStarted);
+                    mBindStarted = 0;
+                }
 
                 // Create a new Messenger that encapsulates the
                 // returned IBinder object and store it for later use
@@ -97,6 +111,7 @@ public class ImageOpsBoundService extends ImageOpsImpl {
 
             // Bind to the Service associated with the Intent.
             // TODO -- you fill in here
+            mBindStarted = System.nanoTime();
             mActivity.get().bindService(intent,mServiceConnection,Context.BIND_AUTO_CREATE);
         }
     }
@@ -123,7 +138,8 @@ public class ImageOpsBoundService extends ImageOpsImpl {
      * (a.k.a., "Hook Method") in the Template Method pattern.
      */
     @Override
-    protected void startDownload(Uri url) {
+    protected void startDownload(int requestId,
+                                 Uri url) {
         if (mRequestMessengerRef == null) 
             Utils.showToast(mActivity.get(),
                             "not bound to the service");
@@ -135,6 +151,7 @@ public class ImageOpsBoundService extends ImageOpsImpl {
                 RequestMessage requestMessage =
                     RequestMessage.makeRequestMessage
                     (OperationType.DOWNLOAD_IMAGE.ordinal(),
+                     requestId,
                      url,
                      mDirectoryPathname,
                      mReplyMessenger);
@@ -152,4 +169,74 @@ public class ImageOpsBoundService extends ImageOpsImpl {
             }
         }
     }
+
+    /**
+     * Start downloading all the @a urls by sending them to the
+     * DownloadImagesBoundService in a single batch request Message.
+     */
+    @Override
+    protected void startDownloads(int[] requestIds,
+                                  List<Uri> urls) {
+        if (mRequestMessengerRef == null) 
+            Utils.showToast(mActivity.get(),
+                            "not bound to the service");
+        else {
+            try {
+                RequestMessage requestMessage =
+                    RequestMessage.makeBatchRequestMessage
+                    (OperationType.DOWNLOAD_IMAGE.ordinal(),
+                     requestIds,
+                     urls,
+                     mDirectoryPathname,
+                     mReplyMessenger);
+
+                Log.d(TAG,
+                      "sending a batch request message for "
+                      + urls.size()
+                      + " images to DownloadImagesBoundService");
+
+                // Send the batch request Message to the
+                // DownloadService.
+                mRequestMessengerRef.send(requestMessage.getMessage());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Ask the DownloadImagesBoundService to cancel all the downloads
+     * requested via our reply Messenger.
+     */
+    @Override
+    protected void cancelAllDownloads() {
+        if (mRequestMessengerRef == null)
+            return;
+
+        try {
+            mRequestMessengerRef.send
+                (RequestMessage.makeCancelMessage(null,
+                                                  mReplyMessenger).getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tell the DownloadImagesBoundService the images in @a
+     * directoryPathname were deleted.
+     */
+    @Override
+    protected void forgetDownloadedImages(String directoryPathname) {
+        if (mRequestMessengerRef == null)
+            return;
+
+        try {
+            mRequestMessengerRef.send
+                (RequestMessage.makeForgetMessage(directoryPathname,
+                                                  mReplyMessenger).getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 }
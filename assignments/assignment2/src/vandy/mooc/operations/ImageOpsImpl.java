@@ -5,21 +5,21 @@ import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import vandy.mooc.R;
 import vandy.mooc.activities.DisplayImagesActivity;
 import vandy.mooc.activities.MainActivity;
-import vandy.mooc.utils.ReplyMessage;
 import vandy.mooc.utils.ServiceResultHandler;
 import vandy.mooc.utils.Utils;
 import android.app.ActionBar.LayoutParams;
 import android.app.Activity;
 import android.content.Intent;
 import android.net.Uri;
-import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
 import android.webkit.URLUtil;
 import android.widget.EditText;
@@ -91,6 +91,20 @@ public abstract class ImageOpsImpl {
      */
     protected ArrayList<String> mUrlList;
 
+    /**
+     * Maps the request IDs of the downloads in progress to their
+     * URLs.
+     */
+    protected SparseArray<String> mRequestUrls =
+        new SparseArray<String>();
+
+    /**
+     * The request ID to give the next download.  It keeps increasing
+     * across runs, so a late reply is never mistaken for a reply to a
+     * newer request.
+     */
+    protected int mNextRequestId;
+
     /**
      * Stores an instance of ServiceResultHandler.
      */
@@ -154,8 +168,9 @@ public abstract class ImageOpsImpl {
         mNumImagesHandled = 0;
         mNumImagesToHandle = 0;
 
-        // Clear the URL list.
+        // Clear the URL list and forget the requests.
         mUrlList.clear();
+        mRequestUrls.clear();
         
         // Redisplay the URLs, which should now be empty.
         displayUrls();
@@ -259,26 +274,84 @@ public abstract class ImageOpsImpl {
             // displayed.
             mNumImagesToHandle = mUrlList.size();
 
-            // Iterate over each URL and start the download.
-            for (String urlString : mUrlList) 
-                startDownload(Uri.parse(urlString));
+            // Give each URL a request ID, which the Service's
+            // replies use to refer to it, and start downloading all
+            // the URLs.
+            int[] requestIds = new int[mUrlList.size()];
+            List<Uri> urls = new ArrayList<Uri>(mUrlList.size());
+            for (int i = 0; i < requestIds.length; ++i) {
+                requestIds[i] = mNextRequestId++;
+                mRequestUrls.put(requestIds[i], mUrlList.get(i));
+                urls.add(Uri.parse(mUrlList.get(i)));
+            }
+            startDownloads(requestIds, urls);
         }
     }
 
+    /**
+     * Start downloading all the @a urls, identified by the matching
+     * @a requestIds.  Plays the role of a "Hook Method" in the
+     * Template Method pattern, which by default iterates over each
+     * URL and starts its download, but can be overridden to pass all
+     * the URLs to a Service at once.
+     */
+    protected void startDownloads(int[] requestIds,
+                                  List<Uri> urls) {
+        for (int i = 0; i < requestIds.length; ++i) 
+            startDownload(requestIds[i], urls.get(i));
+    }
+
     /**
      * Start a download.  Plays the role of a "Primitive Operation"
      * (aka "Hook Method") in the Template Method pattern, which is
      * needed since the means for passing requests to a Started
      * Service are different than for a Bound Service.
      */
-    protected abstract void startDownload(Uri url);
+    protected abstract void startDownload(int requestId,
+                                          Uri url);
+
+    /**
+     * Cancel all the downloads in progress, e.g., because the user is
+     * leaving the screen and won't see the results.
+     */
+    public void cancelDownloads() {
+        if (!downloadsInProgress())
+            return;
+
+        Log.d(TAG,
+              "cancelling "
+              + (mNumImagesToHandle - mNumImagesHandled)
+              + " downloads");
+        cancelAllDownloads();
+
+        // Dismiss the progress bar and forget the cancelled requests
+        // so any late replies to them are ignored.
+        mLoadingProgressBar.get().setVisibility(View.INVISIBLE);
+        resetNonViewFields();
+    }
+
+    /**
+     * Ask the Service to cancel all the downloads it's running for
+     * us.  Plays the role of a "Hook Method" in the Template Method
+     * pattern, which does nothing by default.
+     */
+    protected void cancelAllDownloads() { /* no op */ }
 
     /**
      * Handle the results returned from the Service.
      */
     public void doResult(int requestCode,
                          int resultCode,
-                         Bundle data) {
+                         int requestId,
+                         String imagePathname) {
+        // Ignore results of requests from a previous run.
+        final String url = mRequestUrls.get(requestId);
+        if (url == null) {
+            Log.w(TAG, "ignoring result of unknown request " + requestId);
+            return;
+        }
+        mRequestUrls.remove(requestId);
+
         // Increment the number of images handled regardless of
         // whether this result succeeded or failed to download and
         // image.
@@ -286,22 +359,57 @@ public abstract class ImageOpsImpl {
 
         if (resultCode == Activity.RESULT_CANCELED) 
             // Handle a failed download.
-            handleDownloadFailure(data);
-        else /* resultCode == Activity.RESULT_OK) */
+            handleDownloadFailure(url);
+        else { /* resultCode == Activity.RESULT_OK) */
             // Handle a successful download.
             Log.d(TAG,
                   "received image at URI "
-                  + ReplyMessage.getImagePathname(data));
+                  + imagePathname);
+            displayStatus(url,
+                          "done");
+        }
                 
         // Try to display all images received successfully.
-        tryToDisplayImages(data);
+        tryToDisplayImages();
+    }
+
+    /**
+     * Handle the progress reported by the Service by displaying it
+     * next to the URL of the image being downloaded.
+     */
+    public void doProgress(int requestCode,
+                           int requestId,
+                           long bytesDownloaded,
+                           long totalBytes) {
+        final String url = mRequestUrls.get(requestId);
+        if (url == null)
+            return;
+
+        displayStatus(url,
+                      totalBytes > 0
+                      ? (bytesDownloaded * 100 / totalBytes) + "%"
+                      : (bytesDownloaded / 1024) + " KB");
+    }
+
+    /**
+     * Display @a status next to @a url in the list of URLs.
+     */
+    private void displayStatus(String url,
+                               String status) {
+        final int index = mUrlList.indexOf(url);
+        if (index < 0 
+            || index >= mLinearLayout.get().getChildCount())
+            return;
+
+        ((TextView) mLinearLayout.get().getChildAt(index))
+            .setText(url + " (" + status + ")");
     }
 
     /**
      * Launch an Activity to display all the images that were received
      * successfully if all downloads are complete.
      */
-    private void tryToDisplayImages(Bundle data) {
+    private void tryToDisplayImages() {
         // If this is last image handled, display images via
         // DisplayImagesActivity.
         if (allDownloadsComplete()) {
@@ -337,18 +445,14 @@ public abstract class ImageOpsImpl {
     /**
      * Handle failure to download an image.
      */
-    private void handleDownloadFailure(Bundle data) {
-        // Extract the URL from the message.
-        final Uri url =
-            ReplyMessage.getImageURL(data);
-            
+    private void handleDownloadFailure(String url) {
         Utils.showToast(mActivity.get(),
                         "image at " 
-                        + url.toString()
+                        + url
                         + " failed to download!");
 
         // Remove the URL that failed from the UI.
-        removeUrl(url.toString());
+        removeUrl(url);
 
         if (allDownloadsComplete()) {
             // Dismiss the progress bar.
@@ -379,6 +483,9 @@ public abstract class ImageOpsImpl {
         int fileCount = deleteFiles(mDirectoryPathname, 
                                     0);
 
+        // The Service's ImageStore no longer needs to keep them.
+        forgetDownloadedImages(mDirectoryPathname);
+
         // Indicate how many files were deleted.
         Utils.showToast(mActivity.get(),
                         fileCount
@@ -390,6 +497,13 @@ public abstract class ImageOpsImpl {
         resetNonViewFields();
     }
 
+    /**
+     * Tell the Service the images in @a directoryPathname were
+     * deleted.  Plays the role of a "Hook Method" in the Template
+     * Method pattern, which does nothing by default.
+     */
+    protected void forgetDownloadedImages(String directoryPathname) { /* no op */ }
+
     /**
      * A helper method that recursively deletes files in a specified
      * directory.
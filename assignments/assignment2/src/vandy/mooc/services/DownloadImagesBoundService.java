@@ -1,5 +1,6 @@
 package vandy.mooc.services;
 
+import vandy.mooc.utils.BitmapPool;
 import android.content.Context;
 import android.content.Intent;
 import android.os.IBinder;
@@ -41,6 +42,8 @@ public class DownloadImagesBoundService extends LifecycleLoggingService {
      */
     @Override
     public void onCreate() {
+        super.onCreate();
+
         // Create a RequestHandler used to handle request Messages
         // sent from an Activity.
     	// TODO -- you fill in here.
@@ -74,4 +77,14 @@ public class DownloadImagesBoundService extends LifecycleLoggingService {
     	// TODO -- you fill in here.
         mRequestHandler.shutdown();
     }
+
+    /**
+     * Hook method called when the system wants this process to free
+     * memory.  Releases the Bitmaps pooled for filtering images.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BitmapPool.getInstance().trimMemory(level);
+    }
 }
@@ -0,0 +1,183 @@
+package vandy.mooc.services;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+
+/**
+ * This class schedules download tasks so that no more than
+ * MAX_PER_HOST of them talk to the same host at once and no more
+ * than MAX_TOTAL run at all.  Tasks wait in a queue per host, and
+ * whenever a slot frees up the hosts with waiting tasks take turns
+ * in round-robin order, so a batch dominated by one host doesn't
+ * starve the others (or get the app throttled by that host).
+ */
+class DownloadScheduler {
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    private final String TAG = getClass().getSimpleName();
+
+    /**
+     * Maximum number of tasks that run against one host at once.
+     */
+    static final int MAX_PER_HOST = 4;
+
+    /**
+     * Maximum number of tasks that run at once.
+     */
+    static final int MAX_TOTAL = 8;
+
+    /**
+     * Runs the tasks once they're scheduled.
+     */
+    private final ExecutorService mExecutorService =
+        Executors.newCachedThreadPool();
+
+    /**
+     * The tasks waiting for each host.
+     */
+    private final Map<String, Queue<Runnable>> mWaiting =
+        new HashMap<String, Queue<Runnable>>();
+
+    /**
+     * The hosts with waiting tasks, in the order they get their next
+     * turn.
+     */
+    private final Queue<String> mTurns = new ArrayDeque<String>();
+
+    /**
+     * The number of tasks running against each host.
+     */
+    private final Map<String, Integer> mRunning =
+        new HashMap<String, Integer>();
+
+    /**
+     * The number of tasks running in all.
+     */
+    private int mTotalRunning;
+
+    /**
+     * True once shutdown() has been called.
+     */
+    private boolean mShutdown;
+
+    /**
+     * Run @a task against @a host once there's a slot for it.
+     */
+    synchronized void execute(String host,
+                              Runnable task) {
+        if (mShutdown)
+            throw new IllegalStateException("scheduler is shut down");
+        host = host == null ? "" : host.toLowerCase();
+
+        Queue<Runnable> waiting = mWaiting.get(host);
+        if (waiting == null) {
+            waiting = new ArrayDeque<Runnable>();
+            mWaiting.put(host, waiting);
+            mTurns.add(host);
+        }
+        waiting.add(task);
+        dispatch();
+    }
+
+    /**
+     * Finish the tasks that have been scheduled and then release the
+     * threads.
+     */
+    synchronized void shutdown() {
+        mShutdown = true;
+        if (mTotalRunning == 0 && mTurns.isEmpty())
+            mExecutorService.shutdown();
+    }
+
+    /**
+     * Start as many waiting tasks as the limits allow, giving each
+     * host with waiting tasks a turn in round-robin order.
+     */
+    private void dispatch() {
+        // Stop after a full round in which no host could start a
+        // task.
+        int skipped = 0;
+        while (mTotalRunning < MAX_TOTAL
+               && skipped < mTurns.size()) {
+            final String host = mTurns.remove();
+            final Queue<Runnable> waiting = mWaiting.get(host);
+
+            if (running(host) >= MAX_PER_HOST) {
+                // This host is busy, so let the next one go.
+                mTurns.add(host);
+                ++skipped;
+                continue;
+            }
+
+            final Runnable task = waiting.remove();
+            if (waiting.isEmpty())
+                mWaiting.remove(host);
+            else
+                mTurns.add(host);
+            skipped = 0;
+
+            // Don't waste a slot on a task that was cancelled while
+            // it waited.
+            if (task instanceof Future && ((Future<?>) task).isCancelled())
+                continue;
+
+            start(host, task);
+        }
+    }
+
+    /**
+     * Start running @a task against @a host.
+     */
+    private void start(final String host,
+                       final Runnable task) {
+        mRunning.put(host, running(host) + 1);
+        ++mTotalRunning;
+
+        mExecutorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        finished(host);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Called when a task running against @a host is finished, which
+     * frees up a slot for a waiting task.
+     */
+    private synchronized void finished(String host) {
+        final int running = running(host) - 1;
+        if (running == 0)
+            mRunning.remove(host);
+        else
+            mRunning.put(host, running);
+        --mTotalRunning;
+
+        dispatch();
+
+        if (mShutdown && mTotalRunning == 0 && mTurns.isEmpty()) {
+            Log.d(TAG, "all downloads finished, releasing threads");
+            mExecutorService.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of tasks running against @a host.
+     */
+    private int running(String host) {
+        final Integer running = mRunning.get(host);
+        return running == null ? 0 : running;
+    }
+}
@@ -1,19 +1,31 @@
 package vandy.mooc.services;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import vandy.mooc.utils.DebugLog;
+import vandy.mooc.utils.DownloadProgressListener;
+import vandy.mooc.utils.ImageStore;
 import vandy.mooc.utils.ReplyMessage;
 import vandy.mooc.utils.RequestMessage;
+import vandy.mooc.utils.Retrier;
 import vandy.mooc.utils.Utils;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseArray;
 
 /**
  * This class handles messages sent from an Activity in a pool of
@@ -25,6 +37,12 @@ class RequestHandler extends Handler {
      */
     private final String TAG = getClass().getSimpleName();
 
+    /**
+     * Logs the debug messages, which are off by default.
+     */
+    private static final DebugLog sLog =
+        new DebugLog(RequestHandler.class.getSimpleName());
+
     /**
      * Store a WeakReference to the Service to enable garbage
      * collection.
@@ -32,30 +50,50 @@ class RequestHandler extends Handler {
     WeakReference<DownloadImagesBoundService> mService;
     
     /**
-     * Reference to the ExecutorService that manages a pool of
-     * threads.
+     * Reference to the DownloadScheduler that runs the downloads in a
+     * pool of threads, limiting how many talk to each host at once.
+     */
+    private DownloadScheduler mScheduler;
+
+    /**
+     * The downloads that haven't finished, by the Messenger of the
+     * Activity that requested them and their request IDs.
      */
+    private final Map<Messenger, SparseArray<Future<?>>> mTasks =
+        new HashMap<Messenger, SparseArray<Future<?>>>();
 
-    private ExecutorService mExecutorService;
+    /**
+     * Minimum time (in milliseconds) between two progress messages
+     * for the same download, which bounds the messaging overhead
+     * however fast the bytes arrive.
+     */
+    private static final long PROGRESS_INTERVAL_MS = 250;
 
     /**
-     * Constructor initializes the WeakReference and ExecutorService.
+     * Time (in milliseconds) a batch waits after a download completes
+     * for others to complete, so their results share one reply.
+     */
+    private static final long BATCH_WINDOW_MS = 50;
+
+    /**
+     * Constructor initializes the WeakReference and DownloadScheduler.
      */
     public RequestHandler(DownloadImagesBoundService service) {
         // Store a WeakReference to the DownloadImageService.
         mService = new WeakReference<>(service);
 
-        // Create an ExecutorService that manages a pool of threads.
-        mExecutorService = Executors.newCachedThreadPool();
+        // Create a DownloadScheduler that manages a pool of threads.
+        mScheduler = new DownloadScheduler();
     }
 
     /**
      * Hook method called back when a request message arrives from an
      * Activity.  The Message it receives contains the Messenger used
-     * to reply to the Activity and the URL of the image to download.
-     * This image is stored in a local file on the local device and
-     * image file's URI is sent back to the MainActivity via the
-     * Messenger passed with the message.
+     * to reply to the Activity and the URL of the image to download
+     * (or the URLs of a batch of images).  Each image is stored in a
+     * local file on the local device and image file's URI is sent
+     * back to the MainActivity via the Messenger passed with the
+     * message.
      */
     public void handleMessage(Message message) {
         // Convert the Message into a RequestMessage.
@@ -65,9 +103,6 @@ class RequestHandler extends Handler {
         // Get the reply Messenger.
         // TODO -- you fill in here.
        final  Messenger reply_msg = requestMessage.getMessenger();
-        // Get the URL associated with the message data.
-        // TODO -- you fill in here.
-        final Uri url = requestMessage.getImageURL();
         // Get the directory pathname where the image will be stored.
         // TODO -- you fill in here
         final String directory_path = requestMessage.getDirectoryPathname();
@@ -75,6 +110,54 @@ class RequestHandler extends Handler {
         // the Activity.
         // TODO -- you fill in here.
          final int req_code = requestMessage.getRequestCode();
+
+        // Cancel the downloads the Activity no longer wants.
+        if (requestMessage.isCancel()) {
+            int[] requestIds = new int[requestMessage.size()];
+            for (int i = 0; i < requestIds.length; ++i)
+                requestIds[i] = requestMessage.getRequestId(i);
+            cancel(reply_msg, requestIds);
+            return;
+        }
+
+        // Let the ImageStore evict the images the Activity deleted.
+        if (requestMessage.isForget()) {
+            ImageStore.getInstance().forget(directory_path);
+            return;
+        }
+
+        // Coalesce the replies to a batch.
+        final BatchReplier replier = requestMessage.isBatch()
+            ? new BatchReplier(reply_msg, req_code)
+            : null;
+
+        // Download every image associated with the message data.
+        for (int i = 0; i < requestMessage.size(); ++i)
+            download(requestMessage.getImageURL(i),
+                     requestMessage.getRequestId(i),
+                     directory_path,
+                     reply_msg,
+                     req_code,
+                     replier,
+                     1,
+                     0);
+    }
+
+    /**
+     * Download the image at @a url, which the Activity identifies by
+     * @a requestId, into @a directory_path in a background Thread
+     * and reply via @a replier if it's non-null, else via @a
+     * reply_msg.  This is attempt number @a attempts, which starts
+     * after @a delay milliseconds.
+     */
+    private void download(final Uri url,
+                          final int requestId,
+                          final String directory_path,
+                          final Messenger reply_msg,
+                          final int req_code,
+                          final BatchReplier replier,
+                          final int attempts,
+                          long delay) {
         // A Runnable that downloads the image, stores it in a file,
         // and sends the path to the file back to the Activity.
 
@@ -87,38 +170,202 @@ class RequestHandler extends Handler {
                 public void run() {
                     // Download and store the requested image.
                     // TODO -- you fill in here.
-                    Uri uri = Utils.downloadImage(mService.get(), url, directory_path);
-                    // Send the path to the image file, url, and
-                    // requestCode back to the Activity via the
+                    Uri uri;
+                    try {
+                        uri = Utils.tryDownloadImage(mService.get(),
+                                                     url,
+                                                     directory_path,
+                                                     new ProgressReporter(reply_msg,
+                                                                          requestId,
+                                                                          req_code));
+                    } catch (IOException e) {
+                        // Try again later if the failure is likely
+                        // to go away.
+                        if (retry(url,
+                                  requestId,
+                                  directory_path,
+                                  reply_msg,
+                                  req_code,
+                                  replier,
+                                  attempts))
+                            return;
+                        Log.e(TAG, "giving up on " + url + ": " + e);
+                        uri = null;
+                    }
+                    untrack(reply_msg, requestId);
+
+                    // If the download was cancelled, clean up after
+                    // it rather than replying.
+                    if (Thread.currentThread().isInterrupted()) {
+                        sLog.d("download of ", url, " cancelled");
+                        Utils.discardDownload(mService.get(), url);
+                        if (uri != null) {
+                            // Keep the ImageStore from counting and
+                            // pinning the file it placed there.
+                            ImageStore.getInstance().forgetFile(uri.toString());
+                            new File(uri.toString()).delete();
+                        }
+                        return;
+                    }
+                    // Send the path to the image file, requestId,
+                    // and requestCode back to the Activity via the
                     // replyMessenger.
                     // TODO -- you fill in here
-                    sendPath(reply_msg,uri,url,req_code);
+                    if (replier != null)
+                        replier.add(uri, requestId);
+                    else
+                        sendPath(reply_msg,uri,requestId,req_code);
                 }
             };
 
         // Execute the downloadImageAndReply Runnable to download the
-        // image and reply.
+        // image and reply, keeping track of it so it can be
+        // cancelled.
         // TODO -- you fill in here.
-        mExecutorService.execute(downloadImageAndReply);
+        final FutureTask<Void> task =
+            new FutureTask<Void>(downloadImageAndReply, null);
+        track(reply_msg, requestId, task);
+        if (delay == 0)
+            mScheduler.execute(url.getHost(), task);
+        else
+            // No Thread is held while a retry waits, and a retry
+            // that's cancelled while it waits is skipped by the
+            // DownloadScheduler.
+            postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            mScheduler.execute(url.getHost(), task);
+                        } catch (IllegalStateException e) {
+                            sLog.d("shut down, dropping retry of ", url);
+                            untrack(reply_msg, requestId);
+                        }
+                    }
+                }, delay);
     }
 
     /**
-     * Send the @a pathToImageFile, @a url, and @a requestCode back to
-     * the Activity via the @a messenger.
+     * Schedule another attempt at downloading the image at @a url
+     * after a failed attempt number @a attempts, unless it's been
+     * attempted Retrier.MAX_ATTEMPTS times or the failed attempt was
+     * cancelled.  Called in the Thread that made the failed attempt.
+     *
+     * @return
+     *        True if another attempt was scheduled.
+     */
+    private boolean retry(Uri url,
+                          int requestId,
+                          String directory_path,
+                          Messenger reply_msg,
+                          int req_code,
+                          BatchReplier replier,
+                          int attempts) {
+        if (attempts >= Retrier.MAX_ATTEMPTS)
+            return false;
+
+        // cancel() interrupts the Thread and forgets the task while
+        // holding the lock, so the retry is either never scheduled
+        // or tracked in time to be cancelled as well.
+        synchronized (mTasks) {
+            if (Thread.currentThread().isInterrupted())
+                return false;
+
+            final long delay = Retrier.backoffMillis(attempts);
+            if (sLog.isLoggable())
+                sLog.d("attempt " + attempts + " at " + url
+                       + " failed, retrying in " + delay + " ms");
+            download(url,
+                     requestId,
+                     directory_path,
+                     reply_msg,
+                     req_code,
+                     replier,
+                     attempts + 1,
+                     Math.max(delay, 1));
+        }
+        return true;
+    }
+
+    /**
+     * Remember the @a task that downloads the image with @a
+     * requestId for the Activity with @a messenger.
+     */
+    private void track(Messenger messenger,
+                       int requestId,
+                       Future<?> task) {
+        synchronized (mTasks) {
+            SparseArray<Future<?>> tasks = mTasks.get(messenger);
+            if (tasks == null) {
+                tasks = new SparseArray<Future<?>>();
+                mTasks.put(messenger, tasks);
+            }
+            tasks.put(requestId, task);
+        }
+    }
+
+    /**
+     * Forget the task that downloads the image with @a requestId for
+     * the Activity with @a messenger.
+     */
+    private void untrack(Messenger messenger,
+                         int requestId) {
+        synchronized (mTasks) {
+            final SparseArray<Future<?>> tasks = mTasks.get(messenger);
+            if (tasks == null)
+                return;
+            tasks.remove(requestId);
+            if (tasks.size() == 0)
+                mTasks.remove(messenger);
+        }
+    }
+
+    /**
+     * Cancel the downloads with @a requestIds for the Activity with
+     * @a messenger, or all its downloads if @a requestIds is empty.
+     * Tasks that are still queued never run, and running ones are
+     * interrupted, which makes them delete their partial files.
+     */
+    private void cancel(Messenger messenger,
+                        int[] requestIds) {
+        synchronized (mTasks) {
+            final SparseArray<Future<?>> tasks = mTasks.get(messenger);
+            if (tasks == null)
+                return;
+
+            if (requestIds.length == 0) {
+                for (int i = 0; i < tasks.size(); ++i)
+                    tasks.valueAt(i).cancel(true);
+                tasks.clear();
+            } else
+                for (int requestId : requestIds) {
+                    final Future<?> task = tasks.get(requestId);
+                    if (task != null) {
+                        task.cancel(true);
+                        tasks.remove(requestId);
+                    }
+                }
+
+            if (tasks.size() == 0)
+                mTasks.remove(messenger);
+        }
+    }
+
+    /**
+     * Send the @a pathToImageFile, @a requestId, and @a requestCode
+     * back to the Activity via the @a messenger.
      */
     public void sendPath(Messenger messenger, 
                          Uri pathToImageFile,
-                         Uri url,
+                         int requestId,
                          int requestCode) {
         // Call the makeReplyMessage() factory method to create
         // Message.
         // TODO -- you fill in here.
-        ReplyMessage reply_msg = ReplyMessage.makeReplyMessage(pathToImageFile,url,requestCode);
+        ReplyMessage reply_msg = ReplyMessage.makeReplyMessage(pathToImageFile,requestId,requestCode);
         try {
-            Log.d(TAG,
-                  "sending "
-                  + pathToImageFile
-                  + " back to the MainActivity");
+            sLog.d("sending ",
+                   pathToImageFile,
+                   " back to the MainActivity");
 
             // Send the replyMessage back to the Activity.
             // TODO -- you fill in here.
@@ -131,12 +378,153 @@ class RequestHandler extends Handler {
     }
 
     /**
-     * Shutdown the ExecutorService immediately.
+     * Collects the results of the downloads in a batch and sends
+     * those that complete within BATCH_WINDOW_MS of each other back
+     * to the Activity in one reply Message.
+     */
+    private class BatchReplier implements Runnable {
+        /**
+         * The Messenger used to reply to the Activity.
+         */
+        private final Messenger mMessenger;
+
+        /**
+         * The requestCode of the batch.
+         */
+        private final int mRequestCode;
+
+        /**
+         * The results that haven't been sent yet.
+         */
+        private final List<Uri> mPaths = new ArrayList<Uri>();
+        private final List<Integer> mRequestIds = new ArrayList<Integer>();
+
+        /**
+         * Constructor initializes the fields.
+         */
+        BatchReplier(Messenger messenger,
+                     int requestCode) {
+            mMessenger = messenger;
+            mRequestCode = requestCode;
+        }
+
+        /**
+         * Called in a background Thread when the image with @a
+         * requestId has been downloaded to @a pathToImageFile (which
+         * is null if the download failed).  The first result of a
+         * window schedules the reply.
+         */
+        synchronized void add(Uri pathToImageFile,
+                              int requestId) {
+            if (mRequestIds.isEmpty())
+                postDelayed(this, BATCH_WINDOW_MS);
+            mPaths.add(pathToImageFile);
+            mRequestIds.add(requestId);
+        }
+
+        /**
+         * Sends the results collected during the window.  Runs in the
+         * RequestHandler's Looper Thread.
+         */
+        @Override
+        public void run() {
+            final ReplyMessage replyMessage;
+            synchronized (this) {
+                final int[] requestIds = new int[mRequestIds.size()];
+                for (int i = 0; i < requestIds.length; ++i)
+                    requestIds[i] = mRequestIds.get(i);
+
+                replyMessage =
+                    ReplyMessage.makeBatchReplyMessage(mPaths,
+                                                       requestIds,
+                                                       mRequestCode);
+                mPaths.clear();
+                mRequestIds.clear();
+            }
+
+            try {
+                if (sLog.isLoggable())
+                    sLog.d("sending "
+                           + replyMessage.size()
+                           + " results back to the MainActivity");
+                mMessenger.send(replyMessage.getMessage());
+            } catch (Exception e) {
+                Log.e(getClass().getName(),
+                      "Exception while sending reply message back to Activity.",
+                      e);
+            }
+        }
+    }
+
+    /**
+     * Sends the progress of a download back to the Activity via its
+     * Messenger, at most once every PROGRESS_INTERVAL_MS.
+     */
+    private class ProgressReporter implements DownloadProgressListener {
+        /**
+         * The Messenger used to reply to the Activity.
+         */
+        private final Messenger mMessenger;
+
+        /**
+         * The request ID of the image being downloaded.
+         */
+        private final int mRequestId;
+
+        /**
+         * The requestCode of the download.
+         */
+        private final int mRequestCode;
+
+        /**
+         * Time the last progress message was sent.
+         */
+        private long mLastSent = -PROGRESS_INTERVAL_MS;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        ProgressReporter(Messenger messenger,
+                         int requestId,
+                         int requestCode) {
+            mMessenger = messenger;
+            mRequestId = requestId;
+            mRequestCode = requestCode;
+        }
+
+        /**
+         * Hook method called back in the downloading Thread as the
+         * bytes arrive.
+         */
+        @Override
+        public void onProgress(long bytesDownloaded,
+                               long totalBytes) {
+            final long now = SystemClock.elapsedRealtime();
+            if (now - mLastSent < PROGRESS_INTERVAL_MS)
+                return;
+            mLastSent = now;
+
+            try {
+                mMessenger.send(ReplyMessage.makeProgressMessage
+                                (mRequestId,
+                                 mRequestCode,
+                                 bytesDownloaded,
+                                 totalBytes).getMessage());
+            } catch (RemoteException e) {
+                Log.w(TAG, "unable to send progress: " + e);
+            }
+        }
+    }
+
+    /**
+     * Shutdown the DownloadScheduler.  Retries that are still waiting
+     * to start are dropped.
      */
     public void shutdown() {
-        // Immediately shutdown the ExecutorService.
+        // Shutdown the DownloadScheduler once the scheduled
+        // downloads have finished.
         // TODO -- you fill in here.
-        mExecutorService.shutdown();
+        mScheduler.shutdown();
     }
 }
 
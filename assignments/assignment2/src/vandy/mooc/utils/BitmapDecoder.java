@@ -0,0 +1,228 @@
+package vandy.mooc.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * This helper class decodes image files into Bitmaps that are no
+ * larger than they need to be.  It reads the image bounds first and
+ * then picks the largest power-of-two inSampleSize that still meets
+ * either a target width/height or a byte budget.  Images decoded for
+ * display that can't have an alpha channel (i.e., JPEGs) are decoded
+ * as RGB_565, which takes half the memory of ARGB_8888.  Images
+ * decoded within a budget are meant to be filtered and re-encoded, so
+ * they're always decoded as ARGB_8888 lest each JPEG lose precision
+ * (and band) on its way through the filters.  An existing mutable
+ * Bitmap that's large enough (either the one passed in or one from
+ * the BitmapPool) is reused via inBitmap rather than allocating a new
+ * one.
+ */
+public class BitmapDecoder {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "BitmapDecoder";
+
+    /**
+     * MIME type of images that never have an alpha channel.
+     */
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+
+    /**
+     * Decode the image at @a pathname so that it's at least @a
+     * reqWidth x @a reqHeight (unless the image itself is smaller),
+     * reusing @a reusable if possible.  The Bitmap is only meant to
+     * be displayed, so JPEGs are decoded as RGB_565.
+     *
+     * @return
+     *        The decoded Bitmap, which is mutable, or null if the
+     *        image can't be decoded.
+     */
+    public static Bitmap decode(String pathname,
+                                int reqWidth,
+                                int reqHeight,
+                                Bitmap reusable) {
+        final BitmapFactory.Options options = decodeBounds(pathname, true);
+        if (options == null)
+            return null;
+
+        options.inSampleSize =
+            sampleSizeForDimensions(options.outWidth,
+                                    options.outHeight,
+                                    reqWidth,
+                                    reqHeight);
+        return decode(pathname, options, reusable);
+    }
+
+    /**
+     * Decode the image at @a pathname so that the resulting Bitmap
+     * takes at most @a byteBudget bytes, reusing @a reusable if
+     * possible.  The Bitmap is decoded as ARGB_8888 so it can be
+     * filtered and re-encoded at full precision.
+     *
+     * @return
+     *        The decoded Bitmap, which is mutable, or null if the
+     *        image can't be decoded.
+     */
+    public static Bitmap decodeWithinBudget(String pathname,
+                                            long byteBudget,
+                                            Bitmap reusable) {
+        final BitmapFactory.Options options = decodeBounds(pathname, false);
+        if (options == null)
+            return null;
+
+        options.inSampleSize =
+            sampleSizeForBudget(options.outWidth,
+                                options.outHeight,
+                                bytesPerPixel(options.inPreferredConfig),
+                                byteBudget);
+        return decode(pathname, options, reusable);
+    }
+
+    /**
+     * Returns the largest power of two that can be used as an
+     * inSampleSize for a @a width x @a height image so that it's
+     * still at least @a reqWidth x @a reqHeight.
+     */
+    public static int sampleSizeForDimensions(int width,
+                                              int height,
+                                              int reqWidth,
+                                              int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0)
+            return sampleSize;
+
+        while (width / (sampleSize * 2) >= reqWidth
+               && height / (sampleSize * 2) >= reqHeight)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Returns the smallest power of two that can be used as an
+     * inSampleSize for a @a width x @a height image so that it takes
+     * at most @a byteBudget bytes at @a bytesPerPixel.
+     */
+    public static int sampleSizeForBudget(int width,
+                                          int height,
+                                          int bytesPerPixel,
+                                          long byteBudget) {
+        int sampleSize = 1;
+        while (sampleSize < width
+               && sampleSize < height
+               && byteCount(width, height, sampleSize, bytesPerPixel)
+                  > byteBudget)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Returns the number of bytes taken by a @a width x @a height
+     * image decoded with @a sampleSize at @a bytesPerPixel.
+     */
+    public static long byteCount(int width,
+                                 int height,
+                                 int sampleSize,
+                                 int bytesPerPixel) {
+        // Decoders round the sampled dimensions up.
+        return (long) ((width + sampleSize - 1) / sampleSize)
+            * ((height + sampleSize - 1) / sampleSize)
+            * bytesPerPixel;
+    }
+
+    /**
+     * Returns the number of bytes per pixel of @a config.
+     */
+    public static int bytesPerPixel(Config config) {
+        switch (config) {
+        case ALPHA_8:
+            return 1;
+        case RGB_565:
+        case ARGB_4444:
+            return 2;
+        default:
+            return 4;
+        }
+    }
+
+    /**
+     * Read the bounds of the image at @a pathname and return Options
+     * that are ready to decode it, or null if it isn't an image.  If
+     * @a compact is true, images without an alpha channel are
+     * decoded as RGB_565.
+     */
+    private static BitmapFactory.Options decodeBounds(String pathname,
+                                                      boolean compact) {
+        final BitmapFactory.Options options =
+            new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(pathname, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig =
+            compact && MIME_TYPE_JPEG.equals(options.outMimeType)
+            ? Config.RGB_565
+            : Config.ARGB_8888;
+        return options;
+    }
+
+    /**
+     * Decode the image at @a pathname with the @a options, reusing @a
+     * reusable if it's large enough.
+     */
+    private static Bitmap decode(String pathname,
+                                 BitmapFactory.Options options,
+                                 Bitmap reusable) {
+        final long byteCount =
+            byteCount(options.outWidth,
+                      options.outHeight,
+                      options.inSampleSize,
+                      bytesPerPixel(options.inPreferredConfig));
+
+        // Fall back on a Bitmap from the pool.
+        final BitmapPool pool = BitmapPool.getInstance();
+        Bitmap pooled = null;
+        if (!canReuse(reusable, byteCount))
+            reusable = pooled = pool.get(byteCount);
+
+        if (reusable != null) {
+            options.inBitmap = reusable;
+            try {
+                final Bitmap bitmap =
+                    BitmapFactory.decodeFile(pathname, options);
+                if (bitmap != null)
+                    return bitmap;
+            } catch (IllegalArgumentException e) {
+                // The decoder wouldn't reuse the Bitmap after all.
+                Log.d(TAG, "unable to reuse bitmap: " + e);
+            }
+            options.inBitmap = null;
+            pool.put(pooled);
+        }
+        return BitmapFactory.decodeFile(pathname, options);
+    }
+
+    /**
+     * Returns true if @a reusable can hold an image of @a byteCount
+     * bytes.
+     */
+    private static boolean canReuse(Bitmap reusable,
+                                    long byteCount) {
+        return reusable != null
+            && reusable.isMutable()
+            && !reusable.isRecycled()
+            && reusable.getAllocationByteCount() >= byteCount;
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private BitmapDecoder() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,208 @@
+package vandy.mooc.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+/**
+ * A pool of mutable Bitmaps that are no longer needed, so decoding
+ * and filtering many images can reuse their memory (via inBitmap or
+ * Bitmap.reconfigure()) rather than allocating a large new Bitmap for
+ * each one.  Bitmaps are bucketed by the power of two just below
+ * their allocation size, so finding one that's large enough only
+ * looks in two buckets, and a Bitmap is never handed out for a
+ * request less than a quarter of its size.  The pool is bounded by a
+ * byte budget; when a released Bitmap doesn't fit, the Bitmaps that
+ * were released longest ago are recycled.  Components that use the
+ * pool pass their onTrimMemory() levels to trimMemory(), so the
+ * pooled Bitmaps are released when the system needs the memory.
+ */
+public class BitmapPool {
+    /**
+     * Fraction of the maximum heap size the pool may hold.
+     */
+    private static final int MEMORY_FRACTION = 8;
+
+    /**
+     * The one and only pool in this process.
+     */
+    private static BitmapPool sInstance;
+
+    /**
+     * The pooled Bitmaps, keyed by the log2 of their allocation
+     * size, with the most recently released Bitmap last in each
+     * bucket.
+     */
+    private final List<List<Bitmap>> mBuckets =
+        new ArrayList<List<Bitmap>>();
+
+    /**
+     * The pooled Bitmaps in the order they were released, which is
+     * the order they're recycled in when the pool is full.
+     */
+    private final LinkedHashMap<Bitmap, Boolean> mReleased =
+        new LinkedHashMap<Bitmap, Boolean>();
+
+    /**
+     * Maximum number of bytes the pool may hold.
+     */
+    private final long mBudget;
+
+    /**
+     * Number of bytes the pool is holding.
+     */
+    private long mTotalBytes;
+
+    /**
+     * Returns the pool, creating it the first time it's called.
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null)
+            sInstance =
+                new BitmapPool(Runtime.getRuntime().maxMemory()
+                               / MEMORY_FRACTION);
+        return sInstance;
+    }
+
+    /**
+     * Constructor creates a pool that holds up to @a budget bytes.
+     */
+    BitmapPool(long budget) {
+        mBudget = budget;
+        for (int i = 0; i < Integer.SIZE; ++i)
+            mBuckets.add(new ArrayList<Bitmap>());
+    }
+
+    /**
+     * Returns a pooled Bitmap whose allocation holds at least @a
+     * byteCount bytes, e.g., to pass as inBitmap, or null if there
+     * isn't one.  The caller owns the Bitmap until it's released.
+     */
+    public synchronized Bitmap get(long byteCount) {
+        if (byteCount <= 0 || byteCount > Integer.MAX_VALUE)
+            return null;
+
+        final int bucket = bucketFor((int) byteCount);
+        final Bitmap bitmap = take(bucket, byteCount);
+        return bitmap != null
+            ? bitmap
+            : take(bucket + 1, byteCount);
+    }
+
+    /**
+     * Returns a mutable, cleared @a width x @a height Bitmap in @a
+     * config, reusing a pooled Bitmap if there's one large enough.
+     */
+    public Bitmap get(int width,
+                      int height,
+                      Config config) {
+        final Bitmap bitmap =
+            get((long) width * height * BitmapDecoder.bytesPerPixel(config));
+        if (bitmap == null)
+            return Bitmap.createBitmap(width, height, config);
+
+        bitmap.reconfigure(width, height, config);
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Return @a bitmap to the pool once the caller no longer needs
+     * it.  Bitmaps that can't be reused are recycled.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null
+            || bitmap.isRecycled()
+            || mReleased.containsKey(bitmap))
+            return;
+
+        final int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > mBudget) {
+            bitmap.recycle();
+            return;
+        }
+
+        // Make room by recycling the Bitmaps released longest ago.
+        final Iterator<Bitmap> eldest = mReleased.keySet().iterator();
+        while (mTotalBytes + size > mBudget && eldest.hasNext()) {
+            final Bitmap evicted = eldest.next();
+            eldest.remove();
+            mBuckets.get(bucketFor(evicted.getAllocationByteCount()))
+                .remove(evicted);
+            mTotalBytes -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+
+        mBuckets.get(bucketFor(size)).add(bitmap);
+        mReleased.put(bitmap, Boolean.TRUE);
+        mTotalBytes += size;
+    }
+
+    /**
+     * Recycle all the pooled Bitmaps, e.g., when the system is low on
+     * memory.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mReleased.keySet())
+            bitmap.recycle();
+        for (List<Bitmap> bucket : mBuckets)
+            bucket.clear();
+        mReleased.clear();
+        mTotalBytes = 0;
+    }
+
+    /**
+     * Recycle all the pooled Bitmaps if @a level, passed to
+     * ComponentCallbacks2.onTrimMemory(), says memory is running low
+     * or the process is no longer visible, since the pool only pays
+     * for itself while images are being decoded and filtered.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            clear();
+    }
+
+    /**
+     * Returns the number of bytes the pool is holding.
+     */
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Remove and return the most recently released Bitmap in @a
+     * bucket that holds at least @a byteCount bytes, or null if there
+     * isn't one.
+     */
+    private Bitmap take(int bucket,
+                        long byteCount) {
+        if (bucket >= mBuckets.size())
+            return null;
+
+        final List<Bitmap> bitmaps = mBuckets.get(bucket);
+        for (int i = bitmaps.size() - 1; i >= 0; --i) {
+            final Bitmap bitmap = bitmaps.get(i);
+            final int size = bitmap.getAllocationByteCount();
+            if (size >= byteCount) {
+                bitmaps.remove(i);
+                mReleased.remove(bitmap);
+                mTotalBytes -= size;
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bucket that holds Bitmaps of @a size bytes, i.e.,
+     * floor(log2(size)).
+     */
+    private static int bucketFor(int size) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+    }
+}
@@ -0,0 +1,254 @@
+package vandy.mooc.utils;
+
+import java.io.PrintWriter;
+
+import android.util.Log;
+
+/**
+ * A facade for the debug messages logged on hot paths (e.g., for each
+ * field of each reply parsed), which costs nothing when they're
+ * disabled.  Rather than building a message with "+", callers pass
+ * its parts, which are only put together if the message is logged:
+ *
+ *   sLog.d("reading wind speed ", wind.getSpeed());
+ *
+ * Since primitives aren't boxed and nothing is concatenated, such a
+ * call doesn't allocate unless the message is logged, or is traced
+ * with an argument that isn't a String (see below).  Messages that
+ * don't fit the d() methods should be guarded by isLoggable().
+ *
+ * Debug messages are off by default.  They're sent to logcat if
+ * "adb shell setprop log.tag.<tag> DEBUG" was run before the process
+ * started.  If "adb shell setprop log.tag.DebugLog VERBOSE" was run,
+ * or setTracing(true) is called, every debug message is also kept in
+ * a ring buffer, without formatting it, and the last TRACE_CAPACITY
+ * of them are written by dumpTrace().  The ring buffer only holds
+ * Strings and primitives, so an Object argument is converted to a
+ * String when it's traced, which keeps the buffer from pinning live
+ * objects (e.g., an Activity) or dumping their later state, at the
+ * cost of allocating that String.  Setting
+ * COMPILED to false compiles debug messages out altogether.
+ */
+public class DebugLog {
+    /**
+     * Change this to false to compile out all the debug messages.
+     */
+    public static final boolean COMPILED = true;
+
+    /**
+     * Debugging tag used by the Android logger.
+     */
+    private static final String TAG = "DebugLog";
+
+    /**
+     * The longest tag that Log.isLoggable() accepts.
+     */
+    private static final int MAX_TAG_LENGTH = 23;
+
+    /**
+     * The number of debug messages kept by the ring buffer.
+     */
+    private static final int TRACE_CAPACITY = 512;
+
+    /**
+     * The kinds of argument that a debug message can have.
+     */
+    private static final int NONE = 0;
+    private static final int OBJECT = 1;
+    private static final int LONG = 2;
+    private static final int DOUBLE = 3;
+
+    /**
+     * True if debug messages are being kept in the ring buffer.
+     */
+    private static volatile boolean sTracing =
+        COMPILED && Log.isLoggable(TAG, Log.VERBOSE);
+
+    /**
+     * The ring buffer, whose entries are spread over arrays allocated
+     * up front, so tracing a message whose argument is a String or a
+     * primitive doesn't allocate either.
+     */
+    private static final long[] sTimes = new long[TRACE_CAPACITY];
+    private static final String[] sTags = new String[TRACE_CAPACITY];
+    private static final String[] sMessages = new String[TRACE_CAPACITY];
+    private static final int[] sKinds = new int[TRACE_CAPACITY];
+    private static final String[] sObjects = new String[TRACE_CAPACITY];
+    private static final long[] sNumbers = new long[TRACE_CAPACITY];
+    private static final String[] sSuffixes = new String[TRACE_CAPACITY];
+
+    /**
+     * The number of debug messages ever traced, the last
+     * TRACE_CAPACITY of which are in the ring buffer.
+     */
+    private static long sTraced;
+
+    /**
+     * The tag of the debug messages.
+     */
+    private final String mTag;
+
+    /**
+     * True if the debug messages are sent to logcat.
+     */
+    private final boolean mLoggable;
+
+    /**
+     * Constructor logs debug messages with the given @a tag.
+     */
+    public DebugLog(String tag) {
+        mTag = tag;
+        mLoggable =
+            COMPILED
+            && Log.isLoggable(tag.length() <= MAX_TAG_LENGTH
+                              ? tag
+                              : tag.substring(tag.length() - MAX_TAG_LENGTH),
+                              Log.DEBUG);
+    }
+
+    /**
+     * Returns true if debug messages are logged or traced, so a
+     * message that doesn't fit the d() methods is worth building.
+     */
+    public boolean isLoggable() {
+        return COMPILED && (mLoggable || sTracing);
+    }
+
+    /**
+     * Log @a msg.
+     */
+    public void d(String msg) {
+        if (COMPILED && (mLoggable || sTracing))
+            log(msg, NONE, null, 0, null);
+    }
+
+    /**
+     * Log @a msg followed by @a arg.
+     */
+    public void d(String msg,
+                  Object arg) {
+        if (COMPILED && (mLoggable || sTracing))
+            log(msg, OBJECT, arg, 0, null);
+    }
+
+    /**
+     * Log @a msg followed by @a arg.
+     */
+    public void d(String msg,
+                  long arg) {
+        if (COMPILED && (mLoggable || sTracing))
+            log(msg, LONG, null, arg, null);
+    }
+
+    /**
+     * Log @a msg followed by @a arg.
+     */
+    public void d(String msg,
+                  double arg) {
+        if (COMPILED && (mLoggable || sTracing))
+            log(msg, DOUBLE, null, Double.doubleToRawLongBits(arg), null);
+    }
+
+    /**
+     * Log @a msg followed by @a arg and @a suffix.
+     */
+    public void d(String msg,
+                  Object arg,
+                  String suffix) {
+        if (COMPILED && (mLoggable || sTracing))
+            log(msg, OBJECT, arg, 0, suffix);
+    }
+
+    /**
+     * Start or stop keeping debug messages in the ring buffer.
+     */
+    public static void setTracing(boolean tracing) {
+        sTracing = COMPILED && tracing;
+    }
+
+    /**
+     * Write the debug messages in the ring buffer to @a writer,
+     * oldest first, each line starting with @a prefix.
+     */
+    public static void dumpTrace(String prefix,
+                                 PrintWriter writer) {
+        synchronized (sTimes) {
+            if (!sTracing && sTraced == 0)
+                return;
+
+            writer.println(prefix + "Trace (" + sTraced
+                           + " debug messages):");
+            final int count = (int) Math.min(sTraced, TRACE_CAPACITY);
+            for (int i = (int) ((sTraced - count) % TRACE_CAPACITY), n = 0;
+                 n < count;
+                 i = (i + 1) % TRACE_CAPACITY, ++n)
+                writer.println(String.format("%s  %tT.%<tL %s: ",
+                                             prefix,
+                                             sTimes[i],
+                                             sTags[i])
+                               + format(sMessages[i],
+                                        sKinds[i],
+                                        sObjects[i],
+                                        sNumbers[i],
+                                        sSuffixes[i]));
+        }
+    }
+
+    /**
+     * Trace and/or log the debug message made up of @a msg, an
+     * argument of the given @a kind (held in @a object or @a number)
+     * and @a suffix.
+     */
+    private void log(String msg,
+                     int kind,
+                     Object object,
+                     long number,
+                     String suffix) {
+        if (sTracing) {
+            // Convert the argument outside the lock, since its
+            // toString() may take a while.
+            final String text = object == null || object instanceof String
+                ? (String) object
+                : String.valueOf(object);
+            synchronized (sTimes) {
+                final int i = (int) (sTraced++ % TRACE_CAPACITY);
+                sTimes[i] = System.currentTimeMillis();
+                sTags[i] = mTag;
+                sMessages[i] = msg;
+                sKinds[i] = kind;
+                sObjects[i] = text;
+                sNumbers[i] = number;
+                sSuffixes[i] = suffix;
+            }
+        }
+
+        if (mLoggable)
+            Log.d(mTag, format(msg, kind, object, number, suffix));
+    }
+
+    /**
+     * Returns the debug message made up of @a msg, an argument of the
+     * given @a kind (held in @a object or @a number) and @a suffix.
+     */
+    private static String format(String msg,
+                                 int kind,
+                                 Object object,
+                                 long number,
+                                 String suffix) {
+        final StringBuilder builder = new StringBuilder(msg);
+        switch (kind) {
+        case OBJECT:
+            builder.append(object);
+            break;
+        case LONG:
+            builder.append(number);
+            break;
+        case DOUBLE:
+            builder.append(Double.longBitsToDouble(number));
+            break;
+        }
+        if (suffix != null)
+            builder.append(suffix);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package vandy.mooc.utils;
+
+/**
+ * Interface that's implemented by callers that want to follow the
+ * progress of a download.
+ */
+public interface DownloadProgressListener {
+    /**
+     * Called in the downloading Thread each time more of the
+     * resource is on disk, giving the number of bytes downloaded
+     * thus far and the total number of bytes, which is -1 if the
+     * server didn't say.  It's called often, so implementations
+     * should return quickly.
+     */
+    void onProgress(long bytesDownloaded,
+                    long totalBytes);
+}
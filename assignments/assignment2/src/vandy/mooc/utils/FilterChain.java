@@ -0,0 +1,181 @@
+package vandy.mooc.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of filters applied to an image held in one mutable
+ * PixelBuffer.  Consecutive PixelOperations (e.g., grayscale) are
+ * fused so a single traversal of the image applies all of them to
+ * each block of pixels while it's still in the cache, and that
+ * traversal is split into bands that run in parallel.
+ * ImageFilters (e.g., resize, blur, and sharpen) are applied to the
+ * whole image between the fused traversals.  Filters are added via
+ * the chainable methods, e.g.:
+ *
+ *     FilterChain.create().grayScale().resize(640, 480).sharpen()
+ */
+public class FilterChain {
+    /**
+     * Number of pixels each fused operation processes before handing
+     * them to the next one.  Small enough that the block stays in the
+     * cache.
+     */
+    private static final int FUSED_BLOCK_PIXELS = 2 * 1024;
+
+    /**
+     * The stages of the chain, each of which is either an ImageFilter
+     * or a FusedOperation.
+     */
+    private final List<Object> mStages = new ArrayList<Object>();
+
+    /**
+     * Factory method that returns an empty chain.
+     */
+    public static FilterChain create() {
+        return new FilterChain();
+    }
+
+    /**
+     * Constructor is private to ensure the create() factory method is
+     * used.
+     */
+    private FilterChain() {
+    }
+
+    /**
+     * Add a filter that converts each pixel to grayscale.
+     */
+    public FilterChain grayScale() {
+        return add(new PixelOperation() {
+                @Override
+                public void apply(int[] argb,
+                                  int offset,
+                                  int length) {
+                    PixelFilters.grayScale(argb, offset, length, true);
+                }
+            });
+    }
+
+    /**
+     * Add a filter that resizes the image to @a width x @a height.
+     */
+    public FilterChain resize(final int width,
+                              final int height) {
+        return add(new ImageFilter() {
+                @Override
+                public void apply(PixelBuffer buffer) {
+                    PixelFilters.resize(buffer, width, height);
+                }
+            });
+    }
+
+    /**
+     * Add a filter that blurs the image with the given @a radius.
+     */
+    public FilterChain blur(final int radius) {
+        return add(new ImageFilter() {
+                @Override
+                public void apply(PixelBuffer buffer) {
+                    PixelFilters.blur(buffer, radius);
+                }
+            });
+    }
+
+    /**
+     * Add a filter that sharpens the image.
+     */
+    public FilterChain sharpen() {
+        return add(new ImageFilter() {
+                @Override
+                public void apply(PixelBuffer buffer) {
+                    PixelFilters.sharpen(buffer);
+                }
+            });
+    }
+
+    /**
+     * Add an @a operation that transforms each pixel independently.
+     * It's fused with the preceding operation if that one also
+     * transforms each pixel independently.
+     */
+    public FilterChain add(PixelOperation operation) {
+        final Object last =
+            mStages.isEmpty() ? null : mStages.get(mStages.size() - 1);
+        if (last instanceof FusedOperation)
+            ((FusedOperation) last).mOperations.add(operation);
+        else {
+            final FusedOperation fused = new FusedOperation();
+            fused.mOperations.add(operation);
+            mStages.add(fused);
+        }
+        return this;
+    }
+
+    /**
+     * Add a @a filter that transforms the whole image.
+     */
+    public FilterChain add(ImageFilter filter) {
+        mStages.add(filter);
+        return this;
+    }
+
+    /**
+     * Returns true if the chain has no filters.
+     */
+    public boolean isEmpty() {
+        return mStages.isEmpty();
+    }
+
+    /**
+     * Apply the filters to the image in @a buffer.  If the calling
+     * thread is interrupted, the remaining filters are skipped and
+     * false is returned.  Like Thread.interrupted(), this clears the
+     * interrupt status.
+     *
+     * @return true if all the filters were applied, else false.
+     */
+    public boolean apply(PixelBuffer buffer) {
+        for (Object stage : mStages) {
+            if (stage instanceof FusedOperation) {
+                if (!ParallelPixelProcessor.apply(buffer.getPixels(),
+                                                  buffer.getWidth(),
+                                                  buffer.getHeight(),
+                                                  (FusedOperation) stage))
+                    return false;
+            } else {
+                // Check for cancellation between filters.
+                if (Thread.interrupted())
+                    return false;
+                ((ImageFilter) stage).apply(buffer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies a run of PixelOperations in one traversal by applying
+     * each of them in turn to a small block of pixels before moving
+     * on to the next block.
+     */
+    private static class FusedOperation implements PixelOperation {
+        /**
+         * The operations to apply, in order.
+         */
+        final List<PixelOperation> mOperations =
+            new ArrayList<PixelOperation>();
+
+        @Override
+        public void apply(int[] argb,
+                          int offset,
+                          int length) {
+            final int size = mOperations.size();
+            final int end = offset + length;
+            for (int block = offset; block < end; block += FUSED_BLOCK_PIXELS) {
+                final int blockLength = Math.min(FUSED_BLOCK_PIXELS, end - block);
+                for (int i = 0; i < size; ++i)
+                    mOperations.get(i).apply(argb, block, blockLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package vandy.mooc.utils;
+
+/**
+ * Interface implemented by operations that transform a whole image,
+ * e.g., because each output pixel depends on its neighbors or
+ * because the size of the image changes.  Operations that transform
+ * each pixel independently should implement PixelOperation instead
+ * so the FilterChain can fuse them.
+ */
+public interface ImageFilter {
+    /**
+     * Transform the image in @a buffer in place.
+     */
+    void apply(PixelBuffer buffer);
+}
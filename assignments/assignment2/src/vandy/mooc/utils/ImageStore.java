@@ -0,0 +1,1031 @@
+package vandy.mooc.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Environment;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+/**
+ * A content-addressed store for downloaded images.  Each image is
+ * kept once under the SHA-1 hash of its content and an index maps
+ * the URLs it was downloaded from to that hash.  Images are placed
+ * into a session directory via hard links (or copies on devices that
+ * don't support them), so downloading the same URL again costs no
+ * network traffic and downloading identical content from different
+ * URLs costs no extra disk space.
+ *
+ * The store is bounded by a byte budget, which also leaves a reserve
+ * of free space on the device.  It keeps an in-memory index of its
+ * images in least-recently-used order, so when it must make room it
+ * evicts the images (and the files placed from them) that were used
+ * longest ago without rescanning any directories.  Images placed
+ * since the process started are pinned, so the files handed to the
+ * client are never evicted, until forget() is told their session
+ * directory has been deleted (or forgetFile() that one of them is
+ * about to be).
+ *
+ * The store's monitor only guards the in-memory index.  Hashing,
+ * moving, linking, copying and deleting files are done without
+ * holding it, so downloads that complete at the same time don't wait
+ * on each other's disk I/O.  Each change is persisted by appending a
+ * record to a journal, which is compacted into a snapshot once it
+ * holds many more records than the index has entries.
+ */
+public class ImageStore {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "ImageStore";
+
+    /**
+     * Name of the directory that holds the store.  It's kept next to
+     * the session directories so hard links work.
+     */
+    private static final String STORE_DIRECTORY = ".image_store";
+
+    /**
+     * Name of the directory within the store that holds the images.
+     */
+    private static final String OBJECTS_DIRECTORY = "objects";
+
+    /**
+     * Name of the file that holds the records of the index as of the
+     * last compaction.
+     */
+    private static final String SNAPSHOT_FILENAME = "store.snapshot";
+
+    /**
+     * Name of the file that holds the records of the changes made
+     * since the last compaction.
+     */
+    private static final String JOURNAL_FILENAME = "store.journal";
+
+    /**
+     * Names of the files that persisted the index before the
+     * journal, which are converted the first time the store loads.
+     */
+    private static final String LEGACY_INDEX_FILENAME = "index.properties";
+    private static final String LEGACY_OBJECTS_FILENAME = "objects.properties";
+
+    /**
+     * Default number of bytes the store may use.
+     */
+    public static final long DEFAULT_BUDGET = 128 * 1024 * 1024;
+
+    /**
+     * Number of bytes the store always leaves free on the device.
+     */
+    private static final long MIN_FREE_SPACE = 32 * 1024 * 1024;
+
+    /**
+     * The journal is compacted once it holds more than this many
+     * records and more than twice as many records as the index has
+     * entries.
+     */
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
+    /**
+     * Separates the fields of an entry and of a record.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Prefixes of linked and copied files in an entry.
+     */
+    private static final String LINKED = "L:";
+    private static final String COPIED = "C:";
+
+    /**
+     * Kinds of records in the snapshot and the journal:
+     *
+     * OBJECT hash entry - the image with hash is described by entry,
+     * REMOVE hash       - the image with hash is no longer stored,
+     * URL url hash      - url was downloaded as the image with hash,
+     * UNMAP url         - url no longer refers to an image.
+     */
+    private static final String OBJECT = "O";
+    private static final String REMOVE = "X";
+    private static final String URL = "U";
+    private static final String UNMAP = "R";
+
+    /**
+     * Size of each file I/O operation.
+     */
+    private static final int BUFLEN = 8 * 1024;
+
+    /**
+     * The one and only store in this process.
+     */
+    private static ImageStore sInstance;
+
+    /**
+     * Directory that holds the images, named by content hash.
+     */
+    private final File mObjectsDirectory;
+
+    /**
+     * File that holds the records as of the last compaction.
+     */
+    private final File mSnapshotFile;
+
+    /**
+     * File that holds the records of the changes made since the last
+     * compaction.
+     */
+    private final File mJournalFile;
+
+    /**
+     * Maps URLs to content hashes.
+     */
+    private final Map<String, String> mIndex = new HashMap<String, String>();
+
+    /**
+     * Maps content hashes to entries in least-recently-used order.
+     */
+    private final LinkedHashMap<String, Entry> mEntries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * The hashes of the evicted images whose files are still being
+     * deleted, which can't be stored again until they're gone.
+     */
+    private final Set<String> mDeleting = new HashSet<String>();
+
+    /**
+     * The records of the changes that haven't been written to the
+     * journal yet, in the order they were made.
+     */
+    private final List<String> mPendingRecords = new ArrayList<String>();
+
+    /**
+     * Serializes writing the journal.  It's always acquired before,
+     * never while holding, the store's monitor.
+     */
+    private final Object mJournalLock = new Object();
+
+    /**
+     * Number of records in the journal, which is guarded by
+     * mJournalLock.
+     */
+    private int mJournalRecords;
+
+    /**
+     * Maximum number of bytes the store may use.
+     */
+    private final long mBudget;
+
+    /**
+     * Number of bytes the store is using, or has reserved for images
+     * that are being moved or copied into it.
+     */
+    private long mTotalBytes;
+
+    /**
+     * Returns the store, creating it the first time it's called.
+     */
+    public static synchronized ImageStore getInstance() {
+        if (sInstance == null)
+            sInstance =
+                new ImageStore(new File(Environment.getExternalStoragePublicDirectory
+                                        (Environment.DIRECTORY_DCIM),
+                                        STORE_DIRECTORY),
+                               DEFAULT_BUDGET);
+        return sInstance;
+    }
+
+    /**
+     * Constructor creates the store in @a storeDirectory and loads
+     * its index.
+     */
+    ImageStore(File storeDirectory,
+               long budget) {
+        mObjectsDirectory = new File(storeDirectory, OBJECTS_DIRECTORY);
+        mSnapshotFile = new File(storeDirectory, SNAPSHOT_FILENAME);
+        mJournalFile = new File(storeDirectory, JOURNAL_FILENAME);
+        mBudget = budget;
+
+        if (!mObjectsDirectory.exists())
+            mObjectsDirectory.mkdirs();
+
+        // Keep the media scanner from listing the store's images
+        // alongside the session directories.
+        try {
+            new File(storeDirectory, ".nomedia").createNewFile();
+        } catch (IOException e) {
+            Log.w(TAG, "unable to create .nomedia: " + e);
+        }
+
+        final Map<String, String> objects = new HashMap<String, String>();
+        final Map<String, String> index = new HashMap<String, String>();
+        final File legacyIndexFile =
+            new File(storeDirectory, LEGACY_INDEX_FILENAME);
+        final File legacyObjectsFile =
+            new File(storeDirectory, LEGACY_OBJECTS_FILENAME);
+        if (!mSnapshotFile.exists()
+            && !mJournalFile.exists()
+            && legacyObjectsFile.exists()) {
+            loadLegacy(legacyObjectsFile, objects);
+            loadLegacy(legacyIndexFile, index);
+            loadEntries(objects, index);
+
+            // Convert the store to a snapshot.
+            synchronized (mJournalLock) {
+                writeSnapshot(snapshot());
+            }
+            legacyObjectsFile.delete();
+            legacyIndexFile.delete();
+        } else {
+            mJournalRecords += replay(mSnapshotFile, objects, index);
+            mJournalRecords += replay(mJournalFile, objects, index);
+            loadEntries(objects, index);
+        }
+    }
+
+    /**
+     * If the image at @a url is in the store, place it at @a
+     * destination and return true, else return false.
+     */
+    public boolean get(String url,
+                       File destination) {
+        final String hash;
+        final Entry entry;
+        synchronized (this) {
+            hash = mIndex.get(url);
+            if (hash == null)
+                return false;
+
+            // Looking the entry up makes it the most recently used.
+            entry = mEntries.get(hash);
+            if (entry == null) {
+                mIndex.remove(url);
+                record(UNMAP, url);
+            } else if (entry.mReady)
+                // Keep the image from being evicted while it's
+                // placed.
+                ++entry.mBusy;
+            else
+                // The image is still being moved into the store.
+                return false;
+        }
+        if (entry == null) {
+            flush();
+            return false;
+        }
+
+        final File object = new File(mObjectsDirectory, hash);
+        if (!object.exists()) {
+            // The image was removed behind our back, but the files
+            // placed from it are still the user's.
+            Log.d(TAG, "dropping missing image " + hash);
+            synchronized (this) {
+                --entry.mBusy;
+                if (mEntries.get(hash) == entry)
+                    forgetEntry(hash, entry);
+            }
+            flush();
+            return false;
+        }
+
+        Log.d(TAG, "found " + url + " in the store");
+        return finishPlacing(hash, entry, place(hash, entry, destination));
+    }
+
+    /**
+     * Add the image in @a downloaded that was downloaded from @a url
+     * to the store and place it at @a destination.  The @a downloaded
+     * file is consumed.
+     *
+     * @return true if the image is at @a destination, else false.
+     */
+    public boolean put(String url,
+                       File downloaded,
+                       File destination) {
+        final String hash;
+        try {
+            hash = contentHash(downloaded);
+        } catch (IOException e) {
+            Log.w(TAG, "unable to hash " + downloaded + ": " + e);
+            return false;
+        }
+
+        final File object = new File(mObjectsDirectory, hash);
+        final long size = downloaded.length();
+        final long usableSpace = mObjectsDirectory.getUsableSpace();
+        Entry entry;
+        List<Victim> victims = null;
+        boolean stored = false;
+        synchronized (this) {
+            entry = mEntries.get(hash);
+            if (entry != null) {
+                if (entry.mReady) {
+                    // Another URL already brought us this content.
+                    ++entry.mBusy;
+                    stored = true;
+                } else
+                    // Another URL is bringing us this content right
+                    // now, so don't wait for it.
+                    entry = null;
+            } else if (!mDeleting.contains(hash)) {
+                // Make room for the image, giving up on storing it if
+                // it can't fit.
+                victims = makeRoom(size, usableSpace);
+                if (victims != null) {
+                    entry = new Entry(size);
+                    entry.mBusy = 1;
+                    mEntries.put(hash, entry);
+                    mTotalBytes += size;
+                }
+            }
+        }
+        delete(victims);
+
+        if (entry == null) {
+            Log.d(TAG, "not storing " + url + " (" + size + " bytes)");
+            return move(downloaded, destination);
+        }
+
+        if (stored) {
+            if (!new File(mObjectsDirectory, hash).exists()
+                || !place(hash, entry, destination)) {
+                // Hand over the download rather than fail.
+                synchronized (this) {
+                    --entry.mBusy;
+                }
+                return move(downloaded, destination);
+            }
+            downloaded.delete();
+        } else if (!move(downloaded, object)) {
+            synchronized (this) {
+                mEntries.remove(hash);
+                mTotalBytes -= size;
+            }
+            return false;
+        }
+
+        synchronized (this) {
+            entry.mReady = true;
+            entry.mLastAccess = System.currentTimeMillis();
+
+            // Remap the url if its content changed since it was
+            // stored.
+            final String previous = mIndex.put(url, hash);
+            if (previous != null && !hash.equals(previous)) {
+                final Entry stale = mEntries.get(previous);
+                if (stale != null)
+                    stale.mUrls.remove(url);
+            }
+            if (!entry.mUrls.contains(url))
+                entry.mUrls.add(url);
+            record(URL, url, hash);
+            record(OBJECT, hash, entry.toString());
+        }
+        flush();
+
+        if (stored)
+            return finishPlacing(hash, entry, true);
+        else
+            return finishPlacing(hash, entry, place(hash, entry, destination));
+    }
+
+    /**
+     * Forget the files placed in @a directory and unpin the images
+     * they were placed from, e.g., once the client has deleted the
+     * session directory.
+     */
+    public void forget(String directory) {
+        forgetPaths(new File(directory).getAbsolutePath() + File.separator,
+                    true);
+    }
+
+    /**
+     * Forget the file at @a path, if it was placed by the store, and
+     * unpin the image it was placed from, e.g., before a cancelled
+     * download's file is deleted.
+     */
+    public void forgetFile(String path) {
+        forgetPaths(new File(path).getAbsolutePath(), false);
+    }
+
+    /**
+     * Forget the placed files whose paths start with @a path if @a
+     * isPrefix is true, else the placed file at @a path.
+     */
+    private void forgetPaths(String path,
+                             boolean isPrefix) {
+        synchronized (this) {
+            for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+                final Entry entry = e.getValue();
+                boolean changed = false;
+                for (Iterator<String> i = entry.mLinks.iterator();
+                     i.hasNext(); )
+                    if (matches(i.next(), path, isPrefix)) {
+                        i.remove();
+                        changed = true;
+                    }
+                for (Iterator<String> i = entry.mCopies.iterator();
+                     i.hasNext(); )
+                    if (matches(i.next(), path, isPrefix)) {
+                        i.remove();
+                        entry.mBytes -= entry.mSize;
+                        mTotalBytes -= entry.mSize;
+                        changed = true;
+                    }
+                for (Iterator<String> i = entry.mPinned.iterator();
+                     i.hasNext(); )
+                    if (matches(i.next(), path, isPrefix))
+                        i.remove();
+                if (changed && entry.mReady)
+                    record(OBJECT, e.getKey(), entry.toString());
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Returns true if @a candidate starts with @a path if @a isPrefix
+     * is true, else if it equals @a path.
+     */
+    private static boolean matches(String candidate,
+                                   String path,
+                                   boolean isPrefix) {
+        return isPrefix ? candidate.startsWith(path) : candidate.equals(path);
+    }
+
+    /**
+     * Returns the number of bytes the store is using.
+     */
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Finish placing the image with @a hash described by @a entry:
+     * it's no longer busy and, if it was @a placed, it's the most
+     * recently used.
+     *
+     * @return @a placed
+     */
+    private boolean finishPlacing(String hash,
+                                  Entry entry,
+                                  boolean placed) {
+        synchronized (this) {
+            --entry.mBusy;
+            if (placed)
+                entry.mLastAccess = System.currentTimeMillis();
+            if (mEntries.get(hash) == entry)
+                record(OBJECT, hash, entry.toString());
+        }
+        flush();
+        return placed;
+    }
+
+    /**
+     * Remove least-recently-used images from the index until @a size
+     * more bytes fit within the budget and the free space reserve,
+     * given there are @a usableSpace bytes free on the device.
+     * Images that are pinned, busy or not ready are never removed.
+     * Must be called while holding the store's monitor.
+     *
+     * @return the images whose files must be deleted (see delete()),
+     *         or null if @a size bytes can't fit, in which case
+     *         nothing is removed.
+     */
+    private List<Victim> makeRoom(long size,
+                                  long usableSpace) {
+        final long budget =
+            Math.min(mBudget,
+                     mTotalBytes + usableSpace - MIN_FREE_SPACE);
+        if (size > budget)
+            return null;
+
+        // The eldest entry is the least recently used one.
+        final List<String> hashes = new ArrayList<String>();
+        long total = mTotalBytes;
+        for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+            if (total + size <= budget)
+                break;
+            final Entry entry = e.getValue();
+            if (entry.isEvictable()) {
+                hashes.add(e.getKey());
+                total -= entry.mBytes;
+            }
+        }
+        if (total + size > budget)
+            return null;
+
+        final List<Victim> victims = new ArrayList<Victim>();
+        for (String hash : hashes) {
+            final Entry entry = mEntries.get(hash);
+            Log.d(TAG, "evicting " + hash + " (" + entry.mBytes + " bytes)");
+            forgetEntry(hash, entry);
+            mDeleting.add(hash);
+            victims.add(new Victim(hash, entry));
+        }
+        return victims;
+    }
+
+    /**
+     * Remove the image with @a hash described by @a entry and the
+     * URLs that refer to it from the index.  Must be called while
+     * holding the store's monitor.
+     */
+    private void forgetEntry(String hash,
+                             Entry entry) {
+        mEntries.remove(hash);
+        mTotalBytes -= entry.mBytes;
+        record(REMOVE, hash);
+
+        for (String url : entry.mUrls)
+            if (hash.equals(mIndex.get(url))) {
+                mIndex.remove(url);
+                record(UNMAP, url);
+            }
+    }
+
+    /**
+     * Delete the files of the @a victims (if any) returned by
+     * makeRoom(), without holding the store's monitor.
+     */
+    private void delete(List<Victim> victims) {
+        if (victims == null)
+            return;
+        for (Victim victim : victims) {
+            new File(mObjectsDirectory, victim.mHash).delete();
+            for (String path : victim.mEntry.mLinks)
+                new File(path).delete();
+            for (String path : victim.mEntry.mCopies)
+                new File(path).delete();
+            synchronized (this) {
+                mDeleting.remove(victim.mHash);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Place the stored image with @a hash at @a destination without
+     * copying its content if possible.  The @a entry must be busy,
+     * so the image isn't evicted meanwhile, and the placed file is
+     * pinned.
+     */
+    private boolean place(String hash,
+                          Entry entry,
+                          File destination) {
+        final File object = new File(mObjectsDirectory, hash);
+        final String path = destination.getAbsolutePath();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+            && link(object, destination)) {
+            synchronized (this) {
+                entry.mLinks.add(path);
+                entry.mPinned.add(path);
+            }
+            return true;
+        }
+
+        // A copy takes up space, so it counts against the budget.
+        final long usableSpace = mObjectsDirectory.getUsableSpace();
+        final List<Victim> victims;
+        synchronized (this) {
+            victims = makeRoom(entry.mSize, usableSpace);
+            if (victims != null) {
+                entry.mBytes += entry.mSize;
+                mTotalBytes += entry.mSize;
+            }
+        }
+        if (victims == null)
+            return false;
+        delete(victims);
+
+        final boolean copied = copy(object, destination);
+        synchronized (this) {
+            if (copied) {
+                entry.mCopies.add(path);
+                entry.mPinned.add(path);
+            } else {
+                entry.mBytes -= entry.mSize;
+                mTotalBytes -= entry.mSize;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Create a hard link to @a object at @a destination.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean link(File object,
+                                File destination) {
+        try {
+            Os.link(object.getAbsolutePath(),
+                    destination.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            Log.d(TAG, "unable to link " + destination + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Move @a source to @a destination, copying it if the files are
+     * on different file systems.
+     */
+    private static boolean move(File source,
+                                File destination) {
+        if (source.renameTo(destination))
+            return true;
+        if (!copy(source, destination))
+            return false;
+        source.delete();
+        return true;
+    }
+
+    /**
+     * Copy @a source to @a destination.
+     */
+    private static boolean copy(File source,
+                                File destination) {
+        try (InputStream is = new FileInputStream(source);
+             OutputStream os = new FileOutputStream(destination)) {
+            final byte[] buffer = new byte[BUFLEN];
+            for (int n; (n = is.read(buffer)) >= 0; )
+                os.write(buffer, 0, n);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "unable to copy " + source + ": " + e);
+            destination.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Rebuild mEntries in least-recently-used order from the encoded
+     * @a objects and mIndex from @a index.
+     */
+    private void loadEntries(Map<String, String> objects,
+                             Map<String, String> index) {
+        final List<String> hashes = new ArrayList<String>();
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        for (Map.Entry<String, String> object : objects.entrySet()) {
+            final Entry entry = Entry.parse(object.getValue());
+            if (entry != null) {
+                hashes.add(object.getKey());
+                entries.put(object.getKey(), entry);
+            }
+        }
+
+        Collections.sort(hashes, new Comparator<String>() {
+                @Override
+                public int compare(String lhs, String rhs) {
+                    final long l = entries.get(lhs).mLastAccess;
+                    final long r = entries.get(rhs).mLastAccess;
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                }
+            });
+
+        for (String hash : hashes) {
+            final Entry entry = entries.get(hash);
+            mEntries.put(hash, entry);
+            mTotalBytes += entry.mBytes;
+        }
+
+        // Let each entry know which URLs refer to it, dropping URLs
+        // that refer to images that are no longer in the store.
+        for (Map.Entry<String, String> url : index.entrySet()) {
+            final Entry entry = entries.get(url.getValue());
+            if (entry != null) {
+                entry.mUrls.add(url.getKey());
+                mIndex.put(url.getKey(), url.getValue());
+            }
+        }
+    }
+
+    /**
+     * Apply the records in @a file (if it exists) to the encoded @a
+     * objects and the @a index.  A record that can't be parsed, e.g.,
+     * because the process died while appending it, is skipped.
+     *
+     * @return the number of records in @a file.
+     */
+    private static int replay(File file,
+                              Map<String, String> objects,
+                              Map<String, String> index) {
+        if (!file.exists())
+            return 0;
+
+        int count = 0;
+        try (BufferedReader reader =
+             new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                                                      "UTF-8"))) {
+            for (String line; (line = reader.readLine()) != null; ++count) {
+                final String[] fields = line.split(SEPARATOR, 3);
+                if (OBJECT.equals(fields[0]) && fields.length == 3)
+                    objects.put(fields[1], fields[2]);
+                else if (REMOVE.equals(fields[0]) && fields.length == 2)
+                    objects.remove(fields[1]);
+                else if (URL.equals(fields[0]) && fields.length == 3)
+                    index.put(fields[1], fields[2]);
+                else if (UNMAP.equals(fields[0]) && fields.length == 2)
+                    index.remove(fields[1]);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "ignoring the rest of unreadable " + file + ": " + e);
+        }
+        return count;
+    }
+
+    /**
+     * Load the properties in the legacy @a file into @a map.
+     */
+    private static void loadLegacy(File file,
+                                   Map<String, String> map) {
+        if (!file.exists())
+            return;
+        final Properties properties = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            properties.load(is);
+        } catch (IOException e) {
+            Log.w(TAG, "ignoring unreadable " + file + ": " + e);
+        }
+        for (String key : properties.stringPropertyNames())
+            map.put(key, properties.getProperty(key));
+    }
+
+    /**
+     * Queue a record made of @a fields to be appended to the journal
+     * by flush().  Must be called while holding the store's monitor,
+     * so the records are queued in the order the changes are made.
+     */
+    private void record(String... fields) {
+        final StringBuilder record = new StringBuilder(fields[0]);
+        for (int i = 1; i < fields.length; ++i)
+            record.append(SEPARATOR).append(fields[i]);
+        mPendingRecords.add(record.toString());
+    }
+
+    /**
+     * Returns the records that describe the whole index.  Must be
+     * called while holding the store's monitor.
+     */
+    private List<String> snapshot() {
+        final List<String> records =
+            new ArrayList<String>(mEntries.size() + mIndex.size());
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet())
+            if (entry.getValue().mReady)
+                records.add(OBJECT + SEPARATOR + entry.getKey()
+                            + SEPARATOR + entry.getValue());
+        for (Map.Entry<String, String> url : mIndex.entrySet())
+            records.add(URL + SEPARATOR + url.getKey()
+                        + SEPARATOR + url.getValue());
+        return records;
+    }
+
+    /**
+     * Append the queued records to the journal, or compact the
+     * journal into a new snapshot if it's grown too long.  Must not
+     * be called while holding the store's monitor.
+     */
+    private void flush() {
+        synchronized (mJournalLock) {
+            final List<String> records;
+            List<String> snapshot = null;
+            synchronized (this) {
+                if (mPendingRecords.isEmpty())
+                    return;
+                records = new ArrayList<String>(mPendingRecords);
+                mPendingRecords.clear();
+
+                final int journalRecords = mJournalRecords + records.size();
+                if (journalRecords > MIN_COMPACTION_RECORDS
+                    && journalRecords > 2 * (mEntries.size() + mIndex.size()))
+                    // The snapshot already reflects the records.
+                    snapshot = snapshot();
+            }
+
+            if (snapshot != null)
+                writeSnapshot(snapshot);
+            else if (write(mJournalFile, records, true))
+                mJournalRecords += records.size();
+        }
+    }
+
+    /**
+     * Atomically replace the snapshot with the @a records and empty
+     * the journal.  Must be called while holding mJournalLock.
+     */
+    private void writeSnapshot(List<String> records) {
+        final File tmp = new File(mSnapshotFile.getPath() + ".tmp");
+        if (!write(tmp, records, false))
+            return;
+        if (!tmp.renameTo(mSnapshotFile)) {
+            Log.w(TAG, "unable to replace " + mSnapshotFile);
+            return;
+        }
+
+        // Replaying the old journal over the new snapshot would be
+        // harmless, so it's fine if the process dies before this.
+        mJournalFile.delete();
+        mJournalRecords = 0;
+    }
+
+    /**
+     * Write the @a records to @a file, one per line, appending them
+     * if @a append is true.
+     *
+     * @return true if the records were written, else false.
+     */
+    private static boolean write(File file,
+                                 List<String> records,
+                                 boolean append) {
+        try (Writer writer =
+             new OutputStreamWriter(new FileOutputStream(file, append),
+                                    "UTF-8")) {
+            final StringBuilder lines = new StringBuilder();
+            for (String record : records)
+                lines.append(record).append('\n');
+            writer.write(lines.toString());
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "unable to write " + file + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the hex-encoded SHA-1 hash of the content of @a file.
+     */
+    static String contentHash(File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available.
+            throw new AssertionError(e);
+        }
+
+        try (InputStream is = new FileInputStream(file)) {
+            final byte[] buffer = new byte[BUFLEN];
+            for (int n; (n = is.read(buffer)) >= 0; )
+                digest.update(buffer, 0, n);
+        }
+
+        final StringBuilder hash = new StringBuilder(40);
+        for (byte b : digest.digest())
+            hash.append(Character.forDigit((b >> 4) & 0xf, 16))
+                .append(Character.forDigit(b & 0xf, 16));
+        return hash.toString();
+    }
+
+    /**
+     * An image removed from the index by makeRoom() whose files have
+     * yet to be deleted.
+     */
+    private static class Victim {
+        final String mHash;
+        final Entry mEntry;
+
+        Victim(String hash,
+               Entry entry) {
+            mHash = hash;
+            mEntry = entry;
+        }
+    }
+
+    /**
+     * Describes one image in the store.
+     */
+    private static class Entry {
+        /**
+         * Size of the image.
+         */
+        final long mSize;
+
+        /**
+         * Number of bytes used by the image and its copies.
+         */
+        long mBytes;
+
+        /**
+         * Time the image was last used.
+         */
+        long mLastAccess;
+
+        /**
+         * Files hard linked to the image.
+         */
+        final List<String> mLinks = new ArrayList<String>();
+
+        /**
+         * Files copied from the image.
+         */
+        final List<String> mCopies = new ArrayList<String>();
+
+        /**
+         * URLs the image was downloaded from.  These are kept in URL
+         * records, not the entry's OBJECT record.
+         */
+        final List<String> mUrls = new ArrayList<String>();
+
+        /**
+         * The files placed from the image since the process started
+         * that haven't been forgotten, which pin the image.  These
+         * aren't persisted.
+         */
+        final List<String> mPinned = new ArrayList<String>();
+
+        /**
+         * Number of Threads placing the image, which also pin it.
+         */
+        int mBusy;
+
+        /**
+         * True once the image is in the objects directory, which is
+         * always the case for entries that were loaded.
+         */
+        boolean mReady = true;
+
+        Entry(long size) {
+            mSize = size;
+            mBytes = size;
+            mReady = false;
+        }
+
+        /**
+         * Returns true if the image may be evicted.
+         */
+        boolean isEvictable() {
+            return mReady && mBusy == 0 && mPinned.isEmpty();
+        }
+
+        /**
+         * Returns the entry encoded by toString(), or null if @a
+         * value can't be parsed.
+         */
+        static Entry parse(String value) {
+            final String[] fields = value.split(SEPARATOR);
+            if (fields.length < 2)
+                return null;
+            try {
+                final Entry entry = new Entry(Long.parseLong(fields[0]));
+                entry.mReady = true;
+                entry.mLastAccess = Long.parseLong(fields[1]);
+                for (int i = 2; i < fields.length; ++i) {
+                    final String path = fields[i].substring(LINKED.length());
+
+                    // Forget files that were deleted by the user.
+                    if (!new File(path).exists())
+                        continue;
+                    if (fields[i].startsWith(LINKED))
+                        entry.mLinks.add(path);
+                    else if (fields[i].startsWith(COPIED)) {
+                        entry.mCopies.add(path);
+                        entry.mBytes += entry.mSize;
+                    }
+                }
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Encode the entry as "size lastAccess L:link... C:copy..."
+         * separated by SEPARATOR.
+         */
+        @Override
+        public String toString() {
+            final StringBuilder value = new StringBuilder();
+            value.append(mSize).append(SEPARATOR).append(mLastAccess);
+            for (String path : mLinks)
+                value.append(SEPARATOR).append(LINKED).append(path);
+            for (String path : mCopies)
+                value.append(SEPARATOR).append(COPIED).append(path);
+            return value.toString();
+        }
+    }
+}
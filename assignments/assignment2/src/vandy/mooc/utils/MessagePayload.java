@@ -0,0 +1,117 @@
+package vandy.mooc.utils;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * The flat, typed payload carried by RequestMessages and
+ * ReplyMessages, whose small fields (the kind of message, result
+ * code, and request code) travel in Message.what, arg1, and arg2
+ * instead.  It's written to and read from the Parcel field by
+ * field in a fixed order, so a message costs one Bundle entry rather
+ * than one string-keyed entry (and the Uri parsing and formatting
+ * that came with it) per field.  Requests and replies refer to each
+ * image by an int request ID that the client chooses, so replies
+ * don't have to echo the URLs back.
+ *
+ * The same fields serve every kind of message:
+ *
+ *  - Requests hold the request IDs, the matching URLs (in mStrings),
+ *    and the directory to store the images in.
+ *  - Replies hold the request IDs and the matching pathnames of the
+ *    downloaded images (in mStrings), which are null for images that
+ *    failed to download.
+ *  - Progress replies hold one request ID and the bytes downloaded
+ *    and total bytes of that image.
+ */
+public class MessagePayload implements Parcelable {
+    /**
+     * The request IDs of the images.
+     */
+    final int[] mRequestIds;
+
+    /**
+     * The URLs (in a request) or pathnames (in a reply) of the
+     * images, in the same order as mRequestIds.
+     */
+    final String[] mStrings;
+
+    /**
+     * The directory to store the images in (requests only).
+     */
+    final String mDirectoryPathname;
+
+    /**
+     * The number of bytes downloaded thus far (progress only).
+     */
+    final long mBytesDownloaded;
+
+    /**
+     * The total number of bytes, or -1 if unknown (progress only).
+     */
+    final long mTotalBytes;
+
+    /**
+     * Constructor initializes all the fields.
+     */
+    MessagePayload(int[] requestIds,
+                   String[] strings,
+                   String directoryPathname,
+                   long bytesDownloaded,
+                   long totalBytes) {
+        mRequestIds = requestIds;
+        mStrings = strings;
+        mDirectoryPathname = directoryPathname;
+        mBytesDownloaded = bytesDownloaded;
+        mTotalBytes = totalBytes;
+    }
+
+    /**
+     * Constructor reads the fields from @a in in the order
+     * writeToParcel() wrote them.
+     */
+    private MessagePayload(Parcel in) {
+        mRequestIds = in.createIntArray();
+        mStrings = in.createStringArray();
+        mDirectoryPathname = in.readString();
+        mBytesDownloaded = in.readLong();
+        mTotalBytes = in.readLong();
+    }
+
+    /**
+     * Write the fields to @a out.
+     */
+    @Override
+    public void writeToParcel(Parcel out,
+                              int flags) {
+        out.writeIntArray(mRequestIds);
+        out.writeStringArray(mStrings);
+        out.writeString(mDirectoryPathname);
+        out.writeLong(mBytesDownloaded);
+        out.writeLong(mTotalBytes);
+    }
+
+    /**
+     * The payload doesn't contain any file descriptors.
+     */
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Creates MessagePayloads from Parcels.
+     */
+    public static final Parcelable.Creator<MessagePayload> CREATOR =
+        new Parcelable.Creator<MessagePayload>() {
+            @Override
+            public MessagePayload createFromParcel(Parcel in) {
+                return new MessagePayload(in);
+            }
+
+            @Override
+            public MessagePayload[] newArray(int size) {
+                return new MessagePayload[size];
+            }
+        };
+}
@@ -0,0 +1,133 @@
+package vandy.mooc.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This helper class applies a PixelOperation to an image by splitting
+ * it into bands of rows that are processed concurrently by a pool
+ * with one thread per core, so filtering an image takes roughly
+ * 1/Ncores of the time it takes on one thread.  The pool is shared by
+ * all the images being filtered, which keeps the number of threads
+ * bounded no matter how many downloads run at once.  It doesn't
+ * depend on any Android classes, so it can be exercised on a plain
+ * JVM.
+ */
+public class ParallelPixelProcessor {
+    /**
+     * Number of cores, which is also the number of threads in the
+     * pool.
+     */
+    private static final int NUMBER_OF_CORES =
+        Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of bands per core, which balances the load when some
+     * bands take longer than others.
+     */
+    private static final int BANDS_PER_CORE = 4;
+
+    /**
+     * Images smaller than this are processed in the calling thread
+     * since handing them off costs more than it saves.
+     */
+    private static final int MIN_PARALLEL_PIXELS = 64 * 1024;
+
+    /**
+     * Pool of threads that process the bands.
+     */
+    private static final ExecutorService sExecutor =
+        Executors.newFixedThreadPool(NUMBER_OF_CORES,
+                                     new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread =
+                    new Thread(runnable,
+                               "PixelProcessor-" + mCount.incrementAndGet());
+                // Don't keep the process alive just for the pool.
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /**
+     * Apply the @a operation to the @a width x @a height pixels of @a
+     * argb.  If the calling thread is interrupted, bands that haven't
+     * started are skipped and false is returned.  Like
+     * Thread.interrupted(), this clears the interrupt status.
+     *
+     * @return true if all the pixels were processed, else false.
+     */
+    public static boolean apply(final int[] argb,
+                                final int width,
+                                final int height,
+                                final PixelOperation operation) {
+        if (width * height < MIN_PARALLEL_PIXELS || NUMBER_OF_CORES == 1) {
+            if (Thread.interrupted())
+                return false;
+            operation.apply(argb, 0, width * height);
+            return true;
+        }
+
+        final int bands = Math.min(height, NUMBER_OF_CORES * BANDS_PER_CORE);
+        final int bandHeight = (height + bands - 1) / bands;
+
+        // Set when the caller is interrupted so bands that haven't
+        // started yet are skipped.
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>(bands);
+        for (int y = 0; y < height; y += bandHeight) {
+            final int offset = y * width;
+            final int length = Math.min(bandHeight, height - y) * width;
+            futures.add(sExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        if (!cancelled.get())
+                            operation.apply(argb, offset, length);
+                        return null;
+                    }
+                }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                // Check for cancellation between bands.
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                future.get();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            for (Future<?> future : futures)
+                future.cancel(false);
+            return false;
+        } catch (ExecutionException e) {
+            cancelled.set(true);
+            // Propagate unchecked exceptions thrown by the operation.
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private ParallelPixelProcessor() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,69 @@
+package vandy.mooc.utils;
+
+/**
+ * A mutable image held as packed ARGB ints in row-major order.  The
+ * array may be larger than width x height, e.g., after an image has
+ * been shrunk in place, so filters must only look at the first
+ * width x height pixels.
+ */
+public class PixelBuffer {
+    /**
+     * The pixels of the image.
+     */
+    private int[] mPixels;
+
+    /**
+     * Width of the image in pixels.
+     */
+    private int mWidth;
+
+    /**
+     * Height of the image in pixels.
+     */
+    private int mHeight;
+
+    /**
+     * Constructor initializes the fields.
+     */
+    public PixelBuffer(int[] pixels,
+                       int width,
+                       int height) {
+        set(pixels, width, height);
+    }
+
+    /**
+     * Accessor method that returns the pixels of the image.
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    /**
+     * Accessor method that returns the width of the image.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Accessor method that returns the height of the image.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Replace the image with the @a width x @a height pixels in @a
+     * pixels.
+     */
+    public void set(int[] pixels,
+                    int width,
+                    int height) {
+        if (pixels.length < width * height)
+            throw new IllegalArgumentException("too few pixels for "
+                                               + width + "x" + height);
+        mPixels = pixels;
+        mWidth = width;
+        mHeight = height;
+    }
+}
@@ -0,0 +1,246 @@
+package vandy.mooc.utils;
+
+/**
+ * This helper class encapsulates static methods that filter pixels
+ * stored as packed ARGB ints, i.e., the format returned by
+ * Bitmap.getPixels().  Working on bulk arrays avoids a JNI call per
+ * pixel, and since it doesn't depend on any Android classes it can be
+ * exercised on a plain JVM.
+ */
+public class PixelFilters {
+    /**
+     * Luma coefficients (0.299, 0.587, and 0.114, obtained from
+     * en.wikipedia.org/wiki/Grayscale) in 16.16 fixed point.  They
+     * add up to exactly 1 << 16, so white stays white.
+     */
+    static final int LUMA_RED = 19595;
+    static final int LUMA_GREEN = 38470;
+    static final int LUMA_BLUE = 7471;
+
+    /**
+     * Convert @a length pixels of @a argb starting at @a offset to
+     * grayscale in place.  If @a hasAlpha is true then fully
+     * transparent pixels are left alone.  Converted pixels are fully
+     * opaque.
+     */
+    public static void grayScale(int[] argb,
+                                 int offset,
+                                 int length,
+                                 boolean hasAlpha) {
+        final int end = offset + length;
+        for (int i = offset; i < end; ++i) {
+            final int pixel = argb[i];
+
+            // Skip pixels that are transparent in the original.
+            if (hasAlpha && (pixel >>> 24) == 0)
+                continue;
+
+            argb[i] = grayScale(pixel);
+        }
+    }
+
+    /**
+     * Returns the opaque grayscale equivalent of the @a pixel.
+     */
+    public static int grayScale(int pixel) {
+        final int gray =
+            (((pixel >> 16) & 0xff) * LUMA_RED
+             + ((pixel >> 8) & 0xff) * LUMA_GREEN
+             + (pixel & 0xff) * LUMA_BLUE) >>> 16;
+        return 0xff000000 | (gray << 16) | (gray << 8) | gray;
+    }
+
+    /**
+     * Resize the image in @a buffer to @a width x @a height.  Shrinking
+     * averages the pixels each output pixel covers and is done in
+     * place, since each output pixel is written at or before the
+     * first input pixel it reads.  Anything else samples the nearest
+     * input pixel into a new array.
+     */
+    public static void resize(PixelBuffer buffer,
+                              int width,
+                              int height) {
+        final int[] src = buffer.getPixels();
+        final int srcWidth = buffer.getWidth();
+        final int srcHeight = buffer.getHeight();
+
+        if (width == srcWidth && height == srcHeight)
+            return;
+
+        if (width > srcWidth || height > srcHeight) {
+            final int[] dst = new int[width * height];
+            for (int y = 0; y < height; ++y) {
+                final int row = (int) ((long) y * srcHeight / height) * srcWidth;
+                for (int x = 0; x < width; ++x)
+                    dst[y * width + x] =
+                        src[row + (int) ((long) x * srcWidth / width)];
+            }
+            buffer.set(dst, width, height);
+            return;
+        }
+
+        for (int y = 0; y < height; ++y) {
+            final int y0 = (int) ((long) y * srcHeight / height);
+            final int y1 = Math.max(y0 + 1,
+                                    (int) ((long) (y + 1) * srcHeight / height));
+            for (int x = 0; x < width; ++x) {
+                final int x0 = (int) ((long) x * srcWidth / width);
+                final int x1 = Math.max(x0 + 1,
+                                        (int) ((long) (x + 1) * srcWidth / width));
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int sy = y0; sy < y1; ++sy)
+                    for (int sx = x0, i = sy * srcWidth + x0; sx < x1; ++sx, ++i) {
+                        final int pixel = src[i];
+                        a += pixel >>> 24;
+                        r += (pixel >> 16) & 0xff;
+                        g += (pixel >> 8) & 0xff;
+                        b += pixel & 0xff;
+                    }
+                final int n = (y1 - y0) * (x1 - x0);
+                src[y * width + x] =
+                    (a / n) << 24 | (r / n) << 16 | (g / n) << 8 | (b / n);
+            }
+        }
+        buffer.set(src, width, height);
+    }
+
+    /**
+     * Blur the image in @a buffer in place with a box filter that
+     * averages each pixel with the pixels up to @a radius away.  The
+     * filter is applied horizontally and then vertically, so it only
+     * needs scratch space for one row or column.
+     */
+    public static void blur(PixelBuffer buffer,
+                            int radius) {
+        final int[] pixels = buffer.getPixels();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        if (radius < 1)
+            return;
+
+        final int[] scratch = new int[Math.max(width, height)];
+        for (int y = 0; y < height; ++y)
+            boxBlur(pixels, y * width, 1, width, radius, scratch);
+        for (int x = 0; x < width; ++x)
+            boxBlur(pixels, x, width, height, radius, scratch);
+    }
+
+    /**
+     * Blur the @a length pixels of @a pixels that start at @a offset
+     * and are @a stride apart with a box filter of the given @a
+     * radius, using @a scratch to hold the original pixels.
+     */
+    private static void boxBlur(int[] pixels,
+                                int offset,
+                                int stride,
+                                int length,
+                                int radius,
+                                int[] scratch) {
+        for (int i = 0; i < length; ++i)
+            scratch[i] = pixels[offset + i * stride];
+
+        // Keep running sums of each channel over the window, treating
+        // pixels beyond the edges as copies of the edge pixels.
+        final int window = 2 * radius + 1;
+        int a = 0, r = 0, g = 0, b = 0;
+        for (int i = -radius; i <= radius; ++i) {
+            final int pixel = scratch[clamp(i, length)];
+            a += pixel >>> 24;
+            r += (pixel >> 16) & 0xff;
+            g += (pixel >> 8) & 0xff;
+            b += pixel & 0xff;
+        }
+
+        for (int i = 0; i < length; ++i) {
+            pixels[offset + i * stride] =
+                (a / window) << 24
+                | (r / window) << 16
+                | (g / window) << 8
+                | (b / window);
+
+            // Slide the window one pixel along.
+            final int out = scratch[clamp(i - radius, length)];
+            final int in = scratch[clamp(i + radius + 1, length)];
+            a += (in >>> 24) - (out >>> 24);
+            r += ((in >> 16) & 0xff) - ((out >> 16) & 0xff);
+            g += ((in >> 8) & 0xff) - ((out >> 8) & 0xff);
+            b += (in & 0xff) - (out & 0xff);
+        }
+    }
+
+    /**
+     * Sharpen the image in @a buffer in place by subtracting each
+     * pixel's four neighbors from five times the pixel.  Only the
+     * original values of the previous and current rows need to be
+     * kept, since the next row hasn't been written yet.
+     */
+    public static void sharpen(PixelBuffer buffer) {
+        final int[] pixels = buffer.getPixels();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+
+        int[] previous = new int[width];
+        int[] current = new int[width];
+        System.arraycopy(pixels, 0, previous, 0, width);
+
+        for (int y = 0; y < height; ++y) {
+            final int row = y * width;
+            System.arraycopy(pixels, row, current, 0, width);
+            final int next = y + 1 < height ? row + width : row;
+
+            for (int x = 0; x < width; ++x) {
+                final int center = current[x];
+                final int left = current[x > 0 ? x - 1 : x];
+                final int right = current[x + 1 < width ? x + 1 : x];
+                final int up = previous[x];
+                // The next row still holds its original values (or
+                // is the current row at the bottom edge).
+                final int down = next == row ? center : pixels[next + x];
+
+                pixels[row + x] =
+                    (center & 0xff000000)
+                    | sharpen(center, left, right, up, down, 16) << 16
+                    | sharpen(center, left, right, up, down, 8) << 8
+                    | sharpen(center, left, right, up, down, 0);
+            }
+
+            // The current row becomes the previous row.
+            final int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+    }
+
+    /**
+     * Returns the sharpened value of the channel at @a shift.
+     */
+    private static int sharpen(int center,
+                               int left,
+                               int right,
+                               int up,
+                               int down,
+                               int shift) {
+        final int value =
+            5 * ((center >> shift) & 0xff)
+            - ((left >> shift) & 0xff)
+            - ((right >> shift) & 0xff)
+            - ((up >> shift) & 0xff)
+            - ((down >> shift) & 0xff);
+        return value < 0 ? 0 : (value > 0xff ? 0xff : value);
+    }
+
+    /**
+     * Returns @a i clamped to [0, @a length).
+     */
+    private static int clamp(int i,
+                             int length) {
+        return i < 0 ? 0 : (i >= length ? length - 1 : i);
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private PixelFilters() {
+        throw new AssertionError();
+    }
+}
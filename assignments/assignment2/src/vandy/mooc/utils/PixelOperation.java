@@ -0,0 +1,16 @@
+package vandy.mooc.utils;
+
+/**
+ * Interface implemented by operations that transform each pixel of
+ * an image independently of the others, so any run of pixels can be
+ * processed on its own (e.g., in parallel with other runs).
+ */
+public interface PixelOperation {
+    /**
+     * Transform @a length pixels of @a argb, which are packed ARGB
+     * ints, starting at @a offset in place.
+     */
+    void apply(int[] argb,
+               int offset,
+               int length);
+}
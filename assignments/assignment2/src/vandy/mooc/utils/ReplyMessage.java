@@ -1,8 +1,9 @@
 package vandy.mooc.utils;
 
+import java.util.List;
+
 import android.app.Activity;
 import android.net.Uri;
-import android.os.Bundle;
 import android.os.Message;
 
 /**
@@ -31,39 +32,108 @@ public class ReplyMessage extends RequestReplyMessageBase {
      * Activity with the pathname of the downloaded image.
      */
     public static ReplyMessage makeReplyMessage(Uri pathToImageFile,
-                                                Uri url,
+                                                int requestId,
                                                 int requestCode) {
         // Create a ReplyMessage that holds a reference to a Message
         // created via the Message.obtain() factory method.
         ReplyMessage replyMessage =
             new ReplyMessage(Message.obtain());
+        replyMessage.getMessage().what = REPLY_RESULT;
+
+        // Put the requestCode into the Message.
+        replyMessage.setRequestCode(requestCode);
 
-        // Create a new Bundle to handle the result.
-        // TODO -- you fill in here.
-        Bundle resultBundle = new Bundle();
-        // Set the Bundle to be the data in the message.
-        // TODO -- you fill in here.
-       replyMessage.setData(resultBundle);
-        // Put the URL to the image file into the Bundle
-        // TODO -- you fill in here.
-        resultBundle.putString(IMAGE_URL, url.toString());
-        // Put the requestCode into the Bundle
-        // TODO -- you fill in here.
-        resultBundle.putInt(REQUEST_CODE, requestCode);
         // Set the result code to indicate whether the download
         // succeeded or failed.
-        // TODO -- you fill in here.
         if ( pathToImageFile == null){
             replyMessage.setResultCode( Activity.RESULT_CANCELED);
         }else{
             replyMessage.setResultCode(Activity.RESULT_OK);
         }
-        // Put the path to the image file into the Bundle
-        // only if the download succeeded.
-        // TODO -- you fill in here.
-        if ( replyMessage.getResultCode()==Activity.RESULT_OK) {
-            resultBundle.putString(IMAGE_PATHNAME, pathToImageFile.toString());
-        }
+
+        // Put the request ID and the path to the image file (which
+        // is null if the download failed) into the payload.
+        replyMessage.setPayload
+            (new MessagePayload(new int[] { requestId },
+                                new String[] { toPathname(pathToImageFile) },
+                                null,
+                                0,
+                                -1));
+        return replyMessage;
+    }
+
+    /**
+     * A factory method that creates a reply message to tell the
+     * Activity how much of the image with @a requestId has been
+     * downloaded.
+     */
+    public static ReplyMessage makeProgressMessage(int requestId,
+                                                   int requestCode,
+                                                   long bytesDownloaded,
+                                                   long totalBytes) {
+        ReplyMessage replyMessage =
+            new ReplyMessage(Message.obtain());
+        replyMessage.getMessage().what = REPLY_PROGRESS;
+        replyMessage.setRequestCode(requestCode);
+        replyMessage.setPayload
+            (new MessagePayload(new int[] { requestId },
+                                null,
+                                null,
+                                bytesDownloaded,
+                                totalBytes));
+        return replyMessage;
+    }
+
+    /**
+     * A factory method that creates a reply message to return the
+     * results of several downloads to the Activity at once.  The
+     * entries of @a pathsToImageFiles are null for images that
+     * failed to download.
+     */
+    public static ReplyMessage makeBatchReplyMessage(List<Uri> pathsToImageFiles,
+                                                     int[] requestIds,
+                                                     int requestCode) {
+        ReplyMessage replyMessage =
+            new ReplyMessage(Message.obtain());
+        replyMessage.getMessage().what = REPLY_BATCH;
+        replyMessage.setRequestCode(requestCode);
+
+        String[] pathnames = new String[pathsToImageFiles.size()];
+        for (int i = 0; i < pathnames.length; ++i)
+            pathnames[i] = toPathname(pathsToImageFiles.get(i));
+
+        replyMessage.setPayload
+            (new MessagePayload(requestIds,
+                                pathnames,
+                                null,
+                                0,
+                                -1));
         return replyMessage;
     }
+
+    /**
+     * Helper method that returns the path to the image file at @a
+     * index, or null if it failed to download.
+     */
+    public String getImagePathname(int index) {
+        return getPayload().mStrings[index];
+    }
+
+    /**
+     * Returns the result code of the image at @a index.
+     */
+    public int getResultCode(int index) {
+        if (!isBatch())
+            return getResultCode();
+        return getImagePathname(index) == null
+            ? Activity.RESULT_CANCELED
+            : Activity.RESULT_OK;
+    }
+
+    /**
+     * Returns the pathname of @a pathToImageFile, or null.
+     */
+    private static String toPathname(Uri pathToImageFile) {
+        return pathToImageFile == null ? null : pathToImageFile.toString();
+    }
 }
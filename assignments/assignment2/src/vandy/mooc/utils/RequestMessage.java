@@ -1,12 +1,11 @@
 package vandy.mooc.utils;
 
+import java.util.List;
+
 import android.net.Uri;
-import android.os.Bundle;
 import android.os.Message;
 import android.os.Messenger;
 
-import java.sql.ResultSet;
-
 /**
  * A thin facade around an Android Message that defines the schema of
  * a request from the Activity to the Service.
@@ -33,6 +32,7 @@ public class RequestMessage extends RequestReplyMessageBase {
      * Activity with information necessary to download an image.
      */
     public static RequestMessage makeRequestMessage(int requestCode, 
+                                                    int requestId,
                                                     Uri url,
                                                     String directoryPathname,
                                                     Messenger replyMessenger) {
@@ -42,24 +42,100 @@ public class RequestMessage extends RequestReplyMessageBase {
             new RequestMessage(Message.obtain());
 
         // Store replyMessenger into the Message's replyTo field.
-        // TODO -- you fill in here.
+        requestMessage.getMessage().what = REQUEST_DOWNLOAD;
         requestMessage.getMessage().replyTo = replyMessenger;
-        // Create a new Bundle to handle the result.
-        // TODO -- you fill in here.
-        Bundle resultBundle = new Bundle();
-        // Set the Bundle as the "data" for the Message.
-        // TODO -- you fill in here.
-        requestMessage.setData(resultBundle);
-        // Put the URL to the image file into the Bundle
-        // TODO -- you fill in here.
-        resultBundle.putString(IMAGE_URL, url.toString());
-        // Put the pathname to the directory into the Bundle
-        // TODO -- you fill in here.
-        resultBundle.putString(DIRECTORY_PATHNAME,directoryPathname);
-        // Put the request code into the Bundle
-        // TODO -- you fill in here.
-        resultBundle.putInt(REQUEST_CODE,requestCode);
+
+        // Put the request code into the Message.
+        requestMessage.setRequestCode(requestCode);
+
+        // Put the request ID, URL, and directory into the payload.
+        requestMessage.setPayload
+            (new MessagePayload(new int[] { requestId },
+                                new String[] { url.toString() },
+                                directoryPathname,
+                                0,
+                                -1));
+
         // Return the message to the caller.
         return requestMessage;
     }
+
+    /**
+     * Factory method creates a RequestMessage that asks the Service
+     * to download all the images at @a urls, which are identified by
+     * the matching @a requestIds, in one Message.
+     */
+    public static RequestMessage makeBatchRequestMessage(int requestCode,
+                                                         int[] requestIds,
+                                                         List<Uri> urls,
+                                                         String directoryPathname,
+                                                         Messenger replyMessenger) {
+        RequestMessage requestMessage =
+            new RequestMessage(Message.obtain());
+        requestMessage.getMessage().what = REQUEST_BATCH_DOWNLOAD;
+        requestMessage.getMessage().replyTo = replyMessenger;
+        requestMessage.setRequestCode(requestCode);
+
+        String[] urlStrings = new String[urls.size()];
+        for (int i = 0; i < urlStrings.length; ++i)
+            urlStrings[i] = urls.get(i).toString();
+
+        requestMessage.setPayload
+            (new MessagePayload(requestIds,
+                                urlStrings,
+                                directoryPathname,
+                                0,
+                                -1));
+        return requestMessage;
+    }
+
+    /**
+     * Factory method creates a RequestMessage that asks the Service
+     * to cancel the downloads with @a requestIds that were requested
+     * via @a replyMessenger, or all of them if @a requestIds is
+     * empty.  Downloads that haven't started never start, those that
+     * are running are interrupted, and their partial files are
+     * deleted.  No replies are sent for cancelled downloads.
+     */
+    public static RequestMessage makeCancelMessage(int[] requestIds,
+                                                   Messenger replyMessenger) {
+        RequestMessage requestMessage =
+            new RequestMessage(Message.obtain());
+        requestMessage.getMessage().what = REQUEST_CANCEL;
+        requestMessage.getMessage().replyTo = replyMessenger;
+        requestMessage.setPayload
+            (new MessagePayload(requestIds != null ? requestIds : new int[0],
+                                null,
+                                null,
+                                0,
+                                -1));
+        return requestMessage;
+    }
+
+    /**
+     * Factory method creates a RequestMessage that tells the Service
+     * the images downloaded into @a directoryPathname were deleted,
+     * so its ImageStore no longer needs to keep them.
+     */
+    public static RequestMessage makeForgetMessage(String directoryPathname,
+                                                   Messenger replyMessenger) {
+        RequestMessage requestMessage =
+            new RequestMessage(Message.obtain());
+        requestMessage.getMessage().what = REQUEST_FORGET;
+        requestMessage.getMessage().replyTo = replyMessenger;
+        requestMessage.setPayload
+            (new MessagePayload(new int[0],
+                                null,
+                                directoryPathname,
+                                0,
+                                -1));
+        return requestMessage;
+    }
+
+    /**
+     * Helper method that returns the URL of the image at @a index.
+     */
+    public Uri getImageURL(int index) {
+        return Uri.parse(getPayload().mStrings[index]);
+    }
 }
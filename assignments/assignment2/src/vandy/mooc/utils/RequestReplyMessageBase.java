@@ -1,43 +1,81 @@
 package vandy.mooc.utils;
 
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Message;
 import android.os.Messenger;
 
 /**
- * Super class that defines common keys and methods used by the
- * RequestMessage and ReplyMessage subclasses.
+ * Super class that defines the encoding and common accessor methods
+ * used by the RequestMessage and ReplyMessage subclasses.  Each
+ * message is encoded as follows:
+ *
+ *  - Message.what holds the kind of message (e.g., REQUEST_DOWNLOAD
+ *    or REPLY_PROGRESS).
+ *  - Message.arg1 holds the result code of a reply.
+ *  - Message.arg2 holds the request code.
+ *  - The data Bundle holds a single MessagePayload under PAYLOAD,
+ *    which holds the request IDs and the strings and numbers that
+ *    don't fit in the Message's int fields.
  */
 public class RequestReplyMessageBase {
-   /**
-     * String constant used to extract the pathname to a downloaded
-     * image from a Bundle.
+    /**
+     * String constant used to extract the MessagePayload from the
+     * Bundle.
      */
-    public static final String IMAGE_PATHNAME = "IMAGE_PATHNAME";
+    public static final String PAYLOAD = "PAYLOAD";
 
     /**
-     * String constant used to extract the request code.
+     * Message.what of a request to download one image.  The kinds of
+     * requests and replies use distinct values, so a Message's kind
+     * never depends on which way it's going.
      */
-    public static final String REQUEST_CODE = "REQUEST_CODE";
+    public static final int REQUEST_DOWNLOAD = 1;
 
     /**
-     * String constant used to extract the URL to an image from a
-     * Bundle.
+     * Message.what of a request to download a batch of images.
+     */
+    public static final int REQUEST_BATCH_DOWNLOAD = 2;
+
+    /**
+     * Message.what of a request to cancel downloads that were
+     * requested earlier.
+     */
+    public static final int REQUEST_CANCEL = 3;
+
+    /**
+     * Message.what of a reply that carries the final result of a
+     * request.
+     */
+    public static final int REPLY_RESULT = 4;
+
+    /**
+     * Message.what of a reply that carries the progress of a request
+     * that's still running.
+     */
+    public static final int REPLY_PROGRESS = 5;
+
+    /**
+     * Message.what of a reply that carries the final results of
+     * several requests in a batch.
      */
-    public static final String IMAGE_URL = "IMAGE_URL";
+    public static final int REPLY_BATCH = 6;
 
     /**
-     * String constant used to extract the directory pathname to use
-     * to store a downloaded image.
+     * Message.what of a request to forget the images that were
+     * downloaded into a directory, which has been deleted.
      */
-    public static final String DIRECTORY_PATHNAME = "DIRECTORY_PATHNAME";
-    
+    public static final int REQUEST_FORGET = 7;
+
     /**
      * Message used to hold the information.
      */
     protected Message mMessage;
 
+    /**
+     * The payload of mMessage, which is unparceled at most once.
+     */
+    private MessagePayload mPayload;
+
     /**
      * Constructor initializes the mMessage field.
      */
@@ -53,19 +91,29 @@ public class RequestReplyMessageBase {
     }
 
     /**
-     * Accessor method that returns the Bundle that's part of the
-     * underlying Message.
+     * Accessor method that returns the payload of the underlying
+     * Message.
      */
-    public Bundle getData() {
-        return mMessage.getData();
+    protected MessagePayload getPayload() {
+        if (mPayload == null) {
+            Bundle data = mMessage.getData();
+            // The Bundle may have come from another process, so it
+            // needs this app's ClassLoader to create the payload.
+            data.setClassLoader(MessagePayload.class.getClassLoader());
+            mPayload = data.getParcelable(PAYLOAD);
+        }
+        return mPayload;
     }
 
     /**
-     * Sets provided Bundle as the data of the underlying Message
-     * @param data - the Bundle to set
+     * Accessor method that sets the payload of the underlying
+     * Message.
      */
-    public void setData(Bundle data) {
+    protected void setPayload(MessagePayload payload) {
+        Bundle data = new Bundle(1);
+        data.putParcelable(PAYLOAD, payload);
         mMessage.setData(data);
+        mPayload = payload;
     }
 
     /**
@@ -85,161 +133,101 @@ public class RequestReplyMessageBase {
     }
 
     /**
-     * Accessor method that returns Messenger of the Message.
-     */
-    public Messenger getMessenger() {
-      return mMessage.replyTo;
-    }
-
-    /**
-     * Accessor method that sets Messenger of the Message
-     * @param messenger
-     */
-    public void setMessenger(Messenger messenger) {
-        mMessage.replyTo = messenger;
-    }
-
-    /**
-     * Accessor method that returns the request code of the message.
+     * Returns true if the message reports the progress of a request
+     * rather than its result.
      */
-    public int getRequestCode() {
-        // Extract the data from Message, which is in the form of a
-        // Bundle that can be passed across processes.
-        Bundle data = mMessage.getData();
-
-        // Extract the request code.
-        return data.getInt(REQUEST_CODE);
+    public boolean isProgress() {
+        return mMessage.what == REPLY_PROGRESS;
     }
 
     /**
-     * Accessor method that sets the request code of the message
-     * @param requestCode
-     */
-    public void setRequestCode(int requestCode) {
-        mMessage.getData().putInt(REQUEST_CODE,requestCode);
-    }
-
-    /**
-     * Helper method that sets the request code of the message to the provided Bundle
-     * @param data
-     * @param requestCode
+     * Returns true if the message asks to cancel downloads.
      */
-    public static void setRequestCode(Bundle data, int requestCode) {
-        data.putInt(REQUEST_CODE,requestCode);
+    public boolean isCancel() {
+        return mMessage.what == REQUEST_CANCEL;
     }
 
     /**
-     * Helper method that returns the URL to the image file.
+     * Returns true if the message asks to forget the images in a
+     * directory.
      */
-    public static Uri getImageURL(Bundle data) {
-        // Extract the path to the image file from the Bundle, which
-        // should be stored using the IMAGE_URL key.
-        return Uri.parse(data.getString(IMAGE_URL));
+    public boolean isForget() {
+        return mMessage.what == REQUEST_FORGET;
     }
 
     /**
-     *  Helper method that sets the URL to the image file into provided Bundle
-     * @param data - the Bundle to store the URL
-     * @param url - URL to the image file
+     * Returns true if the message carries a batch of requests or
+     * replies.
      */
-    public static void setImageURL(Bundle data, Uri url) {
-        data.putString(IMAGE_URL,
-                       url.toString());
+    public boolean isBatch() {
+        return mMessage.what == REQUEST_BATCH_DOWNLOAD
+            || mMessage.what == REPLY_BATCH;
     }
 
     /**
-     * Helper method that returns the URL to the image file.
+     * Accessor method that returns Messenger of the Message.
      */
-    public Uri getImageURL() {
-        // Extract the data from Message, which is in the form of a
-        // Bundle that can be passed across processes.
-        Bundle data = mMessage.getData();
-
-        // Extract the path to the image file from the Bundle, which
-        // should be stored using the IMAGE_URL key.
-        return Uri.parse(data.getString(IMAGE_URL));
+    public Messenger getMessenger() {
+      return mMessage.replyTo;
     }
 
     /**
-     * Helper method that sets the URL to the image file
-     * @param url
+     * Accessor method that sets Messenger of the Message
+     * @param messenger
      */
-    public void setImageURL(Uri url) {
-        mMessage.getData().putString(IMAGE_URL,
-                                     url.toString());
+    public void setMessenger(Messenger messenger) {
+        mMessage.replyTo = messenger;
     }
 
     /**
-     * Helper method that returns the path to the image file if it is
-     * download successfully.
+     * Accessor method that returns the request code of the message.
      */
-    public static String getImagePathname(Bundle data) {
-        // Extract the path to the image file from the Bundle, which
-        // should be stored using the IMAGE_PATHNAME key.
-        return data.getString(IMAGE_PATHNAME);
+    public int getRequestCode() {
+        return mMessage.arg2;
     }
 
     /**
-     * Helper method that sets the path to the image file into provided Bundle
-     * @param data - the Bundle to store the path
-     * @param imagePathname - the path to the image file
+     * Accessor method that sets the request code of the message
+     * @param requestCode
      */
-    public static void setImagePathname(Bundle data, String imagePathname) {
-        data.putString(IMAGE_PATHNAME,
-                       imagePathname);
+    public void setRequestCode(int requestCode) {
+        mMessage.arg2 = requestCode;
     }
 
     /**
-     * Helper method that returns the path to the image file if it is
-     * download successfully.
+     * Returns the number of images the message refers to.
      */
-    public String getImagePathname() {
-        // Extract the data from Message, which is in the form of a
-        // Bundle that can be passed across processes.
-        Bundle data = mMessage.getData();
-
-        // Extract the path to the image file from the Bundle, which
-        // should be stored using the IMAGE_PATHNAME key.
-        return data.getString(IMAGE_PATHNAME);
+    public int size() {
+        return getPayload().mRequestIds.length;
     }
 
     /**
-     * Helper method that sets the path to the image file
-     * @param imagePathname - the path to the image file
+     * Returns the request ID of the image at @a index.
      */
-    public void setImagePathname(String imagePathname) {
-        mMessage.getData().putString(IMAGE_PATHNAME,
-                                     imagePathname);
+    public int getRequestId(int index) {
+        return getPayload().mRequestIds[index];
     }
 
     /**
-     * Helper method that returns the URI to the directory pathname.
+     * Helper method that returns the directory pathname.
      */
     public String getDirectoryPathname() {
-        // Extract the data from Message, which is in the form of a
-        // Bundle that can be passed across processes.
-        Bundle data = mMessage.getData();
-
-        // Extract the directory pathname the Bundle, which should be
-        // stored using the DIRECTORY_PATHNAME key.
-        return data.getString(DIRECTORY_PATHNAME);
+        return getPayload().mDirectoryPathname;
     }
 
     /**
-     * Helper method that sets the URI to the directory pathname
-     * @param directoryPathname
+     * Helper method that returns the number of bytes downloaded thus
+     * far.
      */
-    public void setDirectoryPathname(String directoryPathname) {
-        mMessage.getData().putString(DIRECTORY_PATHNAME,
-                                     directoryPathname);
+    public long getBytesDownloaded() {
+        return getPayload().mBytesDownloaded;
     }
 
     /**
-     * Helper method that sets the URI to the directory pathname to provided Bundle
-     * @param data
-     * @param directoryPathname
+     * Helper method that returns the total number of bytes to
+     * download, or -1 if it isn't known.
      */
-    public static void setDirectoryPathname(Bundle data, String directoryPathname) {
-        data.putString(DIRECTORY_PATHNAME,directoryPathname);
+    public long getTotalBytes() {
+        return getPayload().mTotalBytes;
     }
 }
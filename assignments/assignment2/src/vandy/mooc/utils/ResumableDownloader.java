@@ -0,0 +1,382 @@
+package vandy.mooc.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+
+import android.util.Log;
+
+/**
+ * This helper class downloads the resource at a URL into a file in a
+ * way that survives the process dying mid-transfer.  The bytes are
+ * written to a "<target>.part" file and a small "<target>.ckpt"
+ * sidecar records the URL, the validator (ETag or Last-Modified)
+ * returned by the server, the expected length, and the number of
+ * bytes known to be on disk.  A later call for the same URL and
+ * target resumes with an HTTP Range request guarded by If-Range, so
+ * the server sends the remainder only if the resource hasn't changed
+ * and the whole resource otherwise.  The target file is only replaced
+ * once the download is complete.
+ */
+public class ResumableDownloader {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "ResumableDownloader";
+
+    /**
+     * Suffix of the file holding the bytes downloaded thus far.
+     */
+    public static final String PARTIAL_SUFFIX = ".part";
+
+    /**
+     * Suffix of the sidecar file holding the checkpoint.
+     */
+    public static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    /**
+     * Size of each file I/O operation.
+     */
+    private static final int BUFLEN = 8 * 1024;
+
+    /**
+     * Number of bytes written between two checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 256 * 1024;
+
+    /**
+     * Connect and read timeouts (in milliseconds).
+     */
+    private static final int TIMEOUT_MS = 15 * 1000;
+
+    /**
+     * Keys used in the checkpoint file.
+     */
+    private static final String KEY_URL = "url";
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_BYTES = "bytes";
+
+    /**
+     * Download the resource at @a url into @a target, resuming a
+     * previous partial download of the same @a url if one exists.
+     *
+     * @param url
+     *          The URL of the resource to download.
+     * @param target
+     *          The file that holds the resource once the download
+     *          completes.
+     *
+     * @return
+     *          The @a target file.
+     *
+     * @throws IOException
+     *          If the download fails.  The partial file and its
+     *          checkpoint are kept so a later call can resume.
+     */
+    public static File download(URL url,
+                                File target) throws IOException {
+        return download(url, target, null);
+    }
+
+    /**
+     * Download the resource at @a url into @a target like
+     * download(URL, File), reporting the progress to @a listener
+     * (which may be null) as the bytes are written.
+     */
+    public static File download(URL url,
+                                File target,
+                                DownloadProgressListener listener)
+        throws IOException {
+        final File partial = getPartialFile(target);
+        final File checkpointFile = getCheckpointFile(target);
+
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+
+        // Resources that aren't served over HTTP (e.g., "file:" URLs)
+        // can't be fetched by range, so just copy them.
+        if (!(connection instanceof HttpURLConnection)) {
+            try (InputStream is = connection.getInputStream();
+                 OutputStream os = new FileOutputStream(partial)) {
+                copy(is, os);
+            }
+            if (listener != null)
+                listener.onProgress(partial.length(), partial.length());
+            return commit(partial, checkpointFile, target);
+        }
+
+        final HttpURLConnection http = (HttpURLConnection) connection;
+        try {
+            // Figure out how much of a previous attempt we can trust.
+            final Properties checkpoint = loadCheckpoint(checkpointFile);
+            long offset = resumeOffset(checkpoint, url, partial);
+
+            if (offset > 0) {
+                http.setRequestProperty("Range",
+                                        "bytes=" + offset + "-");
+                http.setRequestProperty("If-Range",
+                                        checkpoint.getProperty(KEY_VALIDATOR));
+            }
+
+            final int code = http.getResponseCode();
+
+            if (code == 416 && offset > 0) {
+                // The previous attempt got everything but died before
+                // committing the file.
+                if (offset == getLong(checkpoint, KEY_LENGTH)) {
+                    Log.d(TAG, "partial download of " + url + " was complete");
+                    return commit(partial, checkpointFile, target);
+                }
+
+                // Otherwise the checkpoint is bogus, so start over
+                // next time.
+                discard(target);
+                throw new IOException("HTTP 416 resuming " + url);
+            } else if (code == HttpURLConnection.HTTP_PARTIAL) {
+                // Make sure the server resumed where we asked it to.
+                if (offset != rangeStart(http.getHeaderField("Content-Range")))
+                    throw new IOException("unexpected Content-Range "
+                                          + http.getHeaderField("Content-Range"));
+                Log.d(TAG, "resuming " + url + " at byte " + offset);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // Either there was nothing to resume or the resource
+                // changed since the checkpoint was written.
+                offset = 0;
+            } else
+                throw new Retrier.HttpStatusException(code, url);
+
+            final long contentLength =
+                parseLong(http.getHeaderField("Content-Length"));
+            final long length =
+                contentLength < 0 ? -1 : offset + contentLength;
+
+            // Record the validator of the representation being
+            // downloaded before any of its bytes hit the disk.
+            final Properties next = new Properties();
+            next.setProperty(KEY_URL, url.toString());
+            next.setProperty(KEY_LENGTH, Long.toString(length));
+            next.setProperty(KEY_BYTES, Long.toString(offset));
+            final String validator = getValidator(http);
+            if (validator != null)
+                next.setProperty(KEY_VALIDATOR, validator);
+            storeCheckpoint(checkpointFile, next);
+
+            try (InputStream is = http.getInputStream();
+                 RandomAccessFile raf = new RandomAccessFile(partial, "rw")) {
+                raf.setLength(offset);
+                raf.seek(offset);
+
+                final byte[] buffer = new byte[BUFLEN];
+                long written = offset;
+                long lastCheckpoint = offset;
+
+                // Report the bytes kept from a previous attempt.
+                if (listener != null)
+                    listener.onProgress(written, length);
+
+                for (int n; (n = is.read(buffer)) >= 0; ) {
+                    // Stop promptly if the download has been cancelled.
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException("download of "
+                                                         + url
+                                                         + " interrupted");
+                    raf.write(buffer, 0, n);
+                    written += n;
+                    if (listener != null)
+                        listener.onProgress(written, length);
+
+                    if (written - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                        // Only checkpoint bytes that are known to be
+                        // on the disk.
+                        raf.getFD().sync();
+                        next.setProperty(KEY_BYTES, Long.toString(written));
+                        storeCheckpoint(checkpointFile, next);
+                        lastCheckpoint = written;
+                    }
+                }
+
+                if (length >= 0 && written != length)
+                    throw new IOException("expected " + length
+                                          + " bytes but got " + written);
+                raf.getFD().sync();
+            }
+            return commit(partial, checkpointFile, target);
+        } finally {
+            http.disconnect();
+        }
+    }
+
+    /**
+     * Delete the partial file and checkpoint kept for @a target,
+     * e.g., when a download has been abandoned.
+     */
+    public static void discard(File target) {
+        getPartialFile(target).delete();
+        getCheckpointFile(target).delete();
+    }
+
+    /**
+     * Returns the file that holds the bytes of @a target downloaded
+     * thus far.
+     */
+    static File getPartialFile(File target) {
+        return new File(target.getPath() + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Returns the sidecar file that holds the checkpoint of @a
+     * target.
+     */
+    static File getCheckpointFile(File target) {
+        return new File(target.getPath() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Returns the offset at which a download of @a url into @a
+     * partial can resume, or 0 if it must start over.
+     */
+    private static long resumeOffset(Properties checkpoint,
+                                     URL url,
+                                     File partial) {
+        if (checkpoint == null
+            || !url.toString().equals(checkpoint.getProperty(KEY_URL))
+            // Without a validator we can't tell whether the bytes on
+            // disk still belong to the resource.
+            || checkpoint.getProperty(KEY_VALIDATOR) == null
+            || !partial.exists())
+            return 0;
+
+        // Bytes written after the last checkpoint may not have made
+        // it to the disk, so they're fetched again.
+        final long bytes = getLong(checkpoint, KEY_BYTES);
+        return bytes < 0 ? 0 : Math.min(bytes, partial.length());
+    }
+
+    /**
+     * Returns a validator usable with If-Range, or null if the
+     * server didn't provide one.  Weak ETags can't be used with
+     * If-Range, so Last-Modified is used instead.
+     */
+    private static String getValidator(HttpURLConnection http) {
+        final String etag = http.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/"))
+            return etag;
+        return http.getHeaderField("Last-Modified");
+    }
+
+    /**
+     * Returns the first byte position of a "bytes first-last/length"
+     * Content-Range header, or -1 if it can't be parsed.
+     */
+    static long rangeStart(String contentRange) {
+        if (contentRange == null
+            || !contentRange.startsWith("bytes "))
+            return -1;
+        final int dash = contentRange.indexOf('-');
+        if (dash < 0)
+            return -1;
+        return parseLong(contentRange.substring(6, dash).trim());
+    }
+
+    /**
+     * Move the completed @a partial file to @a target and delete the
+     * @a checkpointFile.
+     */
+    private static File commit(File partial,
+                               File checkpointFile,
+                               File target) throws IOException {
+        // The old target is only removed once the new one is complete.
+        if (target.exists() && !target.delete())
+            throw new IOException("unable to replace " + target);
+        if (!partial.renameTo(target))
+            throw new IOException("unable to rename " + partial);
+        checkpointFile.delete();
+        return target;
+    }
+
+    /**
+     * Returns the checkpoint stored in @a checkpointFile, or null if
+     * there isn't a usable one.
+     */
+    private static Properties loadCheckpoint(File checkpointFile) {
+        if (!checkpointFile.exists())
+            return null;
+        try (InputStream is = new FileInputStream(checkpointFile)) {
+            final Properties checkpoint = new Properties();
+            checkpoint.load(is);
+            return checkpoint;
+        } catch (IOException e) {
+            Log.w(TAG, "ignoring unreadable checkpoint " + checkpointFile);
+            return null;
+        }
+    }
+
+    /**
+     * Atomically replace the contents of @a checkpointFile with @a
+     * checkpoint.
+     */
+    private static void storeCheckpoint(File checkpointFile,
+                                        Properties checkpoint)
+        throws IOException {
+        final File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream os = new FileOutputStream(tmp)) {
+            checkpoint.store(os, null);
+            os.getFD().sync();
+        }
+        if (!tmp.renameTo(checkpointFile))
+            throw new IOException("unable to write " + checkpointFile);
+    }
+
+    /**
+     * Returns the long value of @a key in @a properties, or -1.
+     */
+    private static long getLong(Properties properties,
+                                String key) {
+        return parseLong(properties.getProperty(key));
+    }
+
+    /**
+     * Returns the long value of @a value, or -1 if it isn't one.
+     */
+    private static long parseLong(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copy the contents of the @a inputStream to the @a outputStream.
+     */
+    private static void copy(InputStream inputStream,
+                             OutputStream outputStream)
+        throws IOException {
+        final byte[] buffer = new byte[BUFLEN];
+
+        for (int n; (n = inputStream.read(buffer)) >= 0; )
+            outputStream.write(buffer, 0, n);
+
+        outputStream.flush();
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private ResumableDownloader() {
+        throw new AssertionError();
+    }
+}
@@ -1,7 +1,5 @@
 package vandy.mooc.utils;
 
-import android.os.Bundle;
-
 /**
  * Interface that's implemented by an Activity that wants to receive
  * the results of a Service.
@@ -10,11 +8,24 @@ public interface ServiceResult {
     /**
      * Called when a launched Service sends back results from
      * computations it runs, giving the requestCode it was started
-     * with, the resultCode it returned, and any additional data from
-     * it.  The resultCode will be RESULT_CANCELED if the Service
-     * explicitly returned that.
+     * with, the resultCode it returned, the requestId of the image
+     * the result is for, and the pathname of the downloaded image
+     * (which is null if the download failed).  The resultCode will
+     * be RESULT_CANCELED if the Service explicitly returned that.
      */
     void onServiceResult(int requestCode,
                          int resultCode,
-                         Bundle data);
+                         int requestId,
+                         String imagePathname);
+
+    /**
+     * Called when a launched Service reports the progress of a
+     * request that's still running, giving the requestCode it was
+     * started with, the requestId of the image, the bytes downloaded
+     * thus far, and the total bytes (which is -1 if unknown).
+     */
+    void onServiceProgress(int requestCode,
+                           int requestId,
+                           long bytesDownloaded,
+                           long totalBytes);
 }
@@ -2,7 +2,6 @@ package vandy.mooc.utils;
 
 import java.lang.ref.WeakReference;
 
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
@@ -56,8 +55,6 @@ public class ServiceResultHandler extends Handler {
         // Extract the necessary fields from the ReplyMessage.
         final int requestCode =
             replyMessage.getRequestCode();
-        final int resultCode = replyMessage.getResultCode();
-        final Bundle data = replyMessage.getData();
 
         if (mResult.get() == null) {
             // Warn programmer that mResult callback reference has
@@ -65,12 +62,21 @@ public class ServiceResultHandler extends Handler {
             // change.
             Log.w(TAG, "Configuration change handling not implemented correctly;"
                     + " lost weak reference to ServiceResult callback)");
-        } else {
-            // Forward result to ServiceResult callback
+        } else if (replyMessage.isProgress()) {
+            // Forward progress to ServiceResult callback
             // implementation.
-            mResult.get().onServiceResult(requestCode,
-                                          resultCode,
-                                          data);
+            mResult.get().onServiceProgress(requestCode,
+                                            replyMessage.getRequestId(0),
+                                            replyMessage.getBytesDownloaded(),
+                                            replyMessage.getTotalBytes());
+        } else {
+            // Forward each result (of which a batch has several) to
+            // ServiceResult callback implementation.
+            for (int i = 0; i < replyMessage.size(); ++i)
+                mResult.get().onServiceResult(requestCode,
+                                              replyMessage.getResultCode(i),
+                                              replyMessage.getRequestId(i),
+                                              replyMessage.getImagePathname(i));
         }
     }
 }
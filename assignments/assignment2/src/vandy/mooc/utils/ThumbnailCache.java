@@ -0,0 +1,293 @@
+package vandy.mooc.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * A two-level cache of the thumbnails displayed in the image grid.
+ * The first level keeps recently displayed thumbnails in memory,
+ * bounded by the number of bytes their Bitmaps take.  The second
+ * level keeps every thumbnail that has been decoded as a small
+ * pre-scaled file in the app's cache directory, so a thumbnail that
+ * falls out of memory is re-read from its small file rather than
+ * re-decoded from the full-size original.
+ *
+ * Thumbnails are keyed by the original's path, length, and last
+ * modification time as well as the thumbnail size, so a changed
+ * original or a different grid layout never shows a stale thumbnail.
+ */
+public class ThumbnailCache {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "ThumbnailCache";
+
+    /**
+     * Name of the directory within the cache directory that holds
+     * the thumbnail files.
+     */
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+
+    /**
+     * Fraction of the app's memory class used by the memory cache.
+     */
+    private static final int MEMORY_FRACTION = 8;
+
+    /**
+     * Number of bytes the thumbnail files may use.
+     */
+    private static final long DISK_BUDGET = 16 * 1024 * 1024;
+
+    /**
+     * Quality used to compress the thumbnail files.
+     */
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    /**
+     * Suffix of thumbnail files that are still being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The one and only cache in this process.
+     */
+    private static ThumbnailCache sInstance;
+
+    /**
+     * Recently used thumbnails, sized by their byte counts.
+     */
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    /**
+     * Directory that holds the thumbnail files.
+     */
+    private final File mDirectory;
+
+    /**
+     * Number of bytes the thumbnail files are using.
+     */
+    private long mDiskBytes;
+
+    /**
+     * Returns the cache, creating it the first time it's called.
+     */
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            final Context application = context.getApplicationContext();
+            final int memoryClass =
+                ((ActivityManager) application.getSystemService
+                 (Context.ACTIVITY_SERVICE)).getMemoryClass();
+
+            File cacheDir = application.getExternalCacheDir();
+            if (cacheDir == null)
+                cacheDir = application.getCacheDir();
+
+            sInstance =
+                new ThumbnailCache(memoryClass * 1024 * 1024 / MEMORY_FRACTION,
+                                   new File(cacheDir, THUMBNAIL_DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor creates a cache that keeps up to @a memoryBytes of
+     * thumbnails in memory and the thumbnail files in @a directory.
+     */
+    ThumbnailCache(int memoryBytes,
+                   File directory) {
+        mMemoryCache = new LruCache<String, Bitmap>(memoryBytes) {
+                @Override
+                protected int sizeOf(String key,
+                                     Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+        mDirectory = directory;
+        if (!mDirectory.exists())
+            mDirectory.mkdirs();
+
+        final File[] files = mDirectory.listFiles();
+        if (files != null)
+            for (File file : files)
+                mDiskBytes += file.length();
+    }
+
+    /**
+     * Returns a thumbnail of @a image that fits in @a size x @a size,
+     * from memory if possible, else from its thumbnail file, else by
+     * decoding @a image (which adds it to both levels).
+     *
+     * @return The thumbnail, or null if @a image can't be decoded.
+     */
+    public Bitmap getThumbnail(File image,
+                               int size) {
+        final String key = keyFor(image, size);
+
+        Bitmap thumbnail = mMemoryCache.get(key);
+        if (thumbnail != null)
+            return thumbnail;
+
+        final File file = new File(mDirectory, key);
+        thumbnail = BitmapDecoder.decode(file.getAbsolutePath(),
+                                         size,
+                                         size,
+                                         null);
+        if (thumbnail != null) {
+            // Make the file the most recently used.
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            thumbnail = decodeThumbnail(image, size);
+            if (thumbnail == null)
+                return null;
+            store(thumbnail, file);
+        }
+
+        mMemoryCache.put(key, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Discard the thumbnails held in memory, e.g., when the system is
+     * low on memory.  The thumbnail files are kept.
+     */
+    public void trimMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    /**
+     * Returns the key of the thumbnail of @a image at @a size.
+     */
+    private static String keyFor(File image,
+                                 int size) {
+        return Utils.hashKey(image.getAbsolutePath()
+                             + ":" + image.length()
+                             + ":" + image.lastModified()
+                             + ":" + size);
+    }
+
+    /**
+     * Decode @a image from its original file and scale it to fit in
+     * @a size x @a size.
+     */
+    private static Bitmap decodeThumbnail(File image,
+                                          int size) {
+        final Bitmap decoded =
+            BitmapDecoder.decode(image.getAbsolutePath(), size, size, null);
+        if (decoded == null)
+            return null;
+
+        // The decoder only shrinks by powers of two, so finish the
+        // job to keep the thumbnail file small.
+        final int width = decoded.getWidth();
+        final int height = decoded.getHeight();
+        if (width <= size && height <= size)
+            return decoded;
+
+        final float scale = Math.min((float) size / width,
+                                     (float) size / height);
+        final int scaledWidth = Math.max(1, Math.round(width * scale));
+        final int scaledHeight = Math.max(1, Math.round(height * scale));
+
+        // Draw into a pooled Bitmap and return the decoded one to the
+        // pool, so a grid full of thumbnails allocates little.
+        final BitmapPool pool = BitmapPool.getInstance();
+        final Bitmap scaled =
+            pool.get(scaledWidth,
+                     scaledHeight,
+                     decoded.getConfig() != null
+                     ? decoded.getConfig()
+                     : Bitmap.Config.ARGB_8888);
+        new Canvas(scaled).drawBitmap(decoded,
+                                      null,
+                                      new Rect(0, 0, scaledWidth, scaledHeight),
+                                      new Paint(Paint.FILTER_BITMAP_FLAG));
+        pool.put(decoded);
+        return scaled;
+    }
+
+    /**
+     * Write @a thumbnail to @a file, evicting the least recently used
+     * thumbnail files if that exceeds the disk budget.  Thumbnails
+     * without alpha are stored as JPEG and the rest as WebP, which
+     * keeps their transparency.
+     */
+    private void store(Bitmap thumbnail,
+                       File file) {
+        final Bitmap.CompressFormat format = thumbnail.hasAlpha()
+            ? Bitmap.CompressFormat.WEBP
+            : Bitmap.CompressFormat.JPEG;
+
+        File temp = null;
+        try {
+            // Write to a temporary file first so a reader never sees
+            // a partial thumbnail.
+            temp = File.createTempFile(file.getName(), TEMP_SUFFIX, mDirectory);
+            try (OutputStream os = new FileOutputStream(temp)) {
+                if (!thumbnail.compress(format, THUMBNAIL_QUALITY, os))
+                    throw new IOException("unable to compress thumbnail");
+            }
+            if (!temp.renameTo(file))
+                throw new IOException("unable to rename " + temp);
+        } catch (IOException e) {
+            Log.w(TAG, "unable to store thumbnail: " + e);
+            if (temp != null)
+                temp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            mDiskBytes += file.length();
+            if (mDiskBytes > DISK_BUDGET)
+                trimDisk();
+        }
+    }
+
+    /**
+     * Delete the least recently used thumbnail files until the rest
+     * fit in three quarters of the disk budget, so trimming isn't
+     * needed again for a while.
+     */
+    private void trimDisk() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File lhs,
+                                   File rhs) {
+                    final long l = lhs.lastModified();
+                    final long r = rhs.lastModified();
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                }
+            });
+
+        mDiskBytes = 0;
+        for (File file : files)
+            mDiskBytes += file.length();
+
+        for (int i = 0;
+             i < files.length && mDiskBytes > DISK_BUDGET / 4 * 3;
+             ++i) {
+            if (files[i].getName().endsWith(TEMP_SUFFIX))
+                continue;
+            final long length = files[i].length();
+            if (files[i].delete())
+                mDiskBytes -= length;
+        }
+    }
+}
@@ -11,18 +11,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import vandy.mooc.R;
 import android.app.Activity;
 import android.app.ActivityManager;
-import android.app.ActivityManager.MemoryInfo;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
-import android.graphics.Color;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.IBinder;
@@ -65,6 +67,12 @@ public class Utils {
      * Size of each file I/O operation.
      */
     private static final int BUFLEN = 1024;
+
+    /**
+     * A decoded image may take at most this fraction of the memory
+     * class of the process.
+     */
+    private static final int DECODE_MEMORY_FRACTION = 8;
     
     /**
      * Display a @a bitmapImage on an @a imageView.
@@ -81,38 +89,23 @@ public class Utils {
 
     /**
      * Decode an image located at @a pathToImageFile and return a
-     * Bitmap to the image.  This method scales the image to avoid
+     * Bitmap to the image.  This method downsamples the image so it
+     * fits in a fraction of this process's memory class to avoid
      * out-of-memory exceptions when decoding large images.
      */
     public static Bitmap decodeImageFromPath(Context context,
                                              Uri pathToImageFile) {
     	ActivityManager mgr = (ActivityManager) context
             .getSystemService(Context.ACTIVITY_SERVICE);
-        MemoryInfo info = new ActivityManager.MemoryInfo();
-        mgr.getMemoryInfo(info);
-        BitmapFactory.Options options =
-            new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        options.inPreferredConfig = Config.ARGB_8888;
 
-        BitmapFactory.decodeFile(pathToImageFile.toString(),
-                                 options);
-        int ratio = 
-            (int) (4 * (long) options.outHeight
-                   * (long) options.outWidth * (long) 4 
-                   / (info.availMem + 1));
-
-        options.inSampleSize = ratio;
-        options.inJustDecodeBounds = false;
-
-        try (InputStream inputStream =
-             new FileInputStream(pathToImageFile.toString())) {
-                return BitmapFactory.decodeFile(pathToImageFile.toString(),
-                                                options);
-            } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+        // The filters hold a copy of the pixels alongside the Bitmap,
+        // so leave plenty of headroom.
+        long byteBudget =
+            (long) mgr.getMemoryClass() * 1024 * 1024 / DECODE_MEMORY_FRACTION;
+
+        return BitmapDecoder.decodeWithinBudget(pathToImageFile.toString(),
+                                                byteBudget,
+                                                null);
     }
 
     /**
@@ -121,72 +114,91 @@ public class Utils {
     public static Uri grayScaleFilter(Context context,
                                       Uri pathToImageFile,
                                       Uri directoryPathname) {
-        Bitmap originalImage =
+        return applyFilters(context,
+                            pathToImageFile,
+                            directoryPathname,
+                            FilterChain.create().grayScale());
+    }
+
+    /**
+     * Apply the @a filters to the image at @a pathToImageFile, store
+     * the result in a new file in @a directoryPathname, and return
+     * the path to that file.  However many filters there are, the
+     * image is decoded once, filtered in one mutable buffer, and
+     * compressed once.
+     *
+     * @return 
+     *        Absolute path to the filtered image file, or null if
+     *        the image couldn't be filtered or the calling Thread
+     *        was interrupted.
+     */
+    public static Uri applyFilters(Context context,
+                                   Uri pathToImageFile,
+                                   Uri directoryPathname,
+                                   FilterChain filters) {
+        Bitmap image =
             decodeImageFromPath(context,
                                 pathToImageFile);
 
         // Bail out if something is wrong with the image.
-        if (originalImage == null)
+        if (image == null)
             return null;
 
-        Bitmap grayScaleImage = 
-            originalImage.copy(originalImage.getConfig(),
-                               true);
+        int width = image.getWidth();
+        int height = image.getHeight();
 
-        boolean hasTransparent = grayScaleImage.hasAlpha();
-        int width = grayScaleImage.getWidth();
-        int height = grayScaleImage.getHeight();
+        // Move the pixels across JNI in bulk and filter them in a
+        // single buffer.
+        int[] pixels = new int[width * height];
+        image.getPixels(pixels, 0, width,
+                        0, 0, width, height);
+        PixelBuffer buffer = new PixelBuffer(pixels, width, height);
 
-        // A common pixel-by-pixel grayscale conversion algorithm
-        // using values obtained from en.wikipedia.org/wiki/Grayscale.
-        for (int i = 0; i < height; ++i) {
-            // Break out if we've been interrupted.
-            if (Thread.interrupted())
-                return null;
+        // Break out if we've been interrupted.
+        BitmapPool pool = BitmapPool.getInstance();
+        if (!filters.apply(buffer)) {
+            pool.put(image);
+            return null;
+        }
 
-            for (int j = 0; j < width; ++j) {
-            	// Check if the pixel is transparent in the original
-            	// by checking if the alpha is 0.
-                if (hasTransparent 
-                    && ((grayScaleImage.getPixel(j, i) 
-                         & 0xff000000) >> 24) == 0) 
-                    continue;
-                
-                // Convert the pixel to grayscale.
-                int pixel = grayScaleImage.getPixel(j, i);
-                int grayScale = 
-                    (int) (Color.red(pixel) * .299 
-                           + Color.green(pixel) * .587
-                           + Color.blue(pixel) * .114);
-                grayScaleImage.setPixel(j, i, 
-                                        Color.rgb(grayScale,
-                                                  grayScale,
-                                                  grayScale));
-            }
+        // Put the filtered pixels back into the decoded image unless
+        // the filters changed its size, in which case reuse a pooled
+        // Bitmap.
+        Bitmap filteredImage;
+        if (image.isMutable()
+            && buffer.getWidth() == width
+            && buffer.getHeight() == height) {
+            image.setPixels(buffer.getPixels(), 0, width,
+                            0, 0, width, height);
+            filteredImage = image;
+        } else {
+            filteredImage = pool.get(buffer.getWidth(),
+                                     buffer.getHeight(),
+                                     Config.ARGB_8888);
+            filteredImage.setPixels(buffer.getPixels(), 0, buffer.getWidth(),
+                                    0, 0, buffer.getWidth(), buffer.getHeight());
+            pool.put(image);
         }
 
-        // Create a filePath to a temporary file.
+        // Create a filePath to the file that stores the result.
         File filePath = 
             new File(openDirectory(directoryPathname),
                      getUniqueFilename(pathToImageFile.getLastPathSegment()));
 
         try (FileOutputStream fileOutputStream =
              new FileOutputStream(filePath)) {
-            grayScaleImage.compress(CompressFormat.JPEG, 100,
-                                    fileOutputStream);
-
-            // Create a URI from the file.
-            Uri uri = Uri.fromFile(filePath);
-
-            return Utils.createDirectoryAndSaveFile
-                (context, 
-                 new URL(uri.toString()),
-                 uri.getLastPathSegment(),
-                 directoryPathname.toString()); 
+            filteredImage.compress(CompressFormat.JPEG, 100,
+                                   fileOutputStream);
         } catch (Exception e) {
             e.printStackTrace();
+            filePath.delete();
             return null;
+        } finally {
+            // Return the Bitmap to the pool for the next image.
+            pool.put(filteredImage);
         }
+
+        return Uri.parse(filePath.getAbsolutePath());
     }
     
     /**
@@ -209,6 +221,59 @@ public class Utils {
     public static Uri downloadImage(Context context,
                                     Uri url,
                                     String directoryPathname) {
+        return downloadImage(context, url, directoryPathname, null);
+    }
+
+    /**
+     * Download the image located at the provided Internet url like
+     * downloadImage(Context, Uri, String), reporting the progress of
+     * the download to @a listener (which may be null).  Failures that
+     * are likely to go away are retried (see Retrier), so this may
+     * block for a while before giving up.
+     */
+    public static Uri downloadImage(Context context,
+                                    Uri url,
+                                    String directoryPathname,
+                                    DownloadProgressListener listener) {
+        for (int attempts = 1; ; ++attempts) {
+            try {
+                return tryDownloadImage(context,
+                                        url,
+                                        directoryPathname,
+                                        listener);
+            } catch (IOException e) {
+                if (attempts >= Retrier.MAX_ATTEMPTS) {
+                    Log.e(TAG,
+                          "giving up on " + url + " -- returning null: "
+                          + e.toString());
+                    return null;
+                }
+                try {
+                    Retrier.backoff(attempts);
+                } catch (IOException ie) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Make one attempt at downloading the image located at the
+     * provided Internet url like downloadImage(Context, Uri, String,
+     * DownloadProgressListener).  Rather than returning null when
+     * the attempt fails for a reason that's likely to go away, it
+     * throws the failure, so the caller can retry later without
+     * holding a Thread while it waits.
+     *
+     * @throws IOException
+     *        If the attempt failed but is worth retrying (see
+     *        Retrier.isRetryable()).
+     */
+    public static Uri tryDownloadImage(Context context,
+                                       Uri url,
+                                       String directoryPathname,
+                                       DownloadProgressListener listener)
+        throws IOException {
             try  {
                 if (!isExternalStorageWritable()) {
                     Log.d(TAG,
@@ -238,7 +303,8 @@ public class Utils {
                         (context,
                          new URL(Uri.fromFile(filePath).toString()),
                          OFFLINE_FILENAME,
-                         directoryPathname);
+                         directoryPathname,
+                         listener);
                 } 
                 // Otherwise, download the file requested by the user.
                 else {
@@ -248,8 +314,16 @@ public class Utils {
                         (context,
                          new URL(url.toString()),
                          url.getLastPathSegment(),
-                         directoryPathname);
+                         directoryPathname,
+                         listener);
                 }
+            } catch (IOException e) {
+                if (Retrier.isRetryable(e))
+                    throw e;
+                Log.e(TAG,
+                      "Exception while downloading -- returning null."
+                      + e.toString());
+                return null;
             } catch (Exception e) {
                 Log.e(TAG,
                       "Exception while downloading -- returning null."
@@ -258,6 +332,29 @@ public class Utils {
             }
     }
         
+    /**
+     * Delete the partial download of the image at @a url, e.g., when
+     * the download has been cancelled and won't be resumed.
+     */
+    public static void discardDownload(Context context,
+                                       Uri url) {
+        // If another download of the same url is using the partial
+        // download, it's left for that download to finish.
+        final String stagingKey = hashKey(url.toString());
+        final StagingLock lock = useStagingLock(stagingKey);
+        if (!lock.tryLock()) {
+            unuseStagingLock(stagingKey, lock);
+            return;
+        }
+        try {
+            ResumableDownloader.discard
+                (new File(getStagingDirectory(context),
+                          stagingKey));
+        } finally {
+            releaseStagingLock(stagingKey, lock);
+        }
+    }
+
     /**
      * Returns a open File if @a directoryPath points to a valid
      * directory, else null.
@@ -282,15 +379,21 @@ public class Utils {
      *           Name of the file.
      * @param directoryPathname
      *           Pathname of the directory to write the file.
+     * @param listener
+     *           Notified of the download's progress (may be null).
      * 
      * @return 
      *     Absolute path to the downloaded image file on the file
      *     system.
+     * @throws IOException
+     *     If the download failed but is worth retrying.
      */
     private static Uri createDirectoryAndSaveFile(Context context,
-                                                  URL url,
+                                                  final URL url,
                                                   String fileName,
-                                                  String directoryPathname) {
+                                                  String directoryPathname,
+                                                  final DownloadProgressListener listener)
+        throws IOException {
         try {
             // Bail out of we get an invalid bitmap.
             if (url == null)
@@ -313,44 +416,261 @@ public class Utils {
                 new File(directoryPath,
                          getUniqueFilename(fileName));
 
-            // Delete the file if it already exists.
-            if (filePath.exists())
-                filePath.delete();
-                
-            // Pre-validate file.
-            try (InputStream is = (InputStream) url.getContent()) {
-                 BitmapFactory.Options options = 
-                     new BitmapFactory.Options();
-                 options.inJustDecodeBounds = true;
-                 BitmapFactory.decodeStream(is, null, options);
-                 if (options.outMimeType == null)
-                     return null;
-            } catch (Exception e) {
-               	return null; // Indicate a failure.
+            // Downloads of the same url share a staging file, so
+            // they're done one at a time.  The ones that wait for the
+            // first to finish then find the image in the ImageStore.
+            final String stagingKey = hashKey(url.toString());
+            final StagingLock lock = acquireStagingLock(stagingKey);
+            try {
+                return saveFile(context,
+                                url,
+                                stagingKey,
+                                filePath,
+                                listener);
+            } finally {
+                releaseStagingLock(stagingKey, lock);
             }
-            
-            // Get the content of the resource at the url and save it
-            // to an output file.
-            try (InputStream is = (InputStream) url.getContent();
-                 OutputStream os = new FileOutputStream(filePath)) {
-                 copyFile(is, os);
-            } catch (Exception e) {
-            	return null; // Indicate a failure.
+        } catch (InterruptedException e) {
+            // The download was cancelled while waiting its turn.
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException e) {
+            if (Retrier.isRetryable(e))
+                throw e;
+            e.printStackTrace();
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Place the image at @a url into @a filePath, by way of the
+     * ImageStore for remote images, downloading it into the staging
+     * file named @a stagingKey if need be.  The caller must hold the
+     * StagingLock of @a stagingKey.
+     *
+     * @return 
+     *     Absolute path to the image file, or null if it couldn't be
+     *     downloaded.
+     * @throws IOException
+     *     If the download failed but is worth retrying.
+     */
+    private static Uri saveFile(Context context,
+                                final URL url,
+                                String stagingKey,
+                                File filePath,
+                                final DownloadProgressListener listener)
+        throws IOException {
+        // Remote images are kept in the ImageStore, so an image
+        // that was downloaded before (e.g., in an earlier
+        // session) is placed into the directoryPath without
+        // touching the network.
+        boolean remote = isRemote(url);
+        if (remote
+            && ImageStore.getInstance().get(url.toString(),
+                                            filePath))
+            return Uri.parse(filePath.getAbsolutePath());
+
+        // Download the content at the url into a staging file
+        // whose name only depends on the url, so a download that
+        // was interrupted (e.g., because the Service process
+        // died) resumes where it left off.
+        // The download is skipped if the host is known to be
+        // down.
+        final File stagingPath =
+            new File(getStagingDirectory(context),
+                     stagingKey);
+        try {
+            Retrier.attempt(url.getHost(),
+                            new Retrier.Attempt<Void>() {
+                                @Override
+                                public Void run() throws IOException {
+                                    ResumableDownloader.download(url,
+                                                                 stagingPath,
+                                                                 listener);
+                                    return null;
+                                }
+                            });
+        } catch (IOException e) {
+            Log.e(TAG,
+                  "Exception while downloading " 
+                  + url 
+                  + " -- keeping partial file: "
+                  + e.toString());
+            // Let the caller retry failures that are likely to
+            // go away.
+            if (Retrier.isRetryable(e))
+                throw e;
+        	return null; // Indicate a failure.
+        }
+
+        // Validate the downloaded file.
+        BitmapFactory.Options options =
+            new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(stagingPath.getAbsolutePath(),
+                                 options);
+        if (options.outMimeType == null) {
+            stagingPath.delete();
+            return null;
+        }
+
+        // Move the downloaded file into the directoryPath, by
+        // way of the ImageStore for remote images.
+        if (remote) {
+            if (!ImageStore.getInstance().put(url.toString(),
+                                              stagingPath,
+                                              filePath))
+                return null;
+        } else if (!moveFile(stagingPath, filePath))
+            return null;
+
+        // Get the absolute path of the image.
+        String absolutePathToImage = filePath.getAbsolutePath();
+
+        Log.d(TAG,
+              "absolute path to image file is " 
+              + absolutePathToImage);
+
+        // Return the absolute path to the image file.
+        return Uri.parse(absolutePathToImage);
+    }
+
+    /**
+     * A lock that serializes the downloads sharing a staging file.
+     */
+    private static class StagingLock extends ReentrantLock {
+        /**
+         * The number of Threads holding or waiting for the lock,
+         * which is guarded by sStagingLocks.
+         */
+        int mUsers;
+    }
+
+    /**
+     * The StagingLocks in use, by staging file name.  A StagingLock
+     * is removed once no Thread uses it, so the map only holds the
+     * downloads in progress.
+     */
+    private static final Map<String, StagingLock> sStagingLocks =
+        new HashMap<String, StagingLock>();
+
+    /**
+     * Returns the StagingLock of @a stagingKey after locking it,
+     * waiting for other downloads of the same url to finish.
+     */
+    private static StagingLock acquireStagingLock(String stagingKey)
+        throws InterruptedException {
+        final StagingLock lock = useStagingLock(stagingKey);
+        try {
+            lock.lockInterruptibly();
+            return lock;
+        } catch (InterruptedException e) {
+            unuseStagingLock(stagingKey, lock);
+            throw e;
+        }
+    }
+
+    /**
+     * Unlock the @a lock of @a stagingKey returned by
+     * acquireStagingLock().
+     */
+    private static void releaseStagingLock(String stagingKey,
+                                           StagingLock lock) {
+        lock.unlock();
+        unuseStagingLock(stagingKey, lock);
+    }
+
+    /**
+     * Returns the StagingLock of @a stagingKey, creating it if need
+     * be, and count the calling Thread as one of its users.
+     */
+    private static StagingLock useStagingLock(String stagingKey) {
+        synchronized (sStagingLocks) {
+            StagingLock lock = sStagingLocks.get(stagingKey);
+            if (lock == null) {
+                lock = new StagingLock();
+                sStagingLocks.put(stagingKey, lock);
             }
+            ++lock.mUsers;
+            return lock;
+        }
+    }
+
+    /**
+     * Stop counting the calling Thread as a user of the @a lock of
+     * @a stagingKey, removing it once it has no users.
+     */
+    private static void unuseStagingLock(String stagingKey,
+                                         StagingLock lock) {
+        synchronized (sStagingLocks) {
+            if (--lock.mUsers == 0)
+                sStagingLocks.remove(stagingKey);
+        }
+    }
 
-            // Get the absolute path of the image.
-            String absolutePathToImage = filePath.getAbsolutePath();
+    /**
+     * Returns the directory used to stage downloads until they
+     * complete.
+     */
+    private static File getStagingDirectory(Context context) {
+        File cacheDir = context.getExternalCacheDir();
+        if (cacheDir == null)
+            cacheDir = context.getCacheDir();
+
+        File stagingDir = new File(cacheDir, "downloads");
+        if (!stagingDir.exists())
+            stagingDir.mkdirs();
+        return stagingDir;
+    }
 
-            Log.d(TAG,
-                  "absolute path to image file is " 
-                  + absolutePathToImage);
+    /**
+     * Returns true if @a url refers to a resource on another host.
+     */
+    private static boolean isRemote(URL url) {
+        return "http".equalsIgnoreCase(url.getProtocol())
+            || "https".equalsIgnoreCase(url.getProtocol());
+    }
 
-            // Return the absolute path to the image file.
-            return Uri.parse(absolutePathToImage);
+    /**
+     * Returns a fixed-length, filename-safe key for @a value.
+     */
+    static String hashKey(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                .digest(value.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                key.append(String.format("%02x", b & 0xff));
+            return key.toString();
         } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+            // SHA-1 and UTF-8 are always available.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Move the @a source file to @a destination, copying it if the
+     * files are on different file systems.
+     *
+     * @return true if the file was moved, else false.
+     */
+    private static boolean moveFile(File source,
+                                    File destination) {
+        if (source.renameTo(destination))
+            return true;
+
+        try (InputStream is = new FileInputStream(source);
+             OutputStream os = new FileOutputStream(destination)) {
+            copyFile(is, os);
+        } catch (IOException e) {
+            destination.delete();
+            return false;
         }
+        source.delete();
+        return true;
     }
 
     /**
@@ -0,0 +1,126 @@
+package vandy.mooc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for FilterChain (see PixelFiltersTest for how to run
+ * them).
+ */
+public class FilterChainTest {
+    /**
+     * Inverts the color channels of each pixel.
+     */
+    private static final PixelOperation INVERT = new PixelOperation() {
+            @Override
+            public void apply(int[] argb,
+                              int offset,
+                              int length) {
+                for (int i = offset; i < offset + length; ++i)
+                    argb[i] ^= 0x00ffffff;
+            }
+        };
+
+    /**
+     * Swaps the red and blue channels of each pixel.
+     */
+    private static final PixelOperation SWAP = new PixelOperation() {
+            @Override
+            public void apply(int[] argb,
+                              int offset,
+                              int length) {
+                for (int i = offset; i < offset + length; ++i) {
+                    final int pixel = argb[i];
+                    argb[i] = (pixel & 0xff00ff00)
+                        | (pixel >> 16) & 0xff
+                        | (pixel & 0xff) << 16;
+                }
+            }
+        };
+
+    @Test
+    public void fusedOperationsMatchOneAtATime() {
+        // Sizes that leave partial blocks, a single row or column,
+        // and one large enough to be split into bands.
+        for (int[] size : new int[][] { { 1, 1 }, { 1, 3001 }, { 3001, 1 },
+                                        { 333, 211 }, { 517, 263 } }) {
+            final int count = size[0] * size[1];
+            final int[] fused = PixelFiltersTest.randomPixels(count, count);
+            final int[] expected = fused.clone();
+
+            // Each operation applied to the whole image in turn.
+            PixelFilters.grayScale(expected, 0, count, true);
+            INVERT.apply(expected, 0, count);
+            SWAP.apply(expected, 0, count);
+            PixelFilters.grayScale(expected, 0, count, true);
+
+            assertTrue(FilterChain.create()
+                       .grayScale()
+                       .add(INVERT)
+                       .add(SWAP)
+                       .grayScale()
+                       .apply(new PixelBuffer(fused, size[0], size[1])));
+            assertArrayEquals(size[0] + "x" + size[1], expected, fused);
+        }
+    }
+
+    @Test
+    public void imageFiltersSplitFusedRuns() {
+        final int width = 97, height = 61;
+        final int[] chained = PixelFiltersTest.randomPixels(width * height, 7);
+        final PixelBuffer expected =
+            new PixelBuffer(chained.clone(), width, height);
+
+        PixelFilters.grayScale(expected.getPixels(), 0, width * height, true);
+        PixelFilters.blur(expected, 2);
+        INVERT.apply(expected.getPixels(), 0, width * height);
+        PixelFilters.resize(expected, 40, 25);
+        PixelFilters.sharpen(expected);
+
+        final PixelBuffer buffer = new PixelBuffer(chained, width, height);
+        assertTrue(FilterChain.create()
+                   .grayScale()
+                   .blur(2)
+                   .add(INVERT)
+                   .resize(40, 25)
+                   .sharpen()
+                   .apply(buffer));
+
+        assertEquals(40, buffer.getWidth());
+        assertEquals(25, buffer.getHeight());
+        assertArrayEquals(Arrays.copyOf(expected.getPixels(), 40 * 25),
+                          Arrays.copyOf(buffer.getPixels(), 40 * 25));
+    }
+
+    @Test
+    public void interruptedChainStopsAndClearsInterrupt() {
+        final int[] argb = PixelFiltersTest.randomPixels(64, 9);
+        final int[] original = argb.clone();
+
+        Thread.currentThread().interrupt();
+        assertFalse(FilterChain.create()
+                    .blur(1)
+                    .grayScale()
+                    .apply(new PixelBuffer(argb, 8, 8)));
+
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertArrayEquals(original, argb);
+    }
+
+    @Test
+    public void emptyChainLeavesImageAlone() {
+        final int[] argb = PixelFiltersTest.randomPixels(12, 11);
+        final int[] original = argb.clone();
+        final FilterChain chain = FilterChain.create();
+
+        assertTrue(chain.isEmpty());
+        assertTrue(chain.apply(new PixelBuffer(argb, 4, 3)));
+        assertArrayEquals(original, argb);
+    }
+}
@@ -0,0 +1,132 @@
+package vandy.mooc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for ParallelPixelProcessor (see PixelFiltersTest for how
+ * to run them).
+ */
+public class ParallelPixelProcessorTest {
+    /**
+     * Converts pixels to grayscale.
+     */
+    private static final PixelOperation GRAY_SCALE = new PixelOperation() {
+            @Override
+            public void apply(int[] argb,
+                              int offset,
+                              int length) {
+                PixelFilters.grayScale(argb, offset, length, true);
+            }
+        };
+
+    @Test
+    public void parallelMatchesSingleThread() {
+        // Small images are done in the calling thread, larger ones in
+        // bands whose heights don't divide the image's.
+        for (int[] size : new int[][] { { 7, 5 }, { 1, 70001 }, { 70001, 1 },
+                                        { 517, 263 }, { 1023, 769 } }) {
+            final int count = size[0] * size[1];
+            final int[] parallel = PixelFiltersTest.randomPixels(count, count);
+            final int[] expected = parallel.clone();
+            GRAY_SCALE.apply(expected, 0, count);
+
+            assertTrue(ParallelPixelProcessor.apply(parallel,
+                                                    size[0],
+                                                    size[1],
+                                                    GRAY_SCALE));
+            assertArrayEquals(size[0] + "x" + size[1], expected, parallel);
+        }
+    }
+
+    @Test
+    public void bandsCoverEachPixelOnce() {
+        final int width = 641, height = 479;
+        final int[] argb = new int[width * height];
+
+        assertTrue(ParallelPixelProcessor.apply(argb,
+                                                width,
+                                                height,
+                                                new PixelOperation() {
+                @Override
+                public void apply(int[] pixels,
+                                  int offset,
+                                  int length) {
+                    // Bands start on row boundaries.
+                    assertEquals(0, offset % width);
+                    for (int i = offset; i < offset + length; ++i)
+                        ++pixels[i];
+                }
+            }));
+
+        for (int i = 0; i < argb.length; ++i)
+            assertEquals("pixel " + i, 1, argb[i]);
+    }
+
+    @Test
+    public void interruptStopsBandsThatHaveNotStarted() throws Exception {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores > 1);
+
+        final int width = 1024, height = 1024;
+        final int[] argb = new int[width * height];
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger applied = new AtomicInteger();
+        final AtomicBoolean result = new AtomicBoolean(true);
+        final AtomicBoolean stillInterrupted = new AtomicBoolean(true);
+
+        // Each band blocks until the caller has been interrupted, so
+        // only the bands already running when it's interrupted get
+        // applied.
+        final PixelOperation blocking = new PixelOperation() {
+                @Override
+                public void apply(int[] pixels,
+                                  int offset,
+                                  int length) {
+                    applied.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+        final Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    result.set(ParallelPixelProcessor.apply(argb,
+                                                            width,
+                                                            height,
+                                                            blocking));
+                    stillInterrupted.set(Thread.currentThread().isInterrupted());
+                }
+            });
+        caller.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(10 * 1000);
+        release.countDown();
+
+        assertFalse(caller.isAlive());
+        assertFalse(result.get());
+        assertFalse(stillInterrupted.get());
+
+        // Give the pool time to drain the skipped bands.
+        Thread.sleep(200);
+        assertTrue("applied " + applied.get() + " bands",
+                   applied.get() <= cores);
+    }
+}
@@ -0,0 +1,211 @@
+package vandy.mooc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for PixelFilters, which run on a plain JVM, e.g.:
+ *
+ *   javac -cp junit.jar:hamcrest-core.jar -d out \
+ *       src/vandy/mooc/utils/Pixel*.java src/vandy/mooc/utils/ImageFilter.java \
+ *       src/vandy/mooc/utils/FilterChain.java \
+ *       src/vandy/mooc/utils/ParallelPixelProcessor.java test/vandy/mooc/utils/*.java
+ *   java -cp junit.jar:hamcrest-core.jar:out org.junit.runner.JUnitCore \
+ *       vandy.mooc.utils.PixelFiltersTest vandy.mooc.utils.FilterChainTest \
+ *       vandy.mooc.utils.ParallelPixelProcessorTest
+ *
+ * run from the assignment2 directory.
+ */
+public class PixelFiltersTest {
+    /**
+     * The grayscale value the float path (Color.red(pixel) * .299 +
+     * ...) computed before the fixed-point coefficients were used.
+     */
+    private static int floatGray(int pixel) {
+        return (int) (((pixel >> 16) & 0xff) * .299
+                      + ((pixel >> 8) & 0xff) * .587
+                      + (pixel & 0xff) * .114);
+    }
+
+    @Test
+    public void fixedPointLumaIsWithinOneOfFloatLuma() {
+        // Every opaque color.
+        for (int rgb = 0; rgb < 1 << 24; ++rgb) {
+            final int gray = PixelFilters.grayScale(0xff000000 | rgb);
+            final int expected = floatGray(rgb);
+            final int actual = gray & 0xff;
+            if (Math.abs(actual - expected) > 1)
+                throw new AssertionError(String.format("#%06x: %d vs %d",
+                                                       rgb,
+                                                       actual,
+                                                       expected));
+            assertEquals(actual, (gray >> 8) & 0xff);
+            assertEquals(actual, (gray >> 16) & 0xff);
+        }
+    }
+
+    @Test
+    public void whiteStaysWhiteAndBlackStaysBlack() {
+        assertEquals(0xffffffff, PixelFilters.grayScale(0xffffffff));
+        assertEquals(0xff000000, PixelFilters.grayScale(0xff000000));
+    }
+
+    @Test
+    public void grayScaleLeavesTransparentPixelsAlone() {
+        final int[] argb = { 0x00123456, 0x80123456, 0xff123456, 0x00ffffff };
+        PixelFilters.grayScale(argb, 0, argb.length, true);
+
+        assertEquals(0x00123456, argb[0]);
+        assertEquals(0x00ffffff, argb[3]);
+        // Like Color.rgb(), converted pixels are opaque.
+        assertEquals(0xff, argb[1] >>> 24);
+        assertEquals(0xff, argb[2] >>> 24);
+    }
+
+    @Test
+    public void grayScaleConvertsTransparentPixelsWithoutAlpha() {
+        final int[] argb = { 0x00123456 };
+        PixelFilters.grayScale(argb, 0, 1, false);
+        assertEquals(PixelFilters.grayScale(0x00123456), argb[0]);
+    }
+
+    @Test
+    public void grayScaleOnlyTouchesItsRun() {
+        final int[] argb = randomPixels(101, 1);
+        final int[] original = argb.clone();
+        PixelFilters.grayScale(argb, 13, 57, false);
+
+        for (int i = 0; i < argb.length; ++i)
+            assertEquals("pixel " + i,
+                         i >= 13 && i < 13 + 57
+                         ? PixelFilters.grayScale(original[i])
+                         : original[i],
+                         argb[i]);
+    }
+
+    @Test
+    public void shrinkAveragesEachBlock() {
+        // 3x3 shrunk to 1x1 averages all nine pixels, alpha included.
+        final int[] argb = new int[9];
+        for (int i = 0; i < argb.length; ++i)
+            argb[i] = (i * 10) << 24 | (i * 20) << 16 | (i * 5) << 8 | i;
+        final PixelBuffer buffer = new PixelBuffer(argb, 3, 3);
+        PixelFilters.resize(buffer, 1, 1);
+
+        assertEquals(1, buffer.getWidth());
+        assertEquals(1, buffer.getHeight());
+        assertEquals(40 << 24 | 80 << 16 | 20 << 8 | 4, buffer.getPixels()[0]);
+    }
+
+    @Test
+    public void shrinkOddSizesKeepsConstantImages() {
+        final int[] argb = new int[97 * 31];
+        Arrays.fill(argb, 0x7f102030);
+        final PixelBuffer buffer = new PixelBuffer(argb, 97, 31);
+        PixelFilters.resize(buffer, 13, 7);
+
+        assertEquals(13, buffer.getWidth());
+        assertEquals(7, buffer.getHeight());
+        for (int i = 0; i < 13 * 7; ++i)
+            assertEquals(0x7f102030, buffer.getPixels()[i]);
+    }
+
+    @Test
+    public void enlargeSamplesNearestPixel() {
+        final PixelBuffer buffer =
+            new PixelBuffer(new int[] { 1, 2, 3, 4 }, 2, 2);
+        PixelFilters.resize(buffer, 4, 3);
+
+        assertArrayEquals(new int[] { 1, 1, 2, 2,
+                                      1, 1, 2, 2,
+                                      3, 3, 4, 4 },
+                          buffer.getPixels());
+    }
+
+    @Test
+    public void blurKeepsConstantImagesAndAlpha() {
+        for (int[] size : new int[][] { { 1, 1 }, { 1, 17 }, { 17, 1 }, { 33, 9 } }) {
+            final int[] argb = new int[size[0] * size[1]];
+            Arrays.fill(argb, 0x40a0b0c0);
+            PixelFilters.blur(new PixelBuffer(argb, size[0], size[1]), 3);
+            for (int pixel : argb)
+                assertEquals(0x40a0b0c0, pixel);
+        }
+    }
+
+    @Test
+    public void blurAveragesWithClampedEdges() {
+        // One row: the window at each edge repeats the edge pixel.
+        final int[] argb = { 0, 0, 90, 0, 0 };
+        PixelFilters.blur(new PixelBuffer(argb, 5, 1), 1);
+        assertArrayEquals(new int[] { 0, 30, 30, 30, 0 }, argb);
+    }
+
+    @Test
+    public void sharpenKeepsAlphaAndFlatImages() {
+        final int[] argb = randomPixels(37 * 23, 2);
+        final int[] original = argb.clone();
+        PixelFilters.sharpen(new PixelBuffer(argb, 37, 23));
+        for (int i = 0; i < argb.length; ++i)
+            assertEquals(original[i] >>> 24, argb[i] >>> 24);
+
+        final int[] flat = new int[5 * 3];
+        Arrays.fill(flat, 0x80405060);
+        PixelFilters.sharpen(new PixelBuffer(flat, 5, 3));
+        for (int pixel : flat)
+            assertEquals(0x80405060, pixel);
+    }
+
+    @Test
+    public void sharpenMatchesOutOfPlaceKernel() {
+        final int width = 19, height = 11;
+        final int[] argb = randomPixels(width * height, 3);
+        final int[] original = argb.clone();
+        PixelFilters.sharpen(new PixelBuffer(argb, width, height));
+
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x) {
+                final int center = original[y * width + x];
+                int expected = center & 0xff000000;
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int value = 5 * channel(center, shift)
+                        - channel(original[y * width + Math.max(x - 1, 0)], shift)
+                        - channel(original[y * width + Math.min(x + 1, width - 1)], shift)
+                        - channel(original[Math.max(y - 1, 0) * width + x], shift)
+                        - channel(original[Math.min(y + 1, height - 1) * width + x], shift);
+                    expected |= Math.max(0, Math.min(0xff, value)) << shift;
+                }
+                assertEquals("(" + x + ", " + y + ")",
+                             expected,
+                             argb[y * width + x]);
+            }
+    }
+
+    /**
+     * Returns the channel of @a pixel at @a shift.
+     */
+    private static int channel(int pixel,
+                               int shift) {
+        return (pixel >> shift) & 0xff;
+    }
+
+    /**
+     * Returns @a count random pixels, some of them transparent.
+     */
+    static int[] randomPixels(int count,
+                              long seed) {
+        final Random random = new Random(seed);
+        final int[] argb = new int[count];
+        for (int i = 0; i < count; ++i) {
+            argb[i] = random.nextInt();
+            if (random.nextInt(8) == 0)
+                argb[i] &= 0x00ffffff;
+        }
+        return argb;
+    }
+}
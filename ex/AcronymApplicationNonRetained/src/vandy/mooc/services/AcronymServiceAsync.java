@@ -53,6 +53,7 @@ public class AcronymServiceAsync extends LifecycleLoggingService {
      */
     @Override
     public IBinder onBind(Intent intent) {
+        super.onBind(intent);
         return mAcronymRequestImpl;
     }
 
@@ -51,6 +51,7 @@ public class AcronymServiceSync extends LifecycleLoggingService {
      */
     @Override
     public IBinder onBind(Intent intent) {
+        super.onBind(intent);
         return mAcronymCallImpl;
     }
 
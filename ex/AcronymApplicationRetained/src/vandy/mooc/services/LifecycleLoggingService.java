@@ -1,5 +1,9 @@
 package vandy.mooc.services;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+import vandy.mooc.utils.Metrics;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
@@ -7,7 +11,11 @@ import android.util.Log;
 
 /**
  * This abstract class extends the Service class and overrides
- * lifecycle callbacks for logging various lifecycle events.
+ * lifecycle callbacks for logging various lifecycle events.  It also
+ * times them, recording in the Metrics histograms how long the
+ * Service takes from onCreate() to its first onBind(), how long it
+ * stays bound, and how long it lives.  The histograms are dumped by
+ * "adb shell dumpsys activity service <name>".
  */
 public abstract class LifecycleLoggingService extends Service {
     /**
@@ -15,12 +23,29 @@ public abstract class LifecycleLoggingService extends Service {
      */
     protected final String TAG = getClass().getSimpleName();
 
+    /**
+     * The System.nanoTime() at which the Service was created.
+     */
+    private long mCreated;
+
+    /**
+     * The System.nanoTime() at which the Service was bound, or 0 if
+     * it isn't bound.
+     */
+    private long mBound;
+
+    /**
+     * True once the Service has been bound.
+     */
+    private boolean mEverBound;
+
     /**
      * Hook method called when the Service is created.
      */
     @Override
     public void onCreate() {
         super.onCreate();
+        mCreated = System.nanoTime();
 
         // Service is being created anew.
         Log.d(TAG,
@@ -51,6 +76,12 @@ public abstract class LifecycleLoggingService extends Service {
         Log.d(TAG,
               "onBind() - client has invoked bindService()");
 
+        mBound = System.nanoTime();
+        if (!mEverBound) {
+            mEverBound = true;
+            Metrics.histogram(TAG + ".onCreate-onBind").record(mBound - mCreated);
+        }
+
         return null;
     }
 
@@ -62,6 +93,10 @@ public abstract class LifecycleLoggingService extends Service {
     public boolean onUnbind(Intent intent) {
         Log.d(TAG,
               "onUnbind() - client has invoked unbindService()");
+        if (mBound != 0) {
+            Metrics.histogram(TAG + ".bound").recordSince(mBound);
+            mBound = 0;
+        }
         return super.onUnbind(intent);
     }
 
@@ -72,7 +107,20 @@ public abstract class LifecycleLoggingService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        Metrics.histogram(TAG + ".lifetime").recordSince(mCreated);
         Log.d(TAG,
               "onDestroy() - service is being shut down");
     }
+
+    /**
+     * Dump the Metrics histograms of the Service's process, e.g., via
+     * "adb shell dumpsys activity service <name>".
+     */
+    @Override
+    protected void dump(FileDescriptor fd,
+                        PrintWriter writer,
+                        String[] args) {
+        super.dump(fd, writer, args);
+        Metrics.dump("", writer);
+    }
 }
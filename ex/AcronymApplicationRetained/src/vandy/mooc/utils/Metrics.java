@@ -0,0 +1,76 @@
+package vandy.mooc.utils;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.util.Log;
+
+/**
+ * This class keeps the named LatencyHistograms of a process (e.g.,
+ * how long Activities take to start and Services take to bind), so
+ * they can be dumped on demand, e.g., via "adb shell dumpsys activity
+ * top" or "adb shell dumpsys activity service <name>", both of which
+ * end up in dump().
+ */
+public class Metrics {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "Metrics";
+
+    /**
+     * The histograms, sorted by name.
+     */
+    private static final Map<String, LatencyHistogram> sHistograms =
+        new TreeMap<String, LatencyHistogram>();
+
+    /**
+     * Returns the histogram named @a name, creating it if need be.
+     * Callers on a hot path should hold on to the result rather than
+     * look it up each time.
+     */
+    public static LatencyHistogram histogram(String name) {
+        synchronized (sHistograms) {
+            LatencyHistogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                sHistograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Write a summary of each histogram to @a writer, each line
+     * starting with @a prefix.
+     */
+    public static void dump(String prefix,
+                            PrintWriter writer) {
+        synchronized (sHistograms) {
+            writer.println(prefix + "Metrics:");
+            for (Map.Entry<String, LatencyHistogram> entry
+                     : sHistograms.entrySet())
+                writer.println(prefix + "  " + entry.getKey()
+                               + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Log a summary of each histogram.
+     */
+    public static void dump() {
+        synchronized (sHistograms) {
+            for (Map.Entry<String, LatencyHistogram> entry
+                     : sHistograms.entrySet())
+                Log.d(TAG, entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private Metrics() {
+        throw new AssertionError();
+    }
+}
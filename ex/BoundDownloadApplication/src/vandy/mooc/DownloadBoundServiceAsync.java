@@ -1,10 +1,14 @@
 package vandy.mooc;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 
 /**
@@ -27,6 +31,12 @@ import android.os.RemoteException;
  *        AIDL interfaces.
  */
 public class DownloadBoundServiceAsync extends Service{
+    /**
+     * The latencies of the calls to downloadImage().
+     */
+    private static final CallMetrics sDownloadImageMetrics =
+        new CallMetrics("DownloadBoundServiceAsync.downloadImage");
+
     /**
      * The concrete implementation of the AIDL Interface
      * DownloadRequest.  We extend the Stub class, which implements
@@ -37,6 +47,23 @@ public class DownloadBoundServiceAsync extends Service{
      * Pattern.
      */
     DownloadRequest.Stub mDownloadRequestImpl = new DownloadRequest.Stub() {
+            /**
+             * Time each call of downloadImage(), including
+             * unmarshaling its arguments and marshaling its results.
+             */
+            @Override
+            public boolean onTransact(int code,
+                                      Parcel data,
+                                      Parcel reply,
+                                      int flags) throws RemoteException {
+                final long start = sDownloadImageMetrics.begin(code);
+                try {
+                    return super.onTransact(code, data, reply, flags);
+                } finally {
+                    sDownloadImageMetrics.end(start);
+                }
+            }
+
             /**
              * Download the image at the given Uri and return a
              * pathname to the file on the Android file system by
@@ -51,9 +78,13 @@ public class DownloadBoundServiceAsync extends Service{
                 // Download the file using the appropriate helper
                 // method in DownloadUtils and then send the pathname
                 // back to the client via the Results object.
-                results.sendPath(DownloadUtils.downloadFile
-                                  (DownloadBoundServiceAsync.this,
-                                   uri));
+                final long networkStart = System.nanoTime();
+                final String path =
+                    DownloadUtils.downloadFile(DownloadBoundServiceAsync.this,
+                                               uri);
+                CallMetrics.recordPhase(CallMetrics.NETWORK,
+                                        networkStart);
+                results.sendPath(path);
             }
 	};
 	
@@ -67,6 +98,19 @@ public class DownloadBoundServiceAsync extends Service{
         return mDownloadRequestImpl;
     }
 
+    /**
+     * Write the latencies of the calls to downloadImage() to @a
+     * writer, e.g., via "adb shell dumpsys activity service
+     * <name>".
+     */
+    @Override
+    protected void dump(FileDescriptor fd,
+                        PrintWriter writer,
+                        String[] args) {
+        super.dump(fd, writer, args);
+        Metrics.dump("", writer);
+    }
+
     /**
      * Make an explicit Intent that will start this service when
      * passed to bindService().
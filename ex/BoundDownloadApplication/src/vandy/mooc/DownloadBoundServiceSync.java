@@ -1,10 +1,14 @@
 package vandy.mooc;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 
 /**
@@ -28,6 +32,12 @@ import android.os.RemoteException;
  *        AIDL interfaces.
  */
 public class DownloadBoundServiceSync extends Service {
+    /**
+     * The latencies of the calls to downloadImage().
+     */
+    private static final CallMetrics sDownloadImageMetrics =
+        new CallMetrics("DownloadBoundServiceSync.downloadImage");
+
     /**
      * An implementation of the AIDL Interface DownloadCall.  We
      * extend the Stub class, which implements DownloadCall, so that
@@ -37,6 +47,23 @@ public class DownloadBoundServiceSync extends Service {
      * Pattern
      */
     DownloadCall.Stub mDownloadCallImpl = new DownloadCall.Stub() {
+            /**
+             * Time each call of downloadImage(), including
+             * unmarshaling its arguments and marshaling its results.
+             */
+            @Override
+            public boolean onTransact(int code,
+                                      Parcel data,
+                                      Parcel reply,
+                                      int flags) throws RemoteException {
+                final long start = sDownloadImageMetrics.begin(code);
+                try {
+                    return super.onTransact(code, data, reply, flags);
+                } finally {
+                    sDownloadImageMetrics.end(start);
+                }
+            }
+
             /**
              * Download the image at the given Uri and return a
              * pathname to the file on the Android file system.
@@ -49,9 +76,15 @@ public class DownloadBoundServiceSync extends Service {
                 // Download the file using the appropriate helper
                 // method in DownloadUtils and then return the
                 // pathname back to the client.
-                return DownloadUtils.downloadFile
-                    (DownloadBoundServiceSync.this,
-                     uri);
+                final long networkStart = System.nanoTime();
+                try {
+                    return DownloadUtils.downloadFile
+                        (DownloadBoundServiceSync.this,
+                         uri);
+                } finally {
+                    CallMetrics.recordPhase(CallMetrics.NETWORK,
+                                            networkStart);
+                }
             }
 	};
 	
@@ -65,6 +98,19 @@ public class DownloadBoundServiceSync extends Service {
         return mDownloadCallImpl;
     }
 	
+    /**
+     * Write the latencies of the calls to downloadImage() to @a
+     * writer, e.g., via "adb shell dumpsys activity service
+     * <name>".
+     */
+    @Override
+    protected void dump(FileDescriptor fd,
+                        PrintWriter writer,
+                        String[] args) {
+        super.dump(fd, writer, args);
+        Metrics.dump("", writer);
+    }
+
     /**
      * Make an explicit Intent that will start this service when
      * passed to bindService().
@@ -6,6 +6,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import android.content.Context;
 import android.net.Uri;
@@ -43,6 +46,12 @@ public class DownloadUtils {
      * The file name that we should use to store the image in offline mode
      */
     static final String OFFLINE_FILENAME = "dougs.jpg";
+
+    /**
+     * The maximum number of connections used to download a large
+     * file.
+     */
+    static final int DOWNLOAD_SEGMENTS = 4;
     
     /**
      * Download the file located at the provided internet url using
@@ -85,14 +94,37 @@ public class DownloadUtils {
             Log.d(TAG, "    downloading to " + file);
 	
             // Download the contents at the URL, which should
-            // reference an image.
-            try (final InputStream in = (InputStream)
-                     new URL(uri.toString()).getContent();
-                 final OutputStream os =
-                     new FileOutputStream(file)) {
-                 // Copy the contents of the downloaded image to the
-                 // temp file.
-                 copy(in, os);
+            // reference an image.  Large images are fetched as
+            // several byte ranges in parallel.  Otherwise, the temp
+            // file's name only depends on the URL, so a download
+            // that was interrupted resumes where it left off rather
+            // than starting over.  Failures that are likely to go
+            // away are retried, unless the host is known to be down.
+            // Since the temp, partial and checkpoint files are shared
+            // by all the downloads of the url (e.g., from the Sync
+            // and Async Services), they're done one at a time.
+            final String stagingKey = file.getName();
+            try {
+                final StagingLock lock = acquireStagingLock(stagingKey);
+                try {
+                    final URL url = new URL(uri.toString());
+                    Retrier.call(url.getHost(),
+                                 new Retrier.Attempt<Void>() {
+                                     @Override
+                                     public Void run() throws IOException {
+                                         SegmentedDownloader.download(url,
+                                                                      file,
+                                                                      DOWNLOAD_SEGMENTS);
+                                         return null;
+                                     }
+                                 });
+                } finally {
+                    releaseStagingLock(stagingKey, lock);
+                }
+            } catch (InterruptedException e) {
+                // The download was cancelled while waiting its turn.
+                Thread.currentThread().interrupt();
+                return null;
             } catch (Exception e) {
                 Log.e(TAG, "Exception while downloading. Returning null.");
                 Log.e(TAG, e.toString());
@@ -104,6 +136,79 @@ public class DownloadUtils {
         }
     }
         
+    /**
+     * A lock that serializes the downloads sharing a temp file.
+     */
+    private static class StagingLock extends ReentrantLock {
+        /**
+         * The number of Threads holding or waiting for the lock,
+         * which is guarded by sStagingLocks.
+         */
+        int mUsers;
+    }
+
+    /**
+     * The StagingLocks in use, by temp file name.  A StagingLock is
+     * removed once no Thread uses it, so the map only holds the
+     * downloads in progress.
+     */
+    private static final Map<String, StagingLock> sStagingLocks =
+        new HashMap<String, StagingLock>();
+
+    /**
+     * Returns the StagingLock of @a stagingKey after locking it,
+     * waiting for other downloads of the same url to finish.
+     */
+    private static StagingLock acquireStagingLock(String stagingKey)
+        throws InterruptedException {
+        final StagingLock lock = useStagingLock(stagingKey);
+        try {
+            lock.lockInterruptibly();
+            return lock;
+        } catch (InterruptedException e) {
+            unuseStagingLock(stagingKey, lock);
+            throw e;
+        }
+    }
+
+    /**
+     * Unlock the @a lock of @a stagingKey returned by
+     * acquireStagingLock().
+     */
+    private static void releaseStagingLock(String stagingKey,
+                                           StagingLock lock) {
+        lock.unlock();
+        unuseStagingLock(stagingKey, lock);
+    }
+
+    /**
+     * Returns the StagingLock of @a stagingKey, creating it if need
+     * be, and count the calling Thread as one of its users.
+     */
+    private static StagingLock useStagingLock(String stagingKey) {
+        synchronized (sStagingLocks) {
+            StagingLock lock = sStagingLocks.get(stagingKey);
+            if (lock == null) {
+                lock = new StagingLock();
+                sStagingLocks.put(stagingKey, lock);
+            }
+            ++lock.mUsers;
+            return lock;
+        }
+    }
+
+    /**
+     * Stop counting the calling Thread as a user of the @a lock of
+     * @a stagingKey, removing it once it has no users.
+     */
+    private static void unuseStagingLock(String stagingKey,
+                                         StagingLock lock) {
+        synchronized (sStagingLocks) {
+            if (--lock.mUsers == 0)
+                sStagingLocks.remove(stagingKey);
+        }
+    }
+
     /**
      * Create a temp file to store the result of a download.
      * 
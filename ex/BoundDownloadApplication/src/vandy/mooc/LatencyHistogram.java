@@ -0,0 +1,175 @@
+package vandy.mooc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies (in nanoseconds) in the style of an HDR
+ * histogram: each power of two is split into SUB_BUCKETS buckets of
+ * equal width, so every recorded value is off by at most 1 /
+ * SUB_BUCKETS (12.5%) however large it is, and the histogram takes a
+ * fixed amount of memory.  Recording a value is lock-free and doesn't
+ * allocate, so it's cheap enough to do in lifecycle and Binder
+ * callbacks.
+ */
+public class LatencyHistogram {
+    /**
+     * log2 of the number of buckets per power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MS = 1000000.0;
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final AtomicLongArray mCounts =
+        new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+    /**
+     * The number of values recorded.
+     */
+    private final AtomicLong mCount = new AtomicLong();
+
+    /**
+     * The sum of the values recorded.
+     */
+    private final AtomicLong mSum = new AtomicLong();
+
+    /**
+     * The largest value recorded.
+     */
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record a latency of @a nanos nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        mCounts.incrementAndGet(bucketOf(nanos));
+        mCount.incrementAndGet();
+        mSum.addAndGet(nanos);
+
+        for (long max = mMax.get();
+             nanos > max && !mMax.compareAndSet(max, nanos);
+             max = mMax.get())
+            continue;
+    }
+
+    /**
+     * Record the latency from @a startNanos (a System.nanoTime()
+     * timestamp) until now, and return it.
+     */
+    public long recordSince(long startNanos) {
+        final long nanos = System.nanoTime() - startNanos;
+        record(nanos);
+        return nanos;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Returns the largest value recorded.
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if there aren't
+     * any.
+     */
+    public long getMean() {
+        final long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * Returns the (upper bound of the) value below which @a
+     * percentile percent of the recorded values fall, or 0 if there
+     * aren't any.
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long count = mCount.get();
+        if (count == 0)
+            return 0;
+
+        final long rank =
+            Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length(); ++i) {
+            seen += mCounts.get(i);
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), mMax.get());
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Forget all the values recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < mCounts.length(); ++i)
+            mCounts.set(i, 0);
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Returns a one-line summary of the histogram, in milliseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.2fms p50=%.2fms p90=%.2fms"
+                             + " p99=%.2fms max=%.2fms",
+                             getCount(),
+                             getMean() / NANOS_PER_MS,
+                             getValueAtPercentile(50) / NANOS_PER_MS,
+                             getValueAtPercentile(90) / NANOS_PER_MS,
+                             getValueAtPercentile(99) / NANOS_PER_MS,
+                             getMax() / NANOS_PER_MS);
+    }
+
+    /**
+     * Returns the index of the bucket that @a value falls in.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        // The bucket is picked by the position of the highest set
+        // bit and the SUB_BUCKET_BITS bits below it.
+        final int shift =
+            63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS
+            + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest value that falls in the bucket at @a index.
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest =
+            ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,111 @@
+package vandy.mooc;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * This class keeps the named LatencyHistograms and counters of a
+ * process (e.g., how long Activities take to start and Services take
+ * to bind, or how many calls a Service is handling), so
+ * they can be dumped on demand, e.g., via "adb shell dumpsys activity
+ * top" or "adb shell dumpsys activity service <name>", both of which
+ * end up in dump().
+ */
+public class Metrics {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "Metrics";
+
+    /**
+     * The histograms, sorted by name.
+     */
+    private static final Map<String, LatencyHistogram> sHistograms =
+        new TreeMap<String, LatencyHistogram>();
+
+    /**
+     * The counters, sorted by name.
+     */
+    private static final Map<String, AtomicLong> sCounters =
+        new TreeMap<String, AtomicLong>();
+
+    /**
+     * Returns the histogram named @a name, creating it if need be.
+     * Callers on a hot path should hold on to the result rather than
+     * look it up each time.
+     */
+    public static LatencyHistogram histogram(String name) {
+        synchronized (sHistograms) {
+            LatencyHistogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                sHistograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Returns the counter named @a name, creating it if need be.
+     * Callers on a hot path should hold on to the result rather than
+     * look it up each time.
+     */
+    public static AtomicLong counter(String name) {
+        synchronized (sCounters) {
+            AtomicLong counter = sCounters.get(name);
+            if (counter == null) {
+                counter = new AtomicLong();
+                sCounters.put(name, counter);
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * Write a summary of each histogram and the value of each counter
+     * to @a writer, each line starting with @a prefix.
+     */
+    public static void dump(String prefix,
+                            PrintWriter writer) {
+        writer.println(prefix + "Metrics:");
+        synchronized (sHistograms) {
+            for (Map.Entry<String, LatencyHistogram> entry
+                     : sHistograms.entrySet())
+                writer.println(prefix + "  " + entry.getKey()
+                               + ": " + entry.getValue());
+        }
+        synchronized (sCounters) {
+            for (Map.Entry<String, AtomicLong> entry
+                     : sCounters.entrySet())
+                writer.println(prefix + "  " + entry.getKey()
+                               + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Log a summary of each histogram and the value of each counter.
+     */
+    public static void dump() {
+        synchronized (sHistograms) {
+            for (Map.Entry<String, LatencyHistogram> entry
+                     : sHistograms.entrySet())
+                Log.d(TAG, entry.getKey() + ": " + entry.getValue());
+        }
+        synchronized (sCounters) {
+            for (Map.Entry<String, AtomicLong> entry
+                     : sCounters.entrySet())
+                Log.d(TAG, entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private Metrics() {
+        throw new AssertionError();
+    }
+}
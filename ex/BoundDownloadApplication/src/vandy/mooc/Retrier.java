@@ -0,0 +1,323 @@
+package vandy.mooc;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import android.util.Log;
+
+/**
+ * This helper class makes network requests resilient to failures.
+ * A request that fails for a reason that's likely to go away (e.g.,
+ * a dropped connection, a timeout, or an HTTP 5xx/429 reply) is
+ * retried up to MAX_ATTEMPTS times, waiting a random time of up to
+ * BASE_DELAY_MS, 2 * BASE_DELAY_MS, 4 * BASE_DELAY_MS, ... (capped
+ * at MAX_DELAY_MS) between attempts, so clients that failed together
+ * don't all retry together.  Each host also has a circuit breaker:
+ * after FAILURE_THRESHOLD consecutive failures the host is presumed
+ * down and requests to it fail fast with a CircuitOpenException for
+ * OPEN_MS, after which one trial request decides whether it's back.
+ */
+public class Retrier {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "Retrier";
+
+    /**
+     * Maximum number of times a request is attempted.
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Upper bound (in milliseconds) of the wait before the first
+     * retry, which doubles for each retry after that.
+     */
+    static final long BASE_DELAY_MS = 500;
+
+    /**
+     * Upper bound (in milliseconds) of the wait before any retry.
+     */
+    static final long MAX_DELAY_MS = 8000;
+
+    /**
+     * Number of consecutive failures after which a host's circuit
+     * opens.
+     */
+    static final int FAILURE_THRESHOLD = 5;
+
+    /**
+     * Time (in milliseconds) a host's circuit stays open before a
+     * trial request is let through.
+     */
+    static final long OPEN_MS = 30000;
+
+    /**
+     * An attempt at a request, which may be made several times.
+     */
+    public interface Attempt<T> {
+        /**
+         * Make the request and return its result.
+         */
+        T run() throws IOException;
+    }
+
+    /**
+     * Thrown when an HTTP request gets a reply other than the ones it
+     * can handle.
+     */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The HTTP status code of the reply.
+         */
+        private final int mStatus;
+
+        /**
+         * Constructor initializes the fields.
+         */
+        public HttpStatusException(int status,
+                                   Object url) {
+            super("HTTP " + status + " for " + url);
+            mStatus = status;
+        }
+
+        /**
+         * Returns the HTTP status code of the reply.
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+    }
+
+    /**
+     * Thrown instead of making a request to a host whose circuit is
+     * open.
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor initializes the message.
+         */
+        CircuitOpenException(String host) {
+            super("circuit open for " + host);
+        }
+    }
+
+    /**
+     * The circuit breakers, by host.
+     */
+    private static final Map<String, CircuitBreaker> sBreakers =
+        new HashMap<String, CircuitBreaker>();
+
+    /**
+     * Generates the random waits between attempts.
+     */
+    private static final Random sRandom = new Random();
+
+    /**
+     * Make the request of @a attempt to @a host, retrying it as
+     * needed.  The calling Thread waits between attempts, so this is
+     * meant for callers that must block until the result is in
+     * anyway; others should call attempt() and schedule the retries
+     * themselves.
+     *
+     * @return
+     *        The result of the first attempt that succeeds.
+     * @throws IOException
+     *        The failure of the last attempt, or of the first one that
+     *        isn't worth retrying.
+     */
+    public static <T> T call(String host,
+                             Attempt<T> attempt) throws IOException {
+        for (int attempts = 1; ; ++attempts) {
+            try {
+                return attempt(host, attempt);
+            } catch (IOException e) {
+                if (attempts >= MAX_ATTEMPTS || !isRetryable(e))
+                    throw e;
+
+                Log.d(TAG,
+                      "attempt " + attempts + " failed (" + e
+                      + "), retrying");
+                backoff(attempts);
+            }
+        }
+    }
+
+    /**
+     * Wait before retrying a request that has failed @a attempts
+     * times.
+     *
+     * @throws InterruptedIOException
+     *        If the calling Thread is interrupted while it waits.
+     */
+    public static void backoff(int attempts) throws InterruptedIOException {
+        try {
+            Thread.sleep(backoffMillis(attempts));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("retry interrupted");
+        }
+    }
+
+    /**
+     * Make the request of @a attempt to @a host once, unless @a
+     * host's circuit is open, and record the outcome in @a host's
+     * circuit breaker.
+     *
+     * @throws CircuitOpenException
+     *        If @a host's circuit is open.
+     */
+    public static <T> T attempt(String host,
+                                Attempt<T> attempt) throws IOException {
+        final CircuitBreaker breaker = getBreaker(host);
+        final int permit = breaker.allowRequest();
+        if (permit == CircuitBreaker.DENIED)
+            throw new CircuitOpenException(host);
+
+        // Stays null if the request is abandoned (e.g., cancelled),
+        // which says nothing about the host.
+        Boolean reachable = null;
+        try {
+            final T result = attempt.run();
+            reachable = Boolean.TRUE;
+            return result;
+        } catch (IOException e) {
+            if (isRetryable(e))
+                reachable = Boolean.FALSE;
+            else if (!(e instanceof InterruptedIOException))
+                // Failures that aren't worth retrying (e.g., a 404)
+                // show the host is up.
+                reachable = Boolean.TRUE;
+            throw e;
+        } finally {
+            breaker.onResult(permit, reachable);
+        }
+    }
+
+    /**
+     * Returns true if a request that failed with @a e is worth
+     * retrying.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof CircuitOpenException
+            || e instanceof FileNotFoundException
+            || e instanceof MalformedURLException)
+            // The host is down, or the resource doesn't exist.
+            return false;
+        else if (e instanceof InterruptedIOException)
+            // Timeouts are worth retrying, but not cancellations.
+            return e instanceof SocketTimeoutException;
+        else if (e instanceof HttpStatusException) {
+            final int status = ((HttpStatusException) e).getStatus();
+            return status >= 500 || status == 408 || status == 429;
+        } else
+            return true;
+    }
+
+    /**
+     * Returns the time (in milliseconds) to wait before retrying a
+     * request that has failed @a attempts times.
+     */
+    public static long backoffMillis(int attempts) {
+        final long ceiling =
+            Math.min(MAX_DELAY_MS,
+                     BASE_DELAY_MS << Math.min(attempts - 1, 16));
+        return (long) (sRandom.nextDouble() * ceiling);
+    }
+
+    /**
+     * Returns the circuit breaker of @a host.
+     */
+    private static CircuitBreaker getBreaker(String host) {
+        host = host == null ? "" : host.toLowerCase();
+        synchronized (sBreakers) {
+            CircuitBreaker breaker = sBreakers.get(host);
+            if (breaker == null) {
+                breaker = new CircuitBreaker();
+                sBreakers.put(host, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Tracks the consecutive failures of the requests to one host.
+     */
+    private static class CircuitBreaker {
+        /**
+         * Permits returned by allowRequest(), which are handed back
+         * to onResult() along with the outcome of the request.
+         */
+        static final int DENIED = 0;
+        static final int ALLOWED = 1;
+        static final int TRIAL = 2;
+
+        /**
+         * Number of consecutive failures.
+         */
+        private int mFailures;
+
+        /**
+         * Time (from System.nanoTime()) the circuit opened.
+         */
+        private long mOpenedAt;
+
+        /**
+         * True while a trial request is in progress.
+         */
+        private boolean mTrial;
+
+        /**
+         * Returns ALLOWED if a request may be made, which is always
+         * the case while the circuit is closed, TRIAL for the one
+         * trial request made once it's been open for OPEN_MS, else
+         * DENIED.
+         */
+        synchronized int allowRequest() {
+            if (mFailures < FAILURE_THRESHOLD)
+                return ALLOWED;
+            if (mTrial
+                || (System.nanoTime() - mOpenedAt) / 1000000 < OPEN_MS)
+                return DENIED;
+            mTrial = true;
+            return TRIAL;
+        }
+
+        /**
+         * Record the outcome of a request made with @a permit, which
+         * found the host @a reachable or not (or null if the request
+         * was abandoned).  Only the trial request itself ends the
+         * trial, so requests that were already in flight when the
+         * circuit opened can't let a second trial start.
+         */
+        synchronized void onResult(int permit,
+                                   Boolean reachable) {
+            if (permit == TRIAL)
+                mTrial = false;
+            if (reachable == null)
+                return;
+            else if (reachable)
+                mFailures = 0;
+            else if (++mFailures >= FAILURE_THRESHOLD)
+                // Open the circuit, or keep it open for another
+                // OPEN_MS if the trial request failed.
+                mOpenedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private Retrier() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,358 @@
+package vandy.mooc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+
+/**
+ * @class SegmentedDownloader
+ *
+ * @brief This class downloads large resources over several
+ *        connections at once.  It probes the resource with a HEAD
+ *        request and, if the server reports a Content-Length and
+ *        "Accept-Ranges: bytes", preallocates the file and has each
+ *        connection fetch one byte range and write it at its offset
+ *        via positional FileChannel writes.  Each reply's
+ *        Content-Range is checked against the range that was asked
+ *        for, and the assembled length is verified before the file
+ *        is committed.  Servers that don't support ranges, resources
+ *        without a strong enough validator to keep the segments from
+ *        mixing representations, and resources that are too small
+ *        to benefit are downloaded over a single (resumable)
+ *        connection by the ResumableDownloader.
+ */
+public class SegmentedDownloader {
+    /**
+     * Used for debugging.
+     */
+    private final static String TAG = "SegmentedDownloader";
+
+    /**
+     * Suffix of the file being assembled from the segments.
+     */
+    private static final String SEGMENTED_SUFFIX = ".seg";
+
+    /**
+     * Resources smaller than this are downloaded over a single
+     * connection since the extra round trips aren't worth it.
+     */
+    static final long MIN_SEGMENTED_LENGTH = 1024 * 1024;
+
+    /**
+     * Each segment is at least this large.
+     */
+    private static final long MIN_SEGMENT_LENGTH = 256 * 1024;
+
+    /**
+     * Size of each network read.
+     */
+    private static final int BUFLEN = 16 * 1024;
+
+    /**
+     * Connect and read timeouts (in milliseconds).
+     */
+    private static final int TIMEOUT_MS = 15 * 1000;
+
+    /**
+     * Threads that download the segments.  They're shared by all
+     * the downloads and die off when idle.
+     */
+    private static final ExecutorService sSegmentExecutor =
+        Executors.newCachedThreadPool();
+
+    /**
+     * Download the resource at @a url into @a target using up to @a
+     * segments concurrent connections.
+     *
+     * @param url
+     *          The URL of the resource to download.
+     * @param target
+     *          The file that holds the resource once the download
+     *          completes.
+     * @param segments
+     *          The maximum number of concurrent connections.
+     *
+     * @return
+     *          The @a target file.
+     */
+    public static File download(URL url,
+                                File target,
+                                int segments) throws IOException {
+        final Probe probe = probe(url);
+
+        if (probe == null
+            || !probe.mAcceptsRanges
+            || probe.mValidator == null
+            || probe.mLength < MIN_SEGMENTED_LENGTH
+            || segments < 2) {
+            Log.d(TAG, "downloading " + url + " over one connection");
+            return ResumableDownloader.download(url, target);
+        }
+
+        // Don't make segments smaller than MIN_SEGMENT_LENGTH.
+        final int count =
+            (int) Math.max(1,
+                           Math.min(segments,
+                                    probe.mLength / MIN_SEGMENT_LENGTH));
+        Log.d(TAG, "downloading " + probe.mLength + " bytes of " + url
+              + " over " + count + " connections");
+
+        final File assembled = new File(target.getPath() + SEGMENTED_SUFFIX);
+        boolean committed = false;
+
+        try (RandomAccessFile raf = new RandomAccessFile(assembled, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // Preallocate the file so each segment can be written
+            // at its own offset.
+            raf.setLength(probe.mLength);
+
+            final List<Future<Long>> futures =
+                new ArrayList<Future<Long>>(count);
+            final long segmentLength = probe.mLength / count;
+
+            for (int i = 0; i < count; ++i) {
+                final long first = i * segmentLength;
+                final long last = i == count - 1
+                    ? probe.mLength - 1
+                    : first + segmentLength - 1;
+                futures.add(sSegmentExecutor.submit
+                            (new SegmentTask(url,
+                                             probe.mValidator,
+                                             channel,
+                                             first,
+                                             last,
+                                             probe.mLength)));
+            }
+
+            // Wait for all the segments, bailing out on the first
+            // failure.
+            long total = 0;
+            try {
+                for (Future<Long> future : futures)
+                    total += future.get();
+            } catch (InterruptedException e) {
+                cancel(futures);
+                throw new InterruptedIOException("download of "
+                                                 + url
+                                                 + " interrupted");
+            } catch (ExecutionException e) {
+                cancel(futures);
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+
+            // Verify the assembled length.
+            if (total != probe.mLength || channel.size() != probe.mLength)
+                throw new IOException("expected " + probe.mLength
+                                      + " bytes but got " + total);
+            channel.force(false);
+            committed = true;
+        } finally {
+            if (!committed)
+                assembled.delete();
+        }
+
+        if (target.exists() && !target.delete())
+            throw new IOException("unable to replace " + target);
+        if (!assembled.renameTo(target))
+            throw new IOException("unable to rename " + assembled);
+        return target;
+    }
+
+    /**
+     * Cancel all the @a futures.
+     */
+    private static void cancel(List<Future<Long>> futures) {
+        for (Future<Long> future : futures)
+            future.cancel(true);
+    }
+
+    /**
+     * Issue a HEAD request for @a url and return what it tells us
+     * about the resource, or null if it can't be probed.
+     */
+    private static Probe probe(URL url) {
+        HttpURLConnection http = null;
+        try {
+            final URLConnection connection = url.openConnection();
+            if (!(connection instanceof HttpURLConnection))
+                return null;
+
+            http = (HttpURLConnection) connection;
+            http.setRequestMethod("HEAD");
+            http.setConnectTimeout(TIMEOUT_MS);
+            http.setReadTimeout(TIMEOUT_MS);
+            // Ask for the length of the body the segments will fetch,
+            // not of a compressed one.
+            http.setRequestProperty("Accept-Encoding", "identity");
+
+            if (http.getResponseCode() != HttpURLConnection.HTTP_OK)
+                return null;
+
+            final Probe probe = new Probe();
+            probe.mAcceptsRanges =
+                "bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges"));
+            try {
+                probe.mLength =
+                    Long.parseLong(http.getHeaderField("Content-Length"));
+            } catch (NumberFormatException e) {
+                probe.mLength = -1;
+            }
+            final String etag = http.getHeaderField("ETag");
+            probe.mValidator = etag != null && !etag.startsWith("W/")
+                ? etag
+                : http.getHeaderField("Last-Modified");
+            return probe;
+        } catch (IOException e) {
+            Log.w(TAG, "unable to probe " + url + ": " + e);
+            return null;
+        } finally {
+            if (http != null)
+                http.disconnect();
+        }
+    }
+
+    /**
+     * What a HEAD request tells us about a resource.
+     */
+    private static class Probe {
+        /**
+         * Length of the resource, or -1 if unknown.
+         */
+        long mLength;
+
+        /**
+         * True if the server supports byte ranges.
+         */
+        boolean mAcceptsRanges;
+
+        /**
+         * Validator used to make sure all the segments come from the
+         * same representation, or null if the server didn't send
+         * one, in which case the resource isn't segmented.
+         */
+        String mValidator;
+    }
+
+    /**
+     * Downloads the bytes from mFirst to mLast (inclusive) and writes
+     * them at the same position in the file.
+     */
+    private static class SegmentTask implements Callable<Long> {
+        private final URL mUrl;
+        private final String mValidator;
+        private final FileChannel mChannel;
+        private final long mFirst;
+        private final long mLast;
+        private final long mLength;
+
+        SegmentTask(URL url,
+                    String validator,
+                    FileChannel channel,
+                    long first,
+                    long last,
+                    long length) {
+            mUrl = url;
+            mValidator = validator;
+            mChannel = channel;
+            mFirst = first;
+            mLast = last;
+            mLength = length;
+        }
+
+        /**
+         * Returns the number of bytes written.
+         */
+        @Override
+        public Long call() throws IOException {
+            final HttpURLConnection http =
+                (HttpURLConnection) mUrl.openConnection();
+            try {
+                http.setConnectTimeout(TIMEOUT_MS);
+                http.setReadTimeout(TIMEOUT_MS);
+                http.setRequestProperty("Range",
+                                        "bytes=" + mFirst + "-" + mLast);
+                // Make sure every segment comes from the
+                // representation we probed.
+                http.setRequestProperty("If-Range", mValidator);
+                // Byte ranges of a compressed body don't decode.
+                http.setRequestProperty("Accept-Encoding", "identity");
+
+                final int code = http.getResponseCode();
+                if (code == HttpURLConnection.HTTP_OK)
+                    // The representation changed since it was probed,
+                    // so a retry (which probes again) is worthwhile.
+                    throw new IOException("segment " + mFirst + "-" + mLast
+                                          + " of " + mUrl
+                                          + " changed since it was probed");
+                else if (code != HttpURLConnection.HTTP_PARTIAL)
+                    throw new Retrier.HttpStatusException(code, mUrl);
+
+                // Make sure the server sent exactly the range we asked
+                // for, of the resource we probed.
+                final String contentRange = http.getHeaderField("Content-Range");
+                final long length = ResumableDownloader.rangeLength(contentRange);
+                if (ResumableDownloader.rangeStart(contentRange) != mFirst
+                    || ResumableDownloader.rangeEnd(contentRange) != mLast
+                    || (length != -1 && length != mLength))
+                    throw new IOException("segment " + mFirst + "-" + mLast
+                                          + " of " + mUrl
+                                          + " got Content-Range "
+                                          + contentRange);
+
+                final ByteBuffer buffer = ByteBuffer.allocate(BUFLEN);
+                final long expected = mLast - mFirst + 1;
+                long position = mFirst;
+
+                try (InputStream is = http.getInputStream()) {
+                    for (int n;
+                         position <= mLast
+                             && (n = is.read(buffer.array())) >= 0; ) {
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedIOException();
+
+                        // Never write past the end of the segment.
+                        buffer.limit((int) Math.min(n, mLast - position + 1));
+                        buffer.position(0);
+                        while (buffer.hasRemaining())
+                            position += mChannel.write(buffer, position);
+                        buffer.clear();
+                    }
+                }
+
+                if (position - mFirst != expected)
+                    throw new IOException("segment " + mFirst + "-" + mLast
+                                          + " of " + mUrl
+                                          + " ended after "
+                                          + (position - mFirst) + " bytes");
+                return expected;
+            } finally {
+                http.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Ensure this class is only used as a utility.
+     */
+    private SegmentedDownloader() {
+        throw new AssertionError();
+    }
+}